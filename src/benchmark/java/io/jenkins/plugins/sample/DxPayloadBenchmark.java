@@ -0,0 +1,102 @@
+package io.jenkins.plugins.sample;
+
+import hudson.model.Result;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures result mapping, branch normalization and payload serialization and encoding. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DxPayloadBenchmark {
+
+    private static final Result[] RESULTS = {
+        Result.SUCCESS, Result.FAILURE, Result.ABORTED, Result.UNSTABLE, Result.NOT_BUILT, null
+    };
+
+    private final DxRunListenerBenchmark.NullOutputStream sink = new DxRunListenerBenchmark.NullOutputStream();
+
+    private int next;
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        payload = writePayload();
+    }
+
+    @Benchmark
+    public String mapResult() {
+        next = (next + 1) % RESULTS.length;
+        return DxRunListener.mapResult(RESULTS[next]);
+    }
+
+    @Benchmark
+    public String normalizeBranch() {
+        return DxRunListener.normalizeBranch("refs/remotes/origin/feature/benchmarks");
+    }
+
+    @Benchmark
+    public String writePayload() {
+        return DxJsonWriter.object()
+                .field("pipeline_name", "acme/payments-service/PR-1234")
+                .field("pipeline_source", "jenkins")
+                .field("reference_id", "acme/payments-service/PR-1234 #42")
+                .field("source_id", "acme/payments-service/PR-1234")
+                .field("started_at", 1700000000L)
+                .field("finished_at", 1700000095L)
+                .field("status", "success")
+                .field("repository", "payments-service")
+                .field("source_url", "https://github.com/acme/payments-service.git")
+                .field("head_branch", "feature/benchmarks")
+                .fieldIfNotEmpty("base_branch", "main")
+                .field("commit_sha", "3f786850e387550fdab836ed7e6dc881de23001b")
+                .fieldIfNotEmpty("pr_number", "1234")
+                .field("email", "developer@example.com")
+                .toJson();
+    }
+
+    /** The org.json serialization the payload used to be built with, as a baseline. */
+    @Benchmark
+    public String writePayloadWithJsonObject() {
+        JSONObject json = new JSONObject();
+        json.put("pipeline_name", "acme/payments-service/PR-1234");
+        json.put("pipeline_source", "jenkins");
+        json.put("reference_id", "acme/payments-service/PR-1234 #42");
+        json.put("source_id", "acme/payments-service/PR-1234");
+        json.put("started_at", 1700000000L);
+        json.put("finished_at", 1700000095L);
+        json.put("status", "success");
+        json.put("repository", "payments-service");
+        json.put("source_url", "https://github.com/acme/payments-service.git");
+        json.put("head_branch", "feature/benchmarks");
+        json.put("base_branch", "main");
+        json.put("commit_sha", "3f786850e387550fdab836ed7e6dc881de23001b");
+        json.put("pr_number", "1234");
+        json.put("email", "developer@example.com");
+        return json.toString();
+    }
+
+    @Benchmark
+    public void encodeRequestBody() throws IOException {
+        new DxJsonEntity(payload, false).writeTo(sink);
+    }
+
+    @Benchmark
+    public void encodeGzipRequestBody() throws IOException {
+        new DxJsonEntity(payload, true).writeTo(sink);
+    }
+}
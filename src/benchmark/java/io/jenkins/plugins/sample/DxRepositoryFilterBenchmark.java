@@ -0,0 +1,92 @@
+package io.jenkins.plugins.sample;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures repository name extraction and denylist matching against small and large denylists. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DxRepositoryFilterBenchmark {
+
+    private static final String REPOSITORY_URL = "git@github.com:acme/payments-service.git";
+
+    @Param({"10", "1000"})
+    public int denylistSize;
+
+    private String denylist;
+    private DxRepositoryFilter filter;
+
+    @Setup
+    public void setUp() {
+        denylist = denylist(denylistSize);
+        filter = DxRepositoryFilter.compile(denylist, null);
+    }
+
+    /**
+     * A denylist mixing exact names, prefix, suffix and infix wildcards, and owner-qualified entries, none of which
+     * matches {@code acme/payments-service}.
+     */
+    static String denylist(int size) {
+        StringBuilder entries = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            switch (i % 5) {
+                case 0:
+                    entries.append("legacy-app-").append(i);
+                    break;
+                case 1:
+                    entries.append("team-").append(i).append("-*");
+                    break;
+                case 2:
+                    entries.append("*-sandbox-").append(i);
+                    break;
+                case 3:
+                    entries.append("contractor-").append(i).append("/*");
+                    break;
+                default:
+                    entries.append("svc-?-").append(i);
+            }
+            entries.append(i % 2 == 0 ? '\n' : ',');
+        }
+        return entries.toString();
+    }
+
+    @Benchmark
+    public String extractRepositoryName() {
+        return DxRunListener.extractRepositoryName(REPOSITORY_URL);
+    }
+
+    @Benchmark
+    public String extractRepositoryPath() {
+        return DxRunListener.extractRepositoryPath(REPOSITORY_URL);
+    }
+
+    @Benchmark
+    public boolean compiledFilterMiss() {
+        return filter.isDenylisted("acme/payments-service");
+    }
+
+    @Benchmark
+    public boolean compiledFilterHit() {
+        return filter.isDenylisted("acme/team-1-billing");
+    }
+
+    /** The uncompiled helper, which parses the denylist on every call. */
+    @Benchmark
+    public boolean isRepositoryDenied() {
+        return DxRunListener.isRepositoryDenied("payments-service", denylist);
+    }
+}
@@ -0,0 +1,227 @@
+package io.jenkins.plugins.sample;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMRevisionAction;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DxRunListener#onCompleted} from run metadata to a serialized payload, with delivery stubbed out.
+ * Runs are Mockito mocks, so absolute numbers include some mock dispatch overhead; compare results across commits
+ * rather than against real builds.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DxRunListenerBenchmark {
+
+    /** Branch build, pull request build, or freestyle build whose changelog has no resolvable author. */
+    @Param({"branch", "pull-request", "changelog"})
+    public String scenario;
+
+    @Param({"1000"})
+    public int denylistSize;
+
+    private DxRunListener listener;
+    private Run<?, ?> run;
+    private TaskListener taskListener;
+
+    @Setup
+    public void setUp() throws Exception {
+        taskListener = mock(TaskListener.class);
+        doReturn(new PrintStream(new NullOutputStream())).when(taskListener).getLogger();
+
+        DxGlobalConfiguration config = mock(DxGlobalConfiguration.class);
+        doReturn(true).when(config).isConfigured();
+        doReturn(DxRepositoryFilter.compile(DxRepositoryFilterBenchmark.denylist(denylistSize), null))
+                .when(config)
+                .getRepositoryFilter();
+        doReturn(500).when(config).getMaxChangelogEntries();
+        doReturn(3600L).when(config).getEmailCacheTtlSeconds();
+        doReturn(1000).when(config).getEmailCacheSize();
+        doReturn(new DxConfigSnapshot(config)).when(config).getSnapshot();
+
+        DxEmailResolver emailResolver = new DxEmailResolver();
+        List<ChangeLogSet.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String userId = "developer-" + i;
+            // cache "no address" so every entry is inspected without reaching MailAddressResolver
+            emailResolver.resolve(userId, () -> null, 3600, 1000);
+            User author = mock(User.class);
+            doReturn(userId).when(author).getId();
+            ChangeLogSet.Entry entry = mock(ChangeLogSet.Entry.class);
+            doReturn(author).when(entry).getAuthor();
+            entries.add(entry);
+        }
+
+        switch (scenario) {
+            case "pull-request":
+                run = mockRun(Run.class, new PullRequestHead("PR-1234", "refs/heads/main"));
+                break;
+            case "changelog":
+                AbstractBuild<?, ?> build = mockRun(AbstractBuild.class, new SCMHead("origin/feature/benchmarks"));
+                ChangeLogSet<?> changeSet = mock(ChangeLogSet.class);
+                doAnswer(invocation -> entries.iterator()).when(changeSet).iterator();
+                doReturn(Collections.singletonList(changeSet)).when(build).getChangeSets();
+                run = build;
+                break;
+            default:
+                run = mockRun(Run.class, new SCMHead("refs/heads/feature/benchmarks"));
+        }
+
+        DxDataSender sender = new DxDataSender(config, taskListener) {
+            @Override
+            public boolean send(String payload, Object build) {
+                return payload != null;
+            }
+        };
+        DxMetrics metrics = new DxMetrics();
+        DxScmMetadataResolver scmMetadataResolver = new DxScmMetadataResolver(Collections.emptyList());
+        DxQueueTimings queueTimings = new DxQueueTimings();
+        listener = new DxRunListener() {
+            @Override
+            DxGlobalConfiguration getConfiguration() {
+                return config;
+            }
+
+            @Override
+            DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+                return sender;
+            }
+
+            @Override
+            DxEmailResolver getEmailResolver() {
+                return emailResolver;
+            }
+
+            @Override
+            DxMetrics getMetrics() {
+                return metrics;
+            }
+
+            @Override
+            DxScmMetadataResolver getScmMetadataResolver() {
+                return scmMetadataResolver;
+            }
+
+            @Override
+            DxQueueTimings getQueueTimings() {
+                return queueTimings;
+            }
+        };
+    }
+
+    @Benchmark
+    public void onCompleted() {
+        listener.onCompleted(run, taskListener);
+    }
+
+    private <R extends Run<?, ?>> R mockRun(Class<R> type, SCMHead head) throws Exception {
+        R mock = mock(type);
+        Job<?, ?> job = mock(Job.class);
+        doReturn("acme/payments-service/" + head.getName()).when(job).getFullName();
+        doReturn(job).when(mock).getParent();
+        doReturn(Result.SUCCESS).when(mock).getResult();
+        doReturn(42).when(mock).getNumber();
+        doReturn(1700000000000L).when(mock).getStartTimeInMillis();
+        doReturn(95000L).when(mock).getDuration();
+        doReturn("acme/payments-service/" + head.getName() + "#42").when(mock).getExternalizableId();
+
+        EnvVars env = new EnvVars();
+        env.put("GIT_URL", "https://github.com/acme/payments-service.git");
+        doReturn(env).when(mock).getEnvironment(any(TaskListener.class));
+
+        SCMRevisionAction action = mock(SCMRevisionAction.class);
+        doReturn(new Revision(head, "3f786850e387550fdab836ed7e6dc881de23001b")).when(action).getRevision();
+        doReturn(action).when(mock).getAction(SCMRevisionAction.class);
+        return mock;
+    }
+
+    private static final class PullRequestHead extends SCMHead implements ChangeRequestSCMHead {
+        private static final long serialVersionUID = 1L;
+
+        private final SCMHead target;
+
+        PullRequestHead(String name, String target) {
+            super(name);
+            this.target = new SCMHead(target);
+        }
+
+        @Override
+        public String getId() {
+            return getName().substring(3);
+        }
+
+        @Override
+        public SCMHead getTarget() {
+            return target;
+        }
+    }
+
+    private static final class Revision extends SCMRevision {
+        private static final long serialVersionUID = 1L;
+
+        private final String hash;
+
+        Revision(SCMHead head, String hash) {
+            super(head);
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Revision && ((Revision) o).hash.equals(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return hash;
+        }
+    }
+
+    static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
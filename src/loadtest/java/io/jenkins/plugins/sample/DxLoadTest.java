@@ -0,0 +1,365 @@
+package io.jenkins.plugins.sample;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import hudson.EnvVars;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link DxRunListener} and {@link DxDataSender} against {@link DxStubServer} with synthetic runs from many
+ * threads, then reports throughput, {@code onCompleted} latency, lost and duplicated events and heap growth. Runs
+ * entirely offline; see the {@code loadtest} profile in the pom.
+ *
+ * <p>Options are given as {@code --name=value}, e.g. {@code --runs=20000 --threads=64 --latency=50 --error-rate=0.05
+ * --throttle-rate=0.02 --async=true --batch-size=50}.
+ */
+public final class DxLoadTest {
+
+    private final Map<String, String> options;
+
+    private DxLoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else if (!arg.trim().isEmpty()) {
+                throw new IllegalArgumentException("Unrecognized argument: " + arg);
+            }
+        }
+        int exitCode = new DxLoadTest(options).run();
+        System.exit(exitCode);
+    }
+
+    private int run() throws Exception {
+        int runs = intOption("runs", 5000);
+        int threads = intOption("threads", 32);
+        int jobs = intOption("jobs", 50);
+        boolean async = Boolean.parseBoolean(option("async", "false"));
+        long maxLost = Long.parseLong(option("max-lost", "-1"));
+
+        try (DxStubServer stub = new DxStubServer(
+                intOption("latency", 20),
+                Double.parseDouble(option("error-rate", "0")),
+                Double.parseDouble(option("throttle-rate", "0")),
+                intOption("retry-after", 1),
+                intOption("server-threads", 64))) {
+            DxGlobalConfiguration config = configuration(stub.getBaseUrl(), runs, async);
+            Plugin plugin = new Plugin(config);
+            TaskListener taskListener = stubOnly(TaskListener.class);
+            doReturn(new PrintStream(new NullOutputStream(), true)).when(taskListener).getLogger();
+
+            List<Run<?, ?>> syntheticRuns = createRuns(runs, jobs, taskListener);
+
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long heapBefore = usedHeapAfterGc(memory);
+            DxLatencyHistogram latency = new DxLatencyHistogram();
+
+            long started = System.nanoTime();
+            ExecutorService builds = Executors.newFixedThreadPool(threads);
+            for (Run<?, ?> run : syntheticRuns) {
+                builds.execute(() -> {
+                    long begin = System.nanoTime();
+                    plugin.listener.onCompleted(run, taskListener);
+                    latency.record(System.nanoTime() - begin);
+                });
+            }
+            builds.shutdown();
+            builds.awaitTermination(1, TimeUnit.HOURS);
+            long completed = System.nanoTime();
+            if (async) {
+                plugin.awaitQueueDrained(TimeUnit.MINUTES.toNanos(5));
+            }
+            long delivered = System.nanoTime();
+            long heapAfter = usedHeapAfterGc(memory);
+
+            long lost = 0;
+            for (Run<?, ?> run : syntheticRuns) {
+                if (!stub.wasAccepted(run.getParent().getFullName() + " #" + run.getNumber())) {
+                    lost++;
+                }
+            }
+
+            report("Runs", runs + " on " + threads + " threads, " + (async ? "asynchronous" : "synchronous")
+                    + " delivery");
+            report("onCompleted throughput", String.format(Locale.ROOT, "%.1f runs/s", rate(runs, completed - started)));
+            report("Delivery throughput", String.format(Locale.ROOT, "%.1f runs/s", rate(runs, delivered - started)));
+            report("onCompleted latency", String.format(Locale.ROOT, "p50 %s, p90 %s, p99 %s, max %s",
+                    millis(latency.quantileNanos(0.5)), millis(latency.quantileNanos(0.9)),
+                    millis(latency.quantileNanos(0.99)), millis(latency.quantileNanos(1.0))));
+            DxLatencyHistogram http = plugin.metrics.getHistogram(DxMetrics.Stage.HTTP_REQUEST);
+            report("HTTP round-trip", String.format(Locale.ROOT, "p50 %s, p99 %s over %d requests",
+                    millis(http.quantileNanos(0.5)), millis(http.quantileNanos(0.99)), http.getCount()));
+            report("Stub server", stub.getRequestCount() + " requests, " + stub.getErrorCount() + " errors and "
+                    + stub.getThrottledCount() + " 429s injected");
+            report("Accepted events", stub.getAcceptedCount() + ", " + stub.getDuplicateCount() + " duplicates");
+            report("Lost events", lost + " (" + plugin.queue.getDroppedCount() + " dropped by the queue)");
+            report("Client", plugin.breaker.getRetryCount() + " retries, " + plugin.breaker.getShortCircuitedCount()
+                    + " short-circuited, " + plugin.breaker.getTripCount() + " circuit trips, concurrency limit "
+                    + plugin.flowControl.getConcurrencyLimit());
+            report("Heap growth", String.format(Locale.ROOT, "%.1f MB (%.1f MB -> %.1f MB after GC)",
+                    (heapAfter - heapBefore) / 1048576.0, heapBefore / 1048576.0, heapAfter / 1048576.0));
+
+            if (maxLost >= 0 && lost > maxLost) {
+                System.out.println("FAILED: " + lost + " events lost, at most " + maxLost + " allowed");
+                return 1;
+            }
+            return 0;
+        }
+    }
+
+    private DxGlobalConfiguration configuration(String baseUrl, int runs, boolean async) {
+        DxGlobalConfiguration config = stubOnly(DxGlobalConfiguration.class);
+        doReturn(baseUrl).when(config).getDxBaseUrl();
+        doReturn(true).when(config).isConfigured();
+        doReturn(DxRepositoryFilter.EMPTY).when(config).getRepositoryFilter();
+        doReturn(DxGlobalConfiguration.DEFAULT_CREDENTIALS_ID).when(config).getCredentialsId();
+        doReturn(DxGlobalConfiguration.DEFAULT_CREDENTIAL_CACHE_TTL_SECONDS).when(config).getCredentialCacheTtlSeconds();
+        doReturn(DxGlobalConfiguration.DEFAULT_EMAIL_CACHE_TTL_SECONDS).when(config).getEmailCacheTtlSeconds();
+        doReturn(DxGlobalConfiguration.DEFAULT_EMAIL_CACHE_SIZE).when(config).getEmailCacheSize();
+        doReturn(DxGlobalConfiguration.DEFAULT_MAX_CHANGELOG_ENTRIES).when(config).getMaxChangelogEntries();
+
+        doReturn(async).when(config).isAsyncDelivery();
+        doReturn(Math.max(runs, 1)).when(config).getQueueCapacity();
+        doReturn(intOption("dispatchers", 4)).when(config).getDispatcherThreads();
+        doReturn(DxDeliveryQueue.OverflowPolicy.valueOf(option("overflow", "BLOCK"))).when(config).getOverflowPolicy();
+        doReturn(DxGlobalConfiguration.DEFAULT_OVERFLOW_BLOCK_MILLIS).when(config).getOverflowBlockMillis();
+        doReturn(intOption("batch-size", 1)).when(config).getBatchSize();
+        doReturn((long) intOption("batch-linger", 50)).when(config).getBatchLingerMillis();
+
+        doReturn(intOption("max-retries", DxGlobalConfiguration.DEFAULT_MAX_RETRIES)).when(config).getMaxRetries();
+        doReturn(DxGlobalConfiguration.DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS)
+                .when(config)
+                .getRetryInitialBackoffMillis();
+        doReturn(DxGlobalConfiguration.DEFAULT_RETRY_MAX_BACKOFF_MILLIS).when(config).getRetryMaxBackoffMillis();
+        doReturn(DxGlobalConfiguration.DEFAULT_CIRCUIT_FAILURE_THRESHOLD).when(config).getCircuitFailureThreshold();
+        doReturn(DxGlobalConfiguration.DEFAULT_CIRCUIT_OPEN_SECONDS).when(config).getCircuitOpenSeconds();
+
+        doReturn(intOption("rate-limit", 0)).when(config).getRateLimitPerSecond();
+        doReturn(DxGlobalConfiguration.DEFAULT_RATE_LIMIT_BURST).when(config).getRateLimitBurst();
+        doReturn(intOption("max-concurrency", DxGlobalConfiguration.DEFAULT_MAX_CONCURRENT_REQUESTS))
+                .when(config)
+                .getMaxConcurrentRequests();
+        doReturn(DxGlobalConfiguration.DEFAULT_FLOW_CONTROL_TIMEOUT_MILLIS).when(config).getFlowControlTimeoutMillis();
+
+        doReturn(Boolean.parseBoolean(option("gzip", "true"))).when(config).isGzipRequests();
+        doReturn(DxGlobalConfiguration.DEFAULT_TIMEOUT_MILLIS).when(config).getConnectTimeoutMillis();
+        doReturn(DxGlobalConfiguration.DEFAULT_TIMEOUT_MILLIS).when(config).getReadTimeoutMillis();
+        doReturn(intOption("max-connections", DxGlobalConfiguration.DEFAULT_MAX_CONNECTIONS))
+                .when(config)
+                .getMaxConnections();
+        doReturn(intOption("max-connections", DxGlobalConfiguration.DEFAULT_MAX_CONNECTIONS_PER_ROUTE))
+                .when(config)
+                .getMaxConnectionsPerRoute();
+        doReturn(DxGlobalConfiguration.DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS)
+                .when(config)
+                .getIdleConnectionTimeoutSeconds();
+        doReturn(new DxConfigSnapshot(config)).when(config).getSnapshot();
+        return config;
+    }
+
+    private static List<Run<?, ?>> createRuns(int runs, int jobs, TaskListener taskListener) throws Exception {
+        List<Job<?, ?>> parents = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, jobs); i++) {
+            Job<?, ?> job = stubOnly(Job.class);
+            doReturn("load/service-" + i + "/main").when(job).getFullName();
+            parents.add(job);
+        }
+
+        List<Run<?, ?>> result = new ArrayList<>(runs);
+        for (int i = 0; i < runs; i++) {
+            Job<?, ?> job = parents.get(i % parents.size());
+            int number = i / parents.size() + 1;
+            Run<?, ?> run = stubOnly(Run.class);
+            EnvVars env = new EnvVars();
+            env.put("GIT_URL", "https://github.com/load/service-" + (i % parents.size()) + ".git");
+            doReturn(job).when(run).getParent();
+            doReturn(number).when(run).getNumber();
+            doReturn(i % 10 == 0 ? Result.FAILURE : Result.SUCCESS).when(run).getResult();
+            doReturn(1700000000000L + i * 1000L).when(run).getStartTimeInMillis();
+            doReturn(60000L).when(run).getDuration();
+            doReturn(job.getFullName() + "#" + number).when(run).getExternalizableId();
+            doReturn(env).when(run).getEnvironment(any(TaskListener.class));
+            result.add(run);
+        }
+        return result;
+    }
+
+    /** The plugin's singletons, created outside Jenkins and wired together through the package-private seams. */
+    private static final class Plugin {
+        final DxHttpTransport transport = new DxHttpTransport();
+        final DxCircuitBreaker breaker = new DxCircuitBreaker();
+        final DxFlowControl flowControl = new DxFlowControl();
+        final DxMetrics metrics = new DxMetrics();
+        final DxEmailResolver emailResolver = new DxEmailResolver();
+        final DxScmMetadataResolver scmMetadataResolver = new DxScmMetadataResolver(Collections.emptyList());
+        final DxQueueTimings queueTimings = new DxQueueTimings();
+        final DxCredentialResolver credentialResolver = stubOnly(DxCredentialResolver.class);
+        final DxDeliveryQueue queue;
+        final DxRunListener listener;
+
+        Plugin(DxGlobalConfiguration config) {
+            Secret token = stubOnly(Secret.class);
+            doReturn("load-test-token").when(token).getPlainText();
+            doReturn(token).when(credentialResolver).resolve(anyString(), any(Run.class), anyLong());
+
+            queue = new DxDeliveryQueue() {
+                @Override
+                DxGlobalConfiguration getConfiguration() {
+                    return config;
+                }
+
+                @Override
+                DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+                    return sender(config, listener);
+                }
+            };
+            listener = new DxRunListener() {
+                @Override
+                DxGlobalConfiguration getConfiguration() {
+                    return config;
+                }
+
+                @Override
+                DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+                    return sender(config, listener);
+                }
+
+                @Override
+                DxDeliveryQueue getDeliveryQueue() {
+                    return queue;
+                }
+
+                @Override
+                DxEmailResolver getEmailResolver() {
+                    return emailResolver;
+                }
+
+                @Override
+                DxMetrics getMetrics() {
+                    return metrics;
+                }
+
+                @Override
+                DxScmMetadataResolver getScmMetadataResolver() {
+                    return scmMetadataResolver;
+                }
+
+                @Override
+                DxQueueTimings getQueueTimings() {
+                    return queueTimings;
+                }
+            };
+        }
+
+        DxDataSender sender(DxGlobalConfiguration config, TaskListener listener) {
+            return new DxDataSender(config, listener) {
+                @Override
+                DxCredentialResolver getCredentialResolver() {
+                    return credentialResolver;
+                }
+
+                @Override
+                DxHttpTransport getTransport() {
+                    return transport;
+                }
+
+                @Override
+                List<? extends DxEventSink> getSinks() {
+                    return Collections.emptyList();
+                }
+
+                @Override
+                DxCircuitBreaker getCircuitBreaker() {
+                    return breaker;
+                }
+
+                @Override
+                DxFlowControl getFlowControl() {
+                    return flowControl;
+                }
+
+                @Override
+                DxMetrics getMetrics() {
+                    return metrics;
+                }
+            };
+        }
+
+        void awaitQueueDrained(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (System.nanoTime() - deadline < 0) {
+                if (queue.getQueueDepth() == 0
+                        && queue.getDispatchedCount() + queue.getDroppedCount() >= queue.getEnqueuedCount()) {
+                    return;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static <T> T stubOnly(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static double rate(int count, long nanos) {
+        return count / (nanos / 1e9);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+    }
+
+    private static void report(String label, String value) {
+        System.out.println(String.format(Locale.ROOT, "%-24s %s", label + ":", value));
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
@@ -0,0 +1,149 @@
+package io.jenkins.plugins.sample;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * In-process stand-in for the DX pipeline run API on a loopback port. Every request waits the configured latency,
+ * then is answered with a 429 and {@code Retry-After}, a 500, or a 200 according to the configured rates. Accepted
+ * run events are recorded by {@code reference_id}.
+ */
+final class DxStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final double throttleRate;
+    private final int retryAfterSeconds;
+
+    private final Set<String> accepted = ConcurrentHashMap.newKeySet();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    DxStubServer(long latencyMillis, double errorRate, double throttleRate, int retryAfterSeconds, int threads)
+            throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(DxDataSender.SYNC_PATH, exchange -> handle(exchange, false));
+        server.createContext(DxDataSender.BULK_SYNC_PATH, exchange -> handle(exchange, true));
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, boolean bulk) throws IOException {
+        try {
+            requests.increment();
+            String body = readBody(exchange);
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < throttleRate) {
+                throttled.increment();
+                exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            if (roll < throttleRate + errorRate) {
+                errors.increment();
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            if (bulk) {
+                JSONArray runs = new JSONObject(body).getJSONArray("pipeline_runs");
+                for (int i = 0; i < runs.length(); i++) {
+                    record(runs.getJSONObject(i));
+                }
+            } else {
+                record(new JSONObject(body));
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(400, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void record(JSONObject run) {
+        if (!accepted.add(run.getString("reference_id"))) {
+            duplicates.increment();
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    boolean wasAccepted(String referenceId) {
+        return accepted.contains(referenceId);
+    }
+
+    int getAcceptedCount() {
+        return accepted.size();
+    }
+
+    long getRequestCount() {
+        return requests.sum();
+    }
+
+    long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    long getErrorCount() {
+        return errors.sum();
+    }
+
+    long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,532 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+
+/**
+ * Sends the payloads {@link DxRunListener} would have produced for builds that completed before the plugin was
+ * installed.
+ *
+ * <p>Jobs are iterated lazily and handed to a bounded worker pool; each worker walks one job's builds from newest to
+ * oldest, loading them one at a time, and stops at the first build older than the requested range. The lowest build
+ * number delivered for each job is checkpointed under {@code JENKINS_HOME}, so an interrupted backfill resumes where
+ * it stopped without loading the builds it already handled. A build DX did not accept holds the job's checkpoint
+ * back, so resuming retries it. Requests go through the regular {@link DxDataSender}, paced by a separate backfill
+ * rate limit.
+ */
+@Extension
+public class DxBackfill {
+
+    private static final Logger LOGGER = Logger.getLogger(DxBackfill.class.getName());
+
+    private static final TaskListener BACKGROUND_LISTENER = new LogTaskListener(LOGGER, Level.FINE);
+
+    static final int DEFAULT_THREADS = 2;
+    static final int DEFAULT_RATE_PER_SECOND = 10;
+
+    static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+    /** Lifecycle of the most recent backfill. */
+    public enum State {
+        IDLE,
+        RUNNING,
+        FINISHED,
+        CANCELLED,
+        /** Stopped because DX became unavailable; resuming continues from the checkpoint. */
+        PAUSED,
+        FAILED
+    }
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong jobsDone = new AtomicLong();
+
+    private volatile State state = State.IDLE;
+    private volatile boolean stopRequested;
+    private volatile State stopState;
+    private ExecutorService workers;
+    private File checkpointFile;
+
+    public DxBackfill() {}
+
+    DxBackfill(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public static DxBackfill get() {
+        return ExtensionList.lookupSingleton(DxBackfill.class);
+    }
+
+    /**
+     * Starts a backfill in the background.
+     *
+     * @param fromMillis oldest build timestamp to send, inclusive
+     * @param toMillis newest build timestamp to send, exclusive
+     * @param resume continue the last interrupted backfill, with its date range, if a checkpoint exists
+     */
+    public synchronized void start(long fromMillis, long toMillis, int threads, int ratePerSecond, boolean resume)
+            throws IOException {
+        if (state == State.RUNNING) {
+            throw new IllegalStateException("A DX backfill is already running");
+        }
+        DxGlobalConfiguration config = getConfiguration();
+        if (config == null || !config.isConfigured()) {
+            throw new IllegalStateException("DX data sharing is not configured");
+        }
+        if (fromMillis >= toMillis) {
+            throw new IllegalArgumentException("The start of the date range must be before its end");
+        }
+
+        File file = getCheckpointFile();
+        Checkpoint loaded = resume ? Checkpoint.load(file) : null;
+        Checkpoint checkpoint = loaded != null ? loaded : new Checkpoint(file, fromMillis, toMillis);
+        checkpoint.save();
+
+        sent.set(0);
+        failed.set(0);
+        rejected.set(0);
+        skipped.set(0);
+        jobsDone.set(0);
+        stopRequested = false;
+        stopState = null;
+        state = State.RUNNING;
+
+        int poolSize = Math.max(1, threads);
+        workers = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(poolSize),
+                new NamingThreadFactory(new DaemonThreadFactory(), "DxBackfillWorker"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        ExecutorService coordinator =
+                Executors.newSingleThreadExecutor(new NamingThreadFactory(new DaemonThreadFactory(), "DxBackfill"));
+        ExecutorService pool = workers;
+        Throttle throttle = new Throttle(ratePerSecond);
+        coordinator.execute(() -> run(checkpoint, pool, throttle));
+        coordinator.shutdown();
+        LOGGER.log(Level.INFO, "DX: backfill started for builds between {0} and {1}", new Object[] {
+            checkpoint.from, checkpoint.to
+        });
+    }
+
+    /** Stops the running backfill after the requests in flight; it can be resumed from the checkpoint. */
+    public synchronized void cancel() {
+        stop(State.CANCELLED);
+    }
+
+    private synchronized void stop(State reason) {
+        if (state != State.RUNNING || stopRequested) {
+            return;
+        }
+        stopRequested = true;
+        stopState = reason;
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void run(Checkpoint checkpoint, ExecutorService pool, Throttle throttle) {
+        State outcome = State.FINISHED;
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            for (Job<?, ?> job : getJobs()) {
+                if (stopRequested) {
+                    break;
+                }
+                if (checkpoint.isDone(job.getFullName())) {
+                    jobsDone.incrementAndGet();
+                    continue;
+                }
+                pool.execute(() -> backfill(job, checkpoint, throttle));
+                saveIfDue(checkpoint);
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(CHECKPOINT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                saveIfDue(checkpoint);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = State.CANCELLED;
+        } catch (RuntimeException e) {
+            if (!stopRequested) {
+                LOGGER.log(Level.WARNING, "DX: backfill failed", e);
+            }
+            outcome = State.FAILED;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (stopRequested && stopState != null) {
+            outcome = stopState;
+        }
+        try {
+            if (outcome == State.FINISHED && failed.get() == 0) {
+                checkpoint.delete();
+            } else {
+                checkpoint.save();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "DX: unable to write the backfill checkpoint", e);
+        }
+        state = outcome;
+        LOGGER.log(Level.INFO, "DX: backfill {0}. {1}", new Object[] {
+            outcome.name().toLowerCase(Locale.ROOT), getStatus()
+        });
+    }
+
+    /**
+     * Sends the builds of one job within the checkpoint's date range, newest first, starting below the checkpointed
+     * build. Once a build is not accepted for a reason a later attempt may get past, the rest of the job is still sent
+     * but its checkpoint no longer advances. Builds DX rejects for good are passed over, as resending them cannot help.
+     */
+    void backfill(Job<?, ?> job, Checkpoint checkpoint, Throttle throttle) {
+        String name = job.getFullName();
+        int resumeBelow = checkpoint.getResumeBelow(name);
+        DxGlobalConfiguration config = getConfiguration();
+        DxRunListener runListener = getRunListener();
+        DxDataSender sender = createDxDataSender(config, BACKGROUND_LISTENER);
+        DxDeduplicator deduplicator = config.isDeduplicateRuns() ? getDeduplicator() : null;
+        int batchSize = Math.max(1, config.getBatchSize());
+        List<DxEvent> batch = new ArrayList<>(batchSize);
+        boolean advance = true;
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            Run<?, ?> first =
+                    resumeBelow == Integer.MAX_VALUE ? job.getLastBuild() : job.getNearestOldBuild(resumeBelow - 1);
+            for (Run<?, ?> run = first; run != null; run = run.getPreviousBuild()) {
+                if (stopRequested) {
+                    return;
+                }
+                if (run.isBuilding() || run.getTimeInMillis() >= checkpoint.to) {
+                    continue;
+                }
+                if (run.getTimeInMillis() < checkpoint.from) {
+                    break;
+                }
+                String payload = deduplicator != null && deduplicator.isDelivered(run)
+                        ? null
+                        : runListener.buildPayload(run, BACKGROUND_LISTENER, config);
+                if (payload == null) {
+                    skipped.incrementAndGet();
+                    if (advance && batch.isEmpty()) {
+                        checkpoint.record(name, run.getNumber());
+                    }
+                    continue;
+                }
+                throttle.acquire();
+                batch.add(new DxEvent(payload, run));
+                if (batch.size() >= batchSize) {
+                    advance &= flush(sender, batch, checkpoint, name, advance);
+                    if (stopRequested) {
+                        return;
+                    }
+                }
+            }
+            advance &= flush(sender, batch, checkpoint, name, advance);
+            if (advance && !stopRequested) {
+                checkpoint.markDone(name);
+                jobsDone.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "DX: backfill of " + name + " failed", e);
+        }
+    }
+
+    /**
+     * Sends a batch and, if {@code advance}, moves the job's checkpoint down to the last build accepted or rejected for
+     * good before the first one that failed otherwise. Pauses the backfill if DX is unavailable.
+     *
+     * @return {@code false} if any build of the batch failed for a reason other than a rejection
+     */
+    private boolean flush(
+            DxDataSender sender, List<DxEvent> batch, Checkpoint checkpoint, String job, boolean advance) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        Set<DxEvent> accepted = new HashSet<>(sender.sendBatch(batch));
+        Set<DxEvent> refused = new HashSet<>(sender.getRejected());
+        refused.removeAll(accepted);
+        sent.addAndGet(accepted.size());
+        rejected.addAndGet(refused.size());
+        failed.addAndGet(batch.size() - accepted.size() - refused.size());
+        if (!refused.isEmpty()) {
+            LOGGER.log(Level.WARNING, "DX: {0} builds of {1} rejected by DX. Skipping them", new Object[] {
+                refused.size(), job
+            });
+        }
+        boolean complete = accepted.size() + refused.size() >= batch.size();
+        if (!complete && getCircuitBreaker().getState() != DxCircuitBreaker.State.CLOSED) {
+            LOGGER.info("DX: API unavailable, pausing backfill");
+            stop(State.PAUSED);
+        }
+        for (DxEvent event : batch) {
+            if (!advance || !accepted.contains(event) && !refused.contains(event)) {
+                break;
+            }
+            checkpoint.record(job, event.getRun().getNumber());
+        }
+        batch.clear();
+        return complete;
+    }
+
+    private static void saveIfDue(Checkpoint checkpoint) {
+        try {
+            checkpoint.saveIfDue(System.currentTimeMillis());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "DX: unable to write the backfill checkpoint", e);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /** Number of builds DX rejected for good, such as with a malformed payload; they are not sent again on resume. */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getJobsDoneCount() {
+        return jobsDone.get();
+    }
+
+    /** Whether an interrupted backfill can be resumed. */
+    public boolean hasCheckpoint() {
+        return getCheckpointFile().isFile();
+    }
+
+    /** One-line summary of the current or last backfill. */
+    public String getStatus() {
+        return state.name().charAt(0) + state.name().substring(1).toLowerCase(Locale.ROOT) + ": " + sent.get()
+                + " sent, " + failed.get() + " failed, " + rejected.get() + " rejected, " + skipped.get()
+                + " skipped as filtered or already delivered, " + jobsDone.get() + " jobs completed";
+    }
+
+    /**
+     * Parses an ISO date such as {@code 2024-01-31} in the controller's time zone.
+     *
+     * @param endOfDay return the end of that day, so a range ending on a date includes it
+     * @return epoch milliseconds, or {@code defaultValue} for a blank value
+     */
+    static long parseDate(String value, long defaultValue, boolean endOfDay) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            LocalDate date = LocalDate.parse(value.trim());
+            return (endOfDay ? date.plusDays(1) : date)
+                    .atStartOfDay(ZoneId.systemDefault())
+                    .toInstant()
+                    .toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Expected a date such as 2024-01-31 but got '" + value + "'", e);
+        }
+    }
+
+    Iterable<Job> getJobs() {
+        return Jenkins.get().allItems(Job.class);
+    }
+
+    DxGlobalConfiguration getConfiguration() {
+        return DxGlobalConfiguration.get();
+    }
+
+    DxRunListener getRunListener() {
+        return RunListener.all().get(DxRunListener.class);
+    }
+
+    DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+        return new DxDataSender(config, listener);
+    }
+
+    DxCircuitBreaker getCircuitBreaker() {
+        return DxCircuitBreaker.get();
+    }
+
+    DxDeduplicator getDeduplicator() {
+        return DxDeduplicator.get();
+    }
+
+    private synchronized File getCheckpointFile() {
+        if (checkpointFile == null) {
+            checkpointFile = new File(Jenkins.get().getRootDir(), "dx-data-sharer/backfill-checkpoint.properties");
+        }
+        return checkpointFile;
+    }
+
+    /**
+     * Date range and per-job progress of a backfill. Builds are sent newest first, so progress is the lowest build
+     * number handled for each job; {@code 0} marks a finished job.
+     */
+    static final class Checkpoint {
+
+        private static final String JOB_PREFIX = "job.";
+
+        final long from;
+        final long to;
+
+        private final File file;
+        private final Map<String, Integer> progress = new ConcurrentHashMap<>();
+        private long lastSaved;
+
+        Checkpoint(File file, long from, long to) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+        }
+
+        /** Loads a saved checkpoint, or returns {@code null} if there is none. */
+        static Checkpoint load(File file) throws IOException {
+            if (!file.isFile()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+            Checkpoint checkpoint = new Checkpoint(
+                    file,
+                    Long.parseLong(properties.getProperty("from", "0")),
+                    Long.parseLong(properties.getProperty("to", Long.toString(Long.MAX_VALUE))));
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(JOB_PREFIX)) {
+                    checkpoint.progress.put(
+                            key.substring(JOB_PREFIX.length()), Integer.parseInt(properties.getProperty(key)));
+                }
+            }
+            return checkpoint;
+        }
+
+        /** Builds of the job numbered at or above this value have already been handled. */
+        int getResumeBelow(String job) {
+            return progress.getOrDefault(job, Integer.MAX_VALUE);
+        }
+
+        boolean isDone(String job) {
+            return getResumeBelow(job) == 0;
+        }
+
+        void record(String job, int number) {
+            progress.merge(job, number, Math::min);
+        }
+
+        void markDone(String job) {
+            progress.put(job, 0);
+        }
+
+        synchronized void saveIfDue(long now) throws IOException {
+            if (now - lastSaved >= CHECKPOINT_INTERVAL_MILLIS) {
+                save();
+            }
+        }
+
+        synchronized void save() throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("from", Long.toString(from));
+            properties.setProperty("to", Long.toString(to));
+            for (Map.Entry<String, Integer> entry : progress.entrySet()) {
+                properties.setProperty(JOB_PREFIX + entry.getKey(), Integer.toString(entry.getValue()));
+            }
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                properties.store(out, "DX backfill checkpoint");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            lastSaved = System.currentTimeMillis();
+        }
+
+        synchronized void delete() throws IOException {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /** Spaces out backfill requests so that a backfill leaves room for live builds. */
+    static final class Throttle {
+
+        private final long intervalNanos;
+        private long next;
+
+        Throttle(int perSecond) {
+            this.intervalNanos = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+        }
+
+        void acquire() throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (next - now < 0) {
+                    next = now;
+                }
+                wait = next - now;
+                next += intervalNanos;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
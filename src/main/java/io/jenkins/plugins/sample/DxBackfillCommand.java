@@ -0,0 +1,66 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.Jenkins;
+import org.kohsuke.args4j.Option;
+
+/** {@code dx-backfill} CLI command, the command-line counterpart of {@link DxBackfillLink}. */
+@Extension
+public class DxBackfillCommand extends CLICommand {
+
+    @Option(name = "--from", metaVar = "DATE", usage = "Oldest build date to send, e.g. 2024-01-31.")
+    public String from;
+
+    @Option(name = "--to", metaVar = "DATE", usage = "Newest build date to send, inclusive.")
+    public String to;
+
+    @Option(name = "--threads", usage = "Number of jobs backfilled in parallel.")
+    public int threads = DxBackfill.DEFAULT_THREADS;
+
+    @Option(name = "--rate", usage = "Maximum builds sent per second, or 0 for no limit.")
+    public int ratePerSecond = DxBackfill.DEFAULT_RATE_PER_SECOND;
+
+    @Option(name = "--resume", usage = "Continue the last interrupted backfill from its checkpoint.")
+    public boolean resume;
+
+    @Option(name = "--cancel", usage = "Cancel the running backfill.")
+    public boolean cancel;
+
+    @Option(name = "--wait", usage = "Wait for the backfill to end, printing progress.")
+    public boolean waitForCompletion;
+
+    @Override
+    public String getShortDescription() {
+        return "Sends the history of existing builds to DX.";
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        DxBackfill backfill = DxBackfill.get();
+        if (cancel) {
+            backfill.cancel();
+            stdout.println(backfill.getStatus());
+            return 0;
+        }
+
+        backfill.start(
+                DxBackfill.parseDate(from, 0, false),
+                DxBackfill.parseDate(to, Long.MAX_VALUE, true),
+                threads,
+                ratePerSecond,
+                resume);
+        if (!waitForCompletion) {
+            stdout.println("DX backfill started.");
+            return 0;
+        }
+        while (backfill.isRunning()) {
+            stdout.println(backfill.getStatus());
+            TimeUnit.SECONDS.sleep(10);
+        }
+        stdout.println(backfill.getStatus());
+        return backfill.getState() == DxBackfill.State.FINISHED ? 0 : 1;
+    }
+}
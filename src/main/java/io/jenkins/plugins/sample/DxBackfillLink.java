@@ -0,0 +1,83 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import java.io.IOException;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/** Management page at {@code /manage/dx-backfill} for starting, resuming and cancelling a {@link DxBackfill}. */
+@Extension
+public class DxBackfillLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "DX backfill";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Send the history of existing builds to DX.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "dx-backfill";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    public DxBackfill getBackfill() {
+        return DxBackfill.get();
+    }
+
+    public int getDefaultThreads() {
+        return DxBackfill.DEFAULT_THREADS;
+    }
+
+    public int getDefaultRatePerSecond() {
+        return DxBackfill.DEFAULT_RATE_PER_SECOND;
+    }
+
+    @RequirePOST
+    public HttpResponse doStart(
+            @QueryParameter String from,
+            @QueryParameter String to,
+            @QueryParameter int threads,
+            @QueryParameter int ratePerSecond,
+            @QueryParameter boolean resume)
+            throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        try {
+            DxBackfill.get()
+                    .start(
+                            DxBackfill.parseDate(from, 0, false),
+                            DxBackfill.parseDate(to, Long.MAX_VALUE, true),
+                            threads > 0 ? threads : DxBackfill.DEFAULT_THREADS,
+                            ratePerSecond,
+                            resume);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return HttpResponses.errorWithoutStack(400, e.getMessage());
+        }
+        return HttpResponses.redirectToDot();
+    }
+
+    @RequirePOST
+    public HttpResponse doCancel() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        DxBackfill.get().cancel();
+        return HttpResponses.redirectToDot();
+    }
+}
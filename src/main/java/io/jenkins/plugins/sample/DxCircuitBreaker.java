@@ -0,0 +1,131 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Stops sending to DX after repeated transient failures, so that builds do not each wait out a timeout while DX is
+ * down. After a cool-down a single probe request is let through; its outcome closes or reopens the circuit.
+ */
+@Extension
+public class DxCircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(DxCircuitBreaker.class.getName());
+
+    public enum State {
+        /** Requests flow normally. */
+        CLOSED,
+        /** Requests are refused until the cool-down ends. */
+        OPEN,
+        /** One probe request is in flight; everything else is refused until it completes. */
+        HALF_OPEN
+    }
+
+    private final LongSupplier clock;
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong trips = new AtomicLong();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probeInFlight;
+
+    public DxCircuitBreaker() {
+        this(System::nanoTime);
+    }
+
+    DxCircuitBreaker(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static DxCircuitBreaker get() {
+        return ExtensionList.lookupSingleton(DxCircuitBreaker.class);
+    }
+
+    /**
+     * Asks permission to send a request. Every granted request must be followed by {@link #recordSuccess()} or
+     * {@link #recordFailure(int, long)}.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openUntil < 0) {
+                    shortCircuited.incrementAndGet();
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    shortCircuited.incrementAndGet();
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    /** DX answered; it is reachable even if it rejected the request. */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("DX: API reachable again, closing circuit breaker");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    /** The request failed in a way that suggests DX is unavailable. */
+    public synchronized void recordFailure(int failureThreshold, long openMillis) {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.OPEN) {
+            return;
+        }
+        if (state == State.HALF_OPEN || consecutiveFailures >= Math.max(1, failureThreshold)) {
+            state = State.OPEN;
+            openUntil = clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(openMillis);
+            trips.incrementAndGet();
+            LOGGER.warning("DX: " + consecutiveFailures + " consecutive failures, pausing delivery for "
+                    + openMillis + " ms");
+        }
+    }
+
+    /**
+     * Whether a response suggests DX is down: a connection error or a 5xx response. A 503 with {@code Retry-After} is
+     * DX shedding load, like a 429, which {@link DxFlowControl} handles and which does not count against the circuit.
+     */
+    static boolean isOutage(int code, long retryAfterMillis) {
+        return code == DxDataSender.CONNECTION_ERROR || code >= 500 && !(code == 503 && retryAfterMillis >= 0);
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /** Number of requests refused while the circuit was open. */
+    public long getShortCircuitedCount() {
+        return shortCircuited.get();
+    }
+
+    /** Number of times the circuit has opened. */
+    public long getTripCount() {
+        return trips.get();
+    }
+}
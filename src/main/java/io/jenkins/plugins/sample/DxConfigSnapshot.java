@@ -0,0 +1,175 @@
+package io.jenkins.plugins.sample;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable view of the settings the delivery path reads for every event, with everything derivable from them parsed
+ * and compiled up front: the endpoint URIs, the repository filter, the retry policy and the HTTP client settings.
+ * {@link DxGlobalConfiguration} publishes one through a volatile field and replaces it whenever it is saved, so a
+ * delivery sees a consistent set of values even while the configuration form is being submitted.
+ */
+public final class DxConfigSnapshot {
+
+    @CheckForNull
+    private final String baseUrl;
+
+    /** Endpoint of every API path the plugin posts to, empty if the base URL is missing or malformed. */
+    private final Map<String, URI> endpoints;
+
+    private final DxRepositoryFilter repositoryFilter;
+    private final DxRetryPolicy retryPolicy;
+    private final DxHttpTransport.Settings httpSettings;
+    private final String credentialsId;
+    private final long credentialCacheTtlSeconds;
+    private final boolean debugPayloads;
+    private final boolean gzipRequests;
+    private final boolean deduplicateRuns;
+    private final int circuitFailureThreshold;
+    private final long circuitOpenMillis;
+    private final int rateLimitPerSecond;
+    private final int rateLimitBurst;
+    private final int maxConcurrentRequests;
+    private final long flowControlTimeoutMillis;
+    private final DxRollupAggregator.JobSelector rollupJobs;
+    private final long rollupWindowMillis;
+
+    DxConfigSnapshot(DxGlobalConfiguration config) {
+        String url = config.getDxBaseUrl() != null ? config.getDxBaseUrl().trim() : "";
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        Map<String, URI> resolved = new HashMap<>();
+        if (!url.isEmpty()) {
+            try {
+                for (String path : DxDataSender.PATHS) {
+                    resolved.put(path, URI.create(url + path));
+                }
+            } catch (IllegalArgumentException e) {
+                resolved.clear();
+            }
+        }
+        this.baseUrl = url.isEmpty() ? null : url;
+        this.endpoints = resolved;
+        this.repositoryFilter =
+                DxRepositoryFilter.compile(config.getRepositoryDenylist(), config.getRepositoryAllowlist());
+        this.retryPolicy = DxRetryPolicy.from(config);
+        this.httpSettings = new DxHttpTransport.Settings(config);
+        this.credentialsId = config.getCredentialsId();
+        this.credentialCacheTtlSeconds = config.getCredentialCacheTtlSeconds();
+        this.debugPayloads = config.isDebugPayloads();
+        this.gzipRequests = config.isGzipRequests();
+        this.deduplicateRuns = config.isDeduplicateRuns();
+        this.circuitFailureThreshold = config.getCircuitFailureThreshold();
+        this.circuitOpenMillis = TimeUnit.SECONDS.toMillis(config.getCircuitOpenSeconds());
+        this.rateLimitPerSecond = config.getRateLimitPerSecond();
+        this.rateLimitBurst = config.getRateLimitBurst();
+        this.maxConcurrentRequests = config.getMaxConcurrentRequests();
+        this.flowControlTimeoutMillis = config.getFlowControlTimeoutMillis();
+        this.rollupJobs = config.isRollupEnabled()
+                ? DxRollupAggregator.JobSelector.compile(config.getRollupJobs())
+                : DxRollupAggregator.JobSelector.EMPTY;
+        this.rollupWindowMillis = TimeUnit.MINUTES.toMillis(
+                config.getRollupWindowMinutes() > 0
+                        ? config.getRollupWindowMinutes()
+                        : DxGlobalConfiguration.DEFAULT_ROLLUP_WINDOW_MINUTES);
+    }
+
+    /**
+     * Returns the configuration's published snapshot, or builds one for a configuration that does not publish any,
+     * such as a test double.
+     */
+    @Nonnull
+    static DxConfigSnapshot of(DxGlobalConfiguration config) {
+        DxConfigSnapshot snapshot = config.getSnapshot();
+        return snapshot != null ? snapshot : new DxConfigSnapshot(config);
+    }
+
+    /** Whether a DX API base URL is set, even if it cannot be parsed. */
+    public boolean isApiConfigured() {
+        return baseUrl != null;
+    }
+
+    /** Absolute URI of a DX API path, or {@code null} if the base URL is missing or malformed. */
+    @CheckForNull
+    public URI getEndpoint(String path) {
+        URI endpoint = endpoints.get(path);
+        if (endpoint != null || endpoints.isEmpty()) {
+            return endpoint;
+        }
+        try {
+            return URI.create(baseUrl + path);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public DxRepositoryFilter getRepositoryFilter() {
+        return repositoryFilter;
+    }
+
+    DxRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    DxHttpTransport.Settings getHttpSettings() {
+        return httpSettings;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    public long getCredentialCacheTtlSeconds() {
+        return credentialCacheTtlSeconds;
+    }
+
+    public boolean isDebugPayloads() {
+        return debugPayloads;
+    }
+
+    public boolean isGzipRequests() {
+        return gzipRequests;
+    }
+
+    public boolean isDeduplicateRuns() {
+        return deduplicateRuns;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public long getCircuitOpenMillis() {
+        return circuitOpenMillis;
+    }
+
+    public int getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public long getFlowControlTimeoutMillis() {
+        return flowControlTimeoutMillis;
+    }
+
+    /** Jobs whose runs are aggregated into rollups, or {@link DxRollupAggregator.JobSelector#EMPTY} if disabled. */
+    public DxRollupAggregator.JobSelector getRollupJobs() {
+        return rollupJobs;
+    }
+
+    public long getRollupWindowMillis() {
+        return rollupWindowMillis;
+    }
+}
@@ -0,0 +1,137 @@
+package io.jenkins.plugins.sample;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+import hudson.model.queue.Tasks;
+import hudson.security.ACL;
+import hudson.util.Secret;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+
+/**
+ * Resolves the DX API token for a run, caching the result per credential ID, folder and the authentication the run's
+ * job executes as, so that the credential provider chain is walked once per folder rather than once per build. The
+ * lookup itself is the run-scoped {@link CredentialsProvider#findCredentialById}, so a run never sees credentials its
+ * own authentication could not, and usage is still tracked on every run.
+ *
+ * <p>Entries expire after the configured TTL. They are dropped early when a folder or job, the system credential store
+ * or a user is saved; changes to any other credential store are picked up when the TTL runs out. Missing credentials
+ * are cached as well.
+ */
+@Extension
+public class DxCredentialResolver {
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    public static DxCredentialResolver get() {
+        return ExtensionList.lookupSingleton(DxCredentialResolver.class);
+    }
+
+    /** Returns the secret for {@code credentialsId} as visible to {@code run}, or {@code null} if there is none. */
+    @CheckForNull
+    public Secret resolve(String credentialsId, Run<?, ?> run, long ttlSeconds) {
+        String key = key(credentialsId, run.getParent());
+        long now = System.nanoTime();
+        Entry entry = cache.get(key);
+        StringCredentials credentials;
+        if (entry != null && now - entry.expiresAt < 0) {
+            credentials = entry.credentials;
+            if (credentials != null) {
+                track(run, credentials);
+            }
+        } else {
+            credentials = lookup(credentialsId, run);
+            if (ttlSeconds > 0) {
+                cache.put(key, new Entry(credentials, now + TimeUnit.SECONDS.toNanos(ttlSeconds)));
+            }
+        }
+        return credentials != null ? credentials.getSecret() : null;
+    }
+
+    /** Looks the credential up as the run itself would, recording its usage. */
+    @CheckForNull
+    StringCredentials lookup(String credentialsId, Run<?, ?> run) {
+        return CredentialsProvider.findCredentialById(credentialsId, StringCredentials.class, run);
+    }
+
+    void track(Run<?, ?> run, StringCredentials credentials) {
+        CredentialsProvider.track(run, credentials);
+    }
+
+    /** Name of the authentication builds of {@code job} run as, which decides the credentials they can see. */
+    String authenticationOf(Job<?, ?> job) {
+        return job instanceof Queue.Task
+                ? Tasks.getAuthenticationOf2((Queue.Task) job).getName()
+                : ACL.SYSTEM2.getName();
+    }
+
+    /** Drops cached entries for the given folder or job and everything below it. */
+    public void invalidate(String contextFullName) {
+        String prefix = contextFullName + "/";
+        cache.keySet().removeIf(key -> {
+            String context = key.substring(0, key.indexOf('\n'));
+            return context.equals(contextFullName) || context.startsWith(prefix);
+        });
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    /** Jobs in the same folder that run as the same user see the same credential stores, so they share an entry. */
+    private String key(String credentialsId, Job<?, ?> job) {
+        ItemGroup<? extends Item> parent = job.getParent();
+        String context = parent instanceof Item ? ((Item) parent).getFullName() : "";
+        return context + '\n' + authenticationOf(job) + '\n' + credentialsId;
+    }
+
+    private static final class Entry {
+        @CheckForNull
+        final StringCredentials credentials;
+
+        final long expiresAt;
+
+        Entry(@CheckForNull StringCredentials credentials, long expiresAt) {
+            this.credentials = credentials;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Invalidates cached credentials when a store that persists through {@link Saveable#save()} changes. */
+    @Extension
+    public static class InvalidationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            DxCredentialResolver resolver =
+                    ExtensionList.lookup(DxCredentialResolver.class).get(DxCredentialResolver.class);
+            if (resolver == null) {
+                return;
+            }
+            if (o instanceof Item) {
+                // folder credential stores are saved with the folder
+                resolver.invalidate(((Item) o).getFullName());
+            } else if (o instanceof SystemCredentialsProvider || o instanceof User) {
+                resolver.invalidateAll();
+            }
+        }
+    }
+}
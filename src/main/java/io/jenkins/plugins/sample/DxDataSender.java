@@ -1,89 +1,534 @@
 package io.jenkins.plugins.sample;
 
-import com.cloudbees.plugins.credentials.CredentialsProvider;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import hudson.util.Secret;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+import javax.annotation.CheckForNull;
 
-/** Simple HTTP client for sending data to DX. */
+/** Simple HTTP client for sending data to DX, which also hands every event to the enabled {@link DxEventSink}s. */
 public class DxDataSender {
 
     private static final Logger LOGGER = Logger.getLogger(DxDataSender.class.getName());
 
+    static final String SYNC_PATH = "/api/pipelineRuns.sync";
+    static final String BULK_SYNC_PATH = "/api/pipelineRuns.bulkSync";
+    static final String STAGE_SYNC_PATH = "/api/pipelineStages.sync";
+    static final String ROLLUP_SYNC_PATH = "/api/pipelineRollups.sync";
+    static final String EVENT_SYNC_PATH = "/api/pipelineEvents.sync";
+
+    /** Every API path events are posted to. */
+    static final List<String> PATHS = Collections.unmodifiableList(
+            Arrays.asList(SYNC_PATH, BULK_SYNC_PATH, STAGE_SYNC_PATH, ROLLUP_SYNC_PATH, EVENT_SYNC_PATH));
+
+    /** Pseudo response code for a request that failed before DX answered. */
+    static final int CONNECTION_ERROR = -1;
+    /** Pseudo response code for a request the circuit breaker refused to send. */
+    static final int SHORT_CIRCUITED = -2;
+    /** Pseudo response code for a request that found no free slot within the flow-control timeout. */
+    static final int THROTTLED = -3;
+
     private final DxGlobalConfiguration config;
+    private final DxConfigSnapshot settings;
     private final TaskListener listener;
+    private boolean singleAttempt;
+    private boolean deferrable;
+    private boolean rejected;
+    private int lastResponseCode;
+    private List<DxEvent> rejectedEvents = Collections.emptyList();
 
     public DxDataSender(DxGlobalConfiguration config, TaskListener listener) {
         this.config = config;
+        this.settings = DxConfigSnapshot.of(config);
         this.listener = listener;
     }
 
-    public void send(String payload, Object build) {
-        String dxBaseUrl = config.getDxBaseUrl();
-        if (dxBaseUrl == null || dxBaseUrl.trim().isEmpty()) {
-            listener.getLogger().println("DX: API base path not configured. Skipping.");
-            return;
+    /**
+     * Makes every request a single attempt that neither retries, backs off nor waits for a flow-control slot, for
+     * callers on a build's own thread. Such callers hand a transiently failed event to the delivery queue or spool, see
+     * {@link #isDeferrable()}.
+     */
+    public void setSingleAttempt(boolean singleAttempt) {
+        this.singleAttempt = singleAttempt;
+    }
+
+    /**
+     * Whether the last request that was not accepted failed for a transient reason, such as a connection error, a 5xx
+     * or 429 response or an open circuit breaker, and is worth handing to a background retry.
+     */
+    public boolean isDeferrable() {
+        return deferrable;
+    }
+
+    /**
+     * Whether DX refused the last single payload for good, with a 4xx response other than 429, so that sending it
+     * again cannot succeed. See {@link DxRetryPolicy#isRejection}.
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    /** Response code of the last request, or one of the pseudo codes if DX did not answer. */
+    public int getLastResponseCode() {
+        return lastResponseCode;
+    }
+
+    /** Events of the last {@link #sendBatch} that DX refused for good, as for {@link #isRejected()}. */
+    public List<DxEvent> getRejected() {
+        return rejectedEvents;
+    }
+
+    /**
+     * Sends a single run payload.
+     *
+     * @return {@code true} if DX accepted the payload
+     */
+    public boolean send(String payload, Object build) {
+        return send(payload, build, SYNC_PATH);
+    }
+
+    /**
+     * Sends a single payload to the given DX API path and to the enabled sinks. Without a DX API base URL the payload
+     * only goes to the sinks.
+     *
+     * @return {@code true} if DX and every enabled sink accepted the payload
+     */
+    public boolean send(String payload, Object build, String path) {
+        return send(new DxEvent(payload, build instanceof Run ? (Run<?, ?>) build : null, path));
+    }
+
+    /**
+     * Sends an event to its DX API path and to the enabled sinks, unless the sinks already accepted it on an earlier
+     * attempt. Without a DX API base URL the event only goes to the sinks.
+     *
+     * @return {@code true} if DX and every enabled sink accepted the event
+     */
+    public boolean send(DxEvent event) {
+        deferrable = false;
+        rejected = false;
+        List<DxEventSink> sinks = event.isSinksDelivered() ? Collections.emptyList() : getEnabledSinks();
+        if (sinks.isEmpty() && !event.isSinksDelivered()) {
+            return sendToApi(event.getPayload(), event.getRun(), event.getPath());
+        }
+        boolean delivered = !isApiConfigured() || sendToApi(event.getPayload(), event.getRun(), event.getPath());
+        boolean sunk = true;
+        for (DxEventSink sink : sinks) {
+            sunk = sendToSink(sink, event) && sunk;
         }
+        if (sunk) {
+            event.markSinksDelivered();
+        }
+        return sunk && delivered;
+    }
 
-        String fullUrl = dxBaseUrl + "/api/pipelineRuns.sync";
+    private boolean sendToApi(String payload, Object build, String path) {
+        URI endpoint = endpoint(path);
+        if (endpoint == null) {
+            return false;
+        }
 
         if (!(build instanceof Run)) {
             listener.getLogger().println("DX: build context is required for credentials. Skipping.");
-            return;
+            return false;
+        }
+
+        String dxToken = resolveToken((Run<?, ?>) build);
+        if (dxToken == null) {
+            return false;
         }
 
         Run<?, ?> run = (Run<?, ?>) build;
+        DxDeduplicator deduplicator = SYNC_PATH.equals(path) ? getDeduplicatorIfEnabled() : null;
+        if (deduplicator != null && deduplicator.isDelivered(run)) {
+            listener.getLogger().println("DX: run already delivered. Skipping.");
+            return true;
+        }
 
-        StringCredentials credentials = CredentialsProvider.findCredentialById(
-                "dx-api-token", StringCredentials.class, run, Collections.emptyList());
+        if (settings.isDebugPayloads()) {
+            listener.getLogger().println("DX Payload: " + payload);
+        }
 
-        if (credentials == null) {
-            listener.getLogger().println("DX: credentials not found for ID: dx-api-token");
-            return;
+        String idempotencyKey = SYNC_PATH.equals(path) ? DxDeduplicator.referenceId(run) : null;
+        int code = post(endpoint, dxToken, payload, run, idempotencyKey);
+        logResponse(code);
+        boolean success = isSuccess(code);
+        if (success && deduplicator != null) {
+            deduplicator.markDelivered(run);
+        }
+        getMetrics().recordDelivery(success ? 1 : 0, success ? 0 : 1);
+        return success;
+    }
+
+    /**
+     * Sends several run events in a single bulk request per API token. If a bulk request is rejected, its events are
+     * resubmitted one at a time. Events for other API paths, such as stage events, are always sent one at a time. Run
+     * events DX has already accepted are not sent again and count as accepted. The events also go to the enabled sinks,
+     * except those the sinks accepted on an earlier attempt.
+     *
+     * @return the events DX and every enabled sink accepted
+     */
+    public List<DxEvent> sendBatch(List<DxEvent> events) {
+        rejectedEvents = new ArrayList<>();
+        List<DxEventSink> sinks = getEnabledSinks();
+        if (sinks.isEmpty()) {
+            return sendBatchToApi(events);
+        }
+        List<DxEvent> accepted = isApiConfigured() ? sendBatchToApi(events) : new ArrayList<>(events);
+        List<DxEvent> pending = new ArrayList<>();
+        for (DxEvent event : events) {
+            if (!event.isSinksDelivered()) {
+                pending.add(event);
+            }
+        }
+        if (pending.isEmpty()) {
+            return accepted;
+        }
+        Set<DxEvent> sunk = new HashSet<>(pending);
+        for (DxEventSink sink : sinks) {
+            sunk.retainAll(new HashSet<>(sendBatchToSink(sink, pending)));
+        }
+        for (DxEvent event : pending) {
+            if (sunk.contains(event)) {
+                event.markSinksDelivered();
+            } else {
+                accepted.remove(event);
+            }
         }
+        return accepted;
+    }
 
-        String dxToken = credentials.getSecret().getPlainText();
+    private List<DxEvent> sendBatchToApi(List<DxEvent> events) {
+        List<DxEvent> accepted = new ArrayList<>();
+        URI bulkEndpoint = endpoint(BULK_SYNC_PATH);
+        if (bulkEndpoint == null) {
+            return accepted;
+        }
 
-        listener.getLogger().println("DX Payload: " + payload);
+        DxDeduplicator deduplicator = getDeduplicatorIfEnabled();
+        Map<String, List<DxEvent>> byToken = new LinkedHashMap<>();
+        for (DxEvent event : events) {
+            if (event.getRun() == null) {
+                listener.getLogger().println("DX: build context is required for credentials. Skipping.");
+                continue;
+            }
+            if (deduplicator != null && event.isRunEvent() && deduplicator.isDelivered(event.getRun())) {
+                accepted.add(event);
+                continue;
+            }
+            String dxToken = resolveToken(event.getRun());
+            if (dxToken != null) {
+                byToken.computeIfAbsent(dxToken, k -> new ArrayList<>()).add(event);
+            }
+        }
 
-        HttpURLConnection conn = null;
+        for (Map.Entry<String, List<DxEvent>> group : byToken.entrySet()) {
+            List<DxEvent> batch = new ArrayList<>();
+            List<DxEvent> single = new ArrayList<>();
+            for (DxEvent event : group.getValue()) {
+                (event.isRunEvent() ? batch : single).add(event);
+            }
+            if (batch.size() > 1) {
+                int code = post(bulkEndpoint, group.getKey(), toBulkBody(batch), null, null);
+                if (isSuccess(code)) {
+                    listener.getLogger()
+                            .println("DX: batch of " + batch.size() + " payloads sent successfully. Response code: "
+                                    + code);
+                    markDelivered(deduplicator, batch);
+                    accepted.addAll(batch);
+                    batch.clear();
+                } else if (code == SHORT_CIRCUITED || code == THROTTLED) {
+                    batch.clear();
+                } else {
+                    listener.getLogger()
+                            .println("DX: batch of " + batch.size() + " payloads failed. Response code: " + code
+                                    + ". Falling back to per-run submission.");
+                }
+            }
+            single.addAll(batch);
+            for (DxEvent event : single) {
+                URI endpoint = endpoint(event.getPath());
+                if (endpoint == null) {
+                    continue;
+                }
+                String idempotencyKey = event.isRunEvent() ? DxDeduplicator.referenceId(event.getRun()) : null;
+                int code = post(
+                        endpoint,
+                        group.getKey(),
+                        event.getPayload(),
+                        event.getRun(),
+                        idempotencyKey);
+                logResponse(code);
+                if (isSuccess(code)) {
+                    markDelivered(deduplicator, Collections.singletonList(event));
+                    accepted.add(event);
+                } else if (DxRetryPolicy.isRejection(code)) {
+                    rejectedEvents.add(event);
+                }
+            }
+        }
+        getMetrics().recordDelivery(accepted.size(), events.size() - accepted.size());
+        return accepted;
+    }
+
+    private boolean sendToSink(DxEventSink sink, DxEvent event) {
         try {
-            URL url = new URL(fullUrl);
-            conn = (HttpURLConnection) url.openConnection();
+            return sink.send(event, config, listener);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "DX: " + sink.getClass().getName() + " failed", e);
+            return false;
+        }
+    }
 
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            conn.setRequestProperty("Authorization", "Bearer " + dxToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setRequestMethod("POST");
+    private List<DxEvent> sendBatchToSink(DxEventSink sink, List<DxEvent> events) {
+        try {
+            return sink.sendBatch(events, config, listener);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "DX: " + sink.getClass().getName() + " failed", e);
+            return Collections.emptyList();
+        }
+    }
+
+    private boolean isApiConfigured() {
+        return settings.isApiConfigured();
+    }
 
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(payload.getBytes(StandardCharsets.UTF_8));
-                os.flush();
+    @CheckForNull
+    private URI endpoint(String path) {
+        if (!settings.isApiConfigured()) {
+            listener.getLogger().println("DX: API base path not configured. Skipping.");
+            return null;
+        }
+        URI endpoint = settings.getEndpoint(path);
+        if (endpoint == null) {
+            listener.getLogger().println("DX: API base path is not a valid URL. Skipping.");
+        }
+        return endpoint;
+    }
+
+    private List<DxEventSink> getEnabledSinks() {
+        List<DxEventSink> enabled = Collections.emptyList();
+        for (DxEventSink sink : getSinks()) {
+            if (sink.isEnabled(config)) {
+                if (enabled.isEmpty()) {
+                    enabled = new ArrayList<>();
+                }
+                enabled.add(sink);
+            }
+        }
+        return enabled;
+    }
+
+    List<? extends DxEventSink> getSinks() {
+        return DxEventSink.all();
+    }
+
+    static String toBulkBody(List<DxEvent> batch) {
+        StringBuilder body = new StringBuilder("{\"pipeline_runs\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(batch.get(i).getPayload());
+        }
+        return body.append("]}").toString();
+    }
+
+    private static void markDelivered(@CheckForNull DxDeduplicator deduplicator, List<DxEvent> delivered) {
+        if (deduplicator == null) {
+            return;
+        }
+        for (DxEvent event : delivered) {
+            if (event.isRunEvent()) {
+                deduplicator.markDelivered(event.getRun());
+            }
+        }
+    }
+
+    private String resolveToken(Run<?, ?> run) {
+        String credentialsId = settings.getCredentialsId();
+        long start = System.nanoTime();
+        Secret secret = getCredentialResolver().resolve(credentialsId, run, settings.getCredentialCacheTtlSeconds());
+        getMetrics().record(run, DxMetrics.Stage.CREDENTIAL_LOOKUP, System.nanoTime() - start);
+
+        if (secret == null) {
+            listener.getLogger().println("DX: credentials not found for ID: " + credentialsId);
+            return null;
+        }
+
+        return secret.getPlainText();
+    }
+
+    DxCredentialResolver getCredentialResolver() {
+        return DxCredentialResolver.get();
+    }
+
+    @CheckForNull
+    private DxDeduplicator getDeduplicatorIfEnabled() {
+        return settings.isDeduplicateRuns() ? getDeduplicator() : null;
+    }
+
+    DxDeduplicator getDeduplicator() {
+        return DxDeduplicator.get();
+    }
+
+    /**
+     * Posts a JSON body within the flow-control limits, retrying transient failures according to the configured retry
+     * policy unless this sender makes {@link #setSingleAttempt single attempts}, and returns the final response code,
+     * {@link #CONNECTION_ERROR}, {@link #SHORT_CIRCUITED} or {@link #THROTTLED}. Retries carry the same idempotency
+     * key as the first attempt.
+     */
+    private int post(
+            URI endpoint,
+            String dxToken,
+            String body,
+            @CheckForNull Run<?, ?> run,
+            @CheckForNull String idempotencyKey) {
+        int code = postWithRetries(endpoint, dxToken, body, run, idempotencyKey);
+        lastResponseCode = code;
+        deferrable = !isSuccess(code)
+                && (DxRetryPolicy.isRetryable(code) || code == SHORT_CIRCUITED || code == THROTTLED);
+        rejected = DxRetryPolicy.isRejection(code);
+        return code;
+    }
+
+    private int postWithRetries(
+            URI endpoint,
+            String dxToken,
+            String body,
+            @CheckForNull Run<?, ?> run,
+            @CheckForNull String idempotencyKey) {
+        DxCircuitBreaker breaker = getCircuitBreaker();
+        DxFlowControl flowControl = getFlowControl();
+        DxRetryPolicy policy = settings.getRetryPolicy();
+        boolean uncompressed = false;
+        for (int attempt = 0; ; attempt++) {
+            if (!acquireSlot(flowControl)) {
+                listener.getLogger()
+                        .println(singleAttempt
+                                ? "DX: no request slot available. Skipping request."
+                                : "DX: no request slot available within " + settings.getFlowControlTimeoutMillis()
+                                        + " ms. Skipping request.");
+                getMetrics().recordResponse(THROTTLED);
+                return THROTTLED;
+            }
+            if (!breaker.tryAcquire()) {
+                flowControl.cancel();
+                listener.getLogger().println("DX: API unavailable, circuit breaker is open. Skipping request.");
+                getMetrics().recordResponse(SHORT_CIRCUITED);
+                return SHORT_CIRCUITED;
             }
 
-            int code = conn.getResponseCode();
-            if (code >= 200 && code < 300) {
-                listener.getLogger().println("DX: payload sent successfully. Response code: " + code);
+            long start = System.nanoTime();
+            DxHttpTransport.Response response = attempt(endpoint, dxToken, body, idempotencyKey, uncompressed);
+            long latency = System.nanoTime() - start;
+            int code = response.getCode();
+            flowControl.complete(code, response.getRetryAfterMillis(), latency, settings.getMaxConcurrentRequests());
+            getMetrics().record(run, DxMetrics.Stage.HTTP_REQUEST, latency);
+            getMetrics().recordResponse(code);
+            if (DxCircuitBreaker.isOutage(code, response.getRetryAfterMillis())) {
+                breaker.recordFailure(settings.getCircuitFailureThreshold(), settings.getCircuitOpenMillis());
             } else {
-                listener.getLogger().println("DX: failed to send payload. Response code: " + code);
+                breaker.recordSuccess();
             }
+            if (response.isGzipRejected() && !uncompressed) {
+                // resend the same body uncompressed right away, through a slot of its own
+                uncompressed = true;
+                attempt--;
+                continue;
+            }
+            if (singleAttempt || !policy.shouldRetry(code, attempt)) {
+                return code;
+            }
+
+            long delay = Math.max(policy.backoffMillis(attempt), response.getRetryAfterMillis());
+            if (delay > policy.getMaxBackoffMillis()) {
+                listener.getLogger()
+                        .println("DX: request failed (" + describe(code) + ") and DX asked to retry after " + delay
+                                + " ms. Giving up.");
+                return code;
+            }
+            listener.getLogger()
+                    .println("DX: request failed (" + describe(code) + "). Retrying in " + delay + " ms, attempt "
+                            + (attempt + 2) + " of " + (policy.getMaxRetries() + 1) + ".");
+            breaker.recordRetry();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return code;
+            }
+        }
+    }
+
+    /** Waits for a flow-control slot, or only takes a free one if this sender must not block its caller. */
+    private boolean acquireSlot(DxFlowControl flowControl) {
+        if (singleAttempt) {
+            return flowControl.tryAcquire(
+                    settings.getRateLimitPerSecond(), settings.getRateLimitBurst(), settings.getMaxConcurrentRequests());
+        }
+        try {
+            return flowControl.acquire(
+                    settings.getRateLimitPerSecond(),
+                    settings.getRateLimitBurst(),
+                    settings.getMaxConcurrentRequests(),
+                    settings.getFlowControlTimeoutMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private DxHttpTransport.Response attempt(
+            URI endpoint, String dxToken, String body, @CheckForNull String idempotencyKey, boolean uncompressed) {
+        try {
+            return getTransport().post(settings, endpoint, dxToken, body, idempotencyKey, uncompressed);
         } catch (Exception e) {
             String msg = "DX: error sending data - " + e.getMessage();
             listener.getLogger().println(msg);
             LOGGER.log(Level.WARNING, msg, e);
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
+            return new DxHttpTransport.Response(CONNECTION_ERROR, -1, false);
         }
     }
+
+    private static String describe(int code) {
+        return code == CONNECTION_ERROR ? "connection error" : "response code " + code;
+    }
+
+    DxCircuitBreaker getCircuitBreaker() {
+        return DxCircuitBreaker.get();
+    }
+
+    DxMetrics getMetrics() {
+        return DxMetrics.get();
+    }
+
+    DxFlowControl getFlowControl() {
+        return DxFlowControl.get();
+    }
+
+    DxHttpTransport getTransport() {
+        return DxHttpTransport.get();
+    }
+
+    private void logResponse(int code) {
+        if (isSuccess(code)) {
+            listener.getLogger().println("DX: payload sent successfully. Response code: " + code);
+        } else if (code > 0) {
+            listener.getLogger().println("DX: failed to send payload. Response code: " + code);
+        }
+    }
+
+    private static boolean isSuccess(int code) {
+        return code >= 200 && code < 300;
+    }
 }
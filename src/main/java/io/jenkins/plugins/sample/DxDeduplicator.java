@@ -0,0 +1,276 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.Run;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Remembers which runs DX has accepted, so that listener re-fires, spool replays and backfills do not send a run a
+ * second time. Recent runs are kept exactly in a bounded LRU. All delivered runs also go into two generations of Bloom
+ * filters that are written under {@code JENKINS_HOME}, so duplicates are recognized after a restart as well. When the
+ * current generation is full, the older one is discarded.
+ *
+ * <p>A run is identified by its reference ID and start time, so a run of a job that was deleted and re-created under
+ * the same name is not mistaken for its predecessor. The Bloom filters report a run that was never delivered with a
+ * probability of about one in a million.
+ */
+@Extension
+public class DxDeduplicator {
+
+    private static final Logger LOGGER = Logger.getLogger(DxDeduplicator.class.getName());
+
+    static final int RECENT_RUNS = Integer.getInteger(DxDeduplicator.class.getName() + ".recentRuns", 10_000);
+    static final int GENERATION_SIZE =
+            Integer.getInteger(DxDeduplicator.class.getName() + ".generationSize", 50_000);
+    static final double FALSE_POSITIVE_RATE = 1e-6;
+    static final long SAVE_DELAY_SECONDS = 60;
+
+    private static final int FILE_MAGIC = 0x44584246;
+    private static final int FILE_VERSION = 1;
+
+    private final LinkedHashMap<String, Boolean> recent = new LinkedHashMap<String, Boolean>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_RUNS;
+        }
+    };
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    private File file;
+    private boolean loaded;
+    private boolean dirty;
+    private BloomFilter current;
+    private BloomFilter previous;
+
+    public DxDeduplicator() {}
+
+    DxDeduplicator(File file) {
+        this.file = file;
+    }
+
+    public static DxDeduplicator get() {
+        return ExtensionList.lookupSingleton(DxDeduplicator.class);
+    }
+
+    /** The {@code reference_id} DX uses as the natural key of a run event. */
+    static String referenceId(Run<?, ?> run) {
+        return run.getParent().getFullName() + " #" + run.getNumber();
+    }
+
+    private static String key(Run<?, ?> run) {
+        return referenceId(run) + '@' + run.getTimeInMillis();
+    }
+
+    /** Whether DX has already accepted an event for this run. */
+    public synchronized boolean isDelivered(Run<?, ?> run) {
+        ensureLoaded();
+        String key = key(run);
+        return recent.containsKey(key)
+                || current.mightContain(key)
+                || (previous != null && previous.mightContain(key));
+    }
+
+    /** Records that DX accepted an event for this run. The record is written to disk within a minute. */
+    public void markDelivered(Run<?, ?> run) {
+        synchronized (this) {
+            ensureLoaded();
+            String key = key(run);
+            if (recent.put(key, Boolean.TRUE) != null) {
+                return;
+            }
+            current.put(key);
+            if (current.getCount() >= GENERATION_SIZE) {
+                previous = current;
+                current = new BloomFilter(GENERATION_SIZE, FALSE_POSITIVE_RATE);
+            }
+            dirty = true;
+        }
+        scheduleSave();
+    }
+
+    void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(() -> {
+                saveScheduled.set(false);
+                save();
+            }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Writes the Bloom filters if anything was delivered since the last save. */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeBoolean(previous != null);
+                if (previous != null) {
+                    previous.write(out);
+                }
+                current.write(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "DX: unable to save delivered runs to " + file, e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null) {
+            file = new File(Jenkins.get().getRootDir(), "dx-data-sharer/delivered-runs.bloom");
+        }
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                    throw new IOException("unknown file format");
+                }
+                previous = in.readBoolean() ? BloomFilter.read(in) : null;
+                current = BloomFilter.read(in);
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "DX: unable to load delivered runs from " + file + ", starting empty", e);
+                previous = null;
+            }
+        }
+        current = new BloomFilter(GENERATION_SIZE, FALSE_POSITIVE_RATE);
+    }
+
+    @Terminator
+    public static void shutdown() {
+        DxDeduplicator instance = ExtensionList.lookup(DxDeduplicator.class).get(DxDeduplicator.class);
+        if (instance != null) {
+            instance.save();
+        }
+    }
+
+    /** A fixed-size Bloom filter over strings, using double hashing of a 64-bit FNV-1a hash. */
+    static final class BloomFilter {
+        private final long[] words;
+        private final long bits;
+        private final int hashes;
+        private int count;
+
+        BloomFilter(int expected, double falsePositiveRate) {
+            this(
+                    new long[(int) ((optimalBits(expected, falsePositiveRate) + 63) / 64)],
+                    optimalHashes(expected, optimalBits(expected, falsePositiveRate)),
+                    0);
+        }
+
+        private BloomFilter(long[] words, int hashes, int count) {
+            this.words = words;
+            this.bits = (long) words.length * 64;
+            this.hashes = hashes;
+            this.count = count;
+        }
+
+        static long optimalBits(int expected, double falsePositiveRate) {
+            return (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        }
+
+        static int optimalHashes(int expected, long bits) {
+            return Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+        }
+
+        void put(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        /** FNV-1a over the UTF-16 code units, followed by the MurmurHash3 finalizer to spread similar keys. */
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(hashes);
+            out.writeInt(count);
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        static BloomFilter read(DataInputStream in) throws IOException {
+            int hashes = in.readInt();
+            int count = in.readInt();
+            int length = in.readInt();
+            if (hashes <= 0 || count < 0 || length <= 0) {
+                throw new IOException("corrupt Bloom filter");
+            }
+            long[] words = new long[length];
+            for (int i = 0; i < length; i++) {
+                words[i] = in.readLong();
+            }
+            return new BloomFilter(words, hashes, count);
+        }
+    }
+}
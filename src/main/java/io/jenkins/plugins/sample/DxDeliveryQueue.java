@@ -0,0 +1,322 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamingThreadFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.Timer;
+
+/**
+ * Bounded in-memory queue of run and stage events drained by a small pool of dispatcher threads, so that build
+ * completion never waits on the DX API.
+ */
+@Extension
+public class DxDeliveryQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(DxDeliveryQueue.class.getName());
+
+    private static final TaskListener BACKGROUND_LISTENER = new LogTaskListener(LOGGER, Level.FINE);
+
+    /** How often an idle dispatcher checks whether its queue has been replaced by a reconfiguration. */
+    private static final long IDLE_POLL_MILLIS = 1000;
+
+    /** How long retired dispatchers get to finish the send they are in the middle of. */
+    static final long RETIRE_TIMEOUT_SECONDS = 60;
+
+    /** How long shutdown waits for in-flight sends before interrupting them. */
+    static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /** What to do with a new event when the queue is full. */
+    public enum OverflowPolicy {
+        /** Evict the oldest queued event to make room for the new one. */
+        DROP_OLDEST,
+        /** Wait up to the configured deadline for room, then drop the new event. */
+        BLOCK
+    }
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile BlockingQueue<DxEvent> queue;
+    private ExecutorService dispatchers;
+    private int capacity;
+    private int threads;
+
+    public static DxDeliveryQueue get() {
+        return ExtensionList.lookupSingleton(DxDeliveryQueue.class);
+    }
+
+    /**
+     * Queues an event for background delivery, applying the configured overflow policy when the queue is full.
+     *
+     * @return {@code false} if the event was dropped
+     */
+    public boolean submit(DxEvent event, DxGlobalConfiguration config) {
+        BlockingQueue<DxEvent> target = ensureStarted(config.getQueueCapacity(), config.getDispatcherThreads());
+        enqueued.incrementAndGet();
+
+        if (config.getOverflowPolicy() == OverflowPolicy.BLOCK) {
+            try {
+                if (target.offer(event, config.getOverflowBlockMillis(), TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dropped.incrementAndGet();
+            releaseFromSpool(event);
+            LOGGER.log(Level.WARNING, "DX: delivery queue full, dropping event after waiting {0} ms",
+                    config.getOverflowBlockMillis());
+            return false;
+        }
+
+        while (!target.offer(event)) {
+            DxEvent evicted = target.poll();
+            if (evicted != null) {
+                dropped.incrementAndGet();
+                releaseFromSpool(evicted);
+                LOGGER.warning("DX: delivery queue full, dropped the oldest queued event");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queues an event without ever waiting for room, for callers such as flow-graph listeners that must not block.
+     *
+     * @return {@code false} if the queue was full and the event was dropped
+     */
+    public boolean offer(DxEvent event, DxGlobalConfiguration config) {
+        BlockingQueue<DxEvent> target = ensureStarted(config.getQueueCapacity(), config.getDispatcherThreads());
+        enqueued.incrementAndGet();
+        if (target.offer(event)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        releaseFromSpool(event);
+        LOGGER.fine("DX: delivery queue full, dropping event");
+        return false;
+    }
+
+    /** Current number of events waiting for a dispatcher. */
+    public int getQueueDepth() {
+        BlockingQueue<DxEvent> current;
+        synchronized (this) {
+            current = queue;
+        }
+        return current != null ? current.size() : 0;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private synchronized BlockingQueue<DxEvent> ensureStarted(int newCapacity, int newThreads) {
+        newCapacity = Math.max(1, newCapacity);
+        newThreads = Math.max(1, newThreads);
+        if (queue != null && capacity == newCapacity && threads == newThreads) {
+            return queue;
+        }
+
+        BlockingQueue<DxEvent> previous = queue;
+        ExecutorService previousDispatchers = dispatchers;
+
+        queue = new ArrayBlockingQueue<>(newCapacity);
+        capacity = newCapacity;
+        threads = newThreads;
+        dispatchers = Executors.newFixedThreadPool(
+                newThreads, new NamingThreadFactory(new DaemonThreadFactory(), "DxDeliveryDispatcher"));
+        for (int i = 0; i < newThreads; i++) {
+            final BlockingQueue<DxEvent> source = queue;
+            dispatchers.execute(() -> drain(source));
+        }
+
+        if (previousDispatchers != null) {
+            retire(previousDispatchers);
+        }
+        if (previous != null) {
+            List<DxEvent> pending = new ArrayList<>();
+            previous.drainTo(pending);
+            for (DxEvent event : pending) {
+                if (!queue.offer(event)) {
+                    dropped.incrementAndGet();
+                    releaseFromSpool(event);
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Lets retired dispatchers finish their current send instead of interrupting them, and only interrupts the ones
+     * still busy after {@link #RETIRE_TIMEOUT_SECONDS}.
+     */
+    private static void retire(ExecutorService previousDispatchers) {
+        previousDispatchers.shutdown();
+        Timer.get().execute(() -> awaitTermination(previousDispatchers, RETIRE_TIMEOUT_SECONDS));
+    }
+
+    private static void awaitTermination(ExecutorService executor, long timeoutSeconds) {
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.WARNING, "DX: dispatchers still busy after {0} s, interrupting them", timeoutSeconds);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(BlockingQueue<DxEvent> source) {
+        List<DxEvent> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                DxEvent next = source.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    if (source != queue) {
+                        // Replaced by a reconfiguration and nothing left to send: let the retired pool terminate.
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(next);
+                DxGlobalConfiguration config = getConfiguration();
+                if (config != null && config.getBatchSize() > 1) {
+                    fillBatch(source, batch, config.getBatchSize(), config.getBatchLingerMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Keeps polling until the batch holds {@code batchSize} events or {@code lingerMillis} have passed since the
+     * first event was taken, whichever comes first.
+     */
+    static void fillBatch(BlockingQueue<DxEvent> source, List<DxEvent> batch, int batchSize, long lingerMillis)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < batchSize) {
+            source.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            DxEvent next = source.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    void deliver(List<DxEvent> events) {
+        try {
+            DxGlobalConfiguration config = getConfiguration();
+            if (config == null || !config.isConfigured()) {
+                LOGGER.fine("DX: plugin not configured. Discarding queued events.");
+                events.forEach(DxDeliveryQueue::releaseFromSpool);
+                return;
+            }
+            DxDataSender sender = createDxDataSender(config, BACKGROUND_LISTENER);
+            List<DxEvent> accepted;
+            List<DxEvent> rejected;
+            if (events.size() == 1) {
+                DxEvent event = events.get(0);
+                boolean sent = sender.send(event);
+                accepted = sent ? Collections.singletonList(event) : Collections.emptyList();
+                rejected = sender.isRejected() ? Collections.singletonList(event) : Collections.emptyList();
+            } else {
+                accepted = sender.sendBatch(events);
+                rejected = sender.getRejected();
+            }
+            dispatched.addAndGet(events.size());
+            for (DxEvent event : events) {
+                if (accepted.contains(event)) {
+                    acknowledgeInSpool(event);
+                } else if (rejected.contains(event)) {
+                    if (event.isSpooled()) {
+                        DxSpool.get().discard(event, sender.getLastResponseCode());
+                    }
+                } else {
+                    releaseFromSpool(event);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "DX: unexpected error delivering queued events", e);
+            events.forEach(DxDeliveryQueue::releaseFromSpool);
+        }
+    }
+
+    DxGlobalConfiguration getConfiguration() {
+        return DxGlobalConfiguration.get();
+    }
+
+    DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+        return new DxDataSender(config, listener);
+    }
+
+    private static void acknowledgeInSpool(DxEvent event) {
+        if (event.isSpooled()) {
+            DxSpool.get().acknowledge(event);
+        }
+    }
+
+    private static void releaseFromSpool(DxEvent event) {
+        if (event.isSpooled()) {
+            DxSpool.get().release(event);
+        }
+    }
+
+    @Terminator
+    public static void shutdown() {
+        DxDeliveryQueue instance = ExtensionList.lookup(DxDeliveryQueue.class).get(DxDeliveryQueue.class);
+        if (instance == null) {
+            return;
+        }
+        ExecutorService current;
+        synchronized (instance) {
+            current = instance.dispatchers;
+            if (instance.queue != null && !instance.queue.isEmpty()) {
+                LOGGER.log(Level.INFO, "DX: discarding {0} undelivered events on shutdown", instance.queue.size());
+                instance.queue.clear();
+            }
+            // Idle dispatchers notice the queue is gone on their next poll and exit.
+            instance.queue = null;
+            instance.dispatchers = null;
+        }
+        if (current != null) {
+            current.shutdown();
+            awaitTermination(current, SHUTDOWN_TIMEOUT_SECONDS);
+        }
+    }
+}
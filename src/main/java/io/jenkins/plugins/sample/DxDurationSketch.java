@@ -0,0 +1,126 @@
+package io.jenkins.plugins.sample;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch for build durations with a fixed relative error: each value is counted in the bucket
+ * {@code ceil(log_gamma(millis))}, so every quantile is reported within {@link #RELATIVE_ACCURACY} of a recorded
+ * value. Buckets are kept in a dense array covering only the range seen so far; durations from a millisecond to a
+ * month need at most about 1100 buckets. Two sketches merge by adding their bucket counts, which is what DX does with
+ * the serialized form of successive rollups. Not thread-safe.
+ */
+final class DxDurationSketch {
+
+    static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    /** Values below a millisecond, including zero. */
+    private long zeroCount;
+
+    private long[] counts = new long[0];
+    private int offset;
+    private long count;
+
+    void record(long millis) {
+        count++;
+        if (millis < 1) {
+            zeroCount++;
+            return;
+        }
+        int index = index(millis);
+        ensureCapacity(index, index);
+        counts[index - offset]++;
+    }
+
+    void merge(DxDurationSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        zeroCount += other.zeroCount;
+        if (other.counts.length == 0) {
+            return;
+        }
+        ensureCapacity(other.offset, other.offset + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[other.offset + i - offset] += other.counts[i];
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /** Estimated value in milliseconds at the given quantile, or {@code 0} if nothing was recorded. */
+    long quantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        if (rank <= zeroCount) {
+            return 0;
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return value(offset + i);
+            }
+        }
+        return value(offset + counts.length - 1);
+    }
+
+    /**
+     * Serializes the sketch so it can be merged with others: {@code counts[i]} is the number of values in bucket
+     * {@code offset + i}, whose representative value is {@code 2 * gamma^(offset + i) / (gamma + 1)} milliseconds.
+     */
+    String toJson() {
+        StringBuilder buckets = new StringBuilder(counts.length * 3 + 2).append('[');
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) {
+                buckets.append(',');
+            }
+            buckets.append(counts[i]);
+        }
+        return DxJsonWriter.object()
+                .rawField("relative_accuracy", String.valueOf(RELATIVE_ACCURACY))
+                .field("zero_count", zeroCount)
+                .field("offset", offset)
+                .rawField("counts", buckets.append(']').toString())
+                .toJson();
+    }
+
+    static int index(long millis) {
+        return (int) Math.ceil(Math.log(millis) / LOG_GAMMA);
+    }
+
+    /** Midpoint of the bucket, which is within the relative accuracy of every value counted in it. */
+    static long value(int index) {
+        return Math.round(2 * Math.pow(GAMMA, index) / (GAMMA + 1));
+    }
+
+    private void ensureCapacity(int low, int high) {
+        if (counts.length == 0) {
+            counts = new long[high - low + 1];
+            offset = low;
+            return;
+        }
+        int currentHigh = offset + counts.length - 1;
+        if (low >= offset && high <= currentHigh) {
+            return;
+        }
+        int newLow = Math.min(low, offset);
+        int newHigh = Math.max(high, currentHigh);
+        long[] grown = new long[newHigh - newLow + 1];
+        System.arraycopy(counts, 0, grown, offset - newLow, counts.length);
+        counts = grown;
+        offset = newLow;
+    }
+
+    @Override
+    public String toString() {
+        return "DxDurationSketch[count=" + count + ", offset=" + offset + ", counts=" + Arrays.toString(counts) + "]";
+    }
+}
@@ -0,0 +1,127 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import hudson.tasks.MailAddressResolver;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.CheckForNull;
+
+/**
+ * Caches {@link MailAddressResolver} results per user, including users without a resolvable address, so that LDAP or
+ * SCM lookups are not repeated for every build. The cache is a size-bounded LRU with a TTL per entry.
+ */
+@Extension
+public class DxEmailResolver {
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, CachedEmail> cache = new LinkedHashMap<String, CachedEmail>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedEmail> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private int maxEntries = DxGlobalConfiguration.DEFAULT_EMAIL_CACHE_SIZE;
+
+    public static DxEmailResolver get() {
+        return ExtensionList.lookupSingleton(DxEmailResolver.class);
+    }
+
+    /** Returns the user's email address, or {@code null} if none of the installed resolvers knows it. */
+    @CheckForNull
+    public String resolve(User user, long ttlSeconds, int maxEntries) {
+        return resolve(user.getId(), () -> MailAddressResolver.resolve(user), ttlSeconds, maxEntries);
+    }
+
+    @CheckForNull
+    String resolve(String userId, Supplier<String> lookup, long ttlSeconds, int maxEntries) {
+        long now = nanoTime();
+        synchronized (lock) {
+            setMaxEntries(maxEntries);
+            CachedEmail entry = cache.get(userId);
+            if (entry != null && now - entry.expiresAt < 0) {
+                return entry.email;
+            }
+        }
+
+        String email = lookup.get();
+        if (email != null && email.isEmpty()) {
+            email = null;
+        }
+        if (ttlSeconds > 0) {
+            synchronized (lock) {
+                cache.put(userId, new CachedEmail(email, now + TimeUnit.SECONDS.toNanos(ttlSeconds)));
+            }
+        }
+        return email;
+    }
+
+    /**
+     * Returns the first resolvable author email among the first {@code maxChangelogEntries} changelog entries, or an
+     * empty string.
+     */
+    static String firstAuthorEmail(
+            Iterable<? extends ChangeLogSet<? extends ChangeLogSet.Entry>> changeSets,
+            int maxChangelogEntries,
+            Function<User, String> resolver) {
+        int remaining = maxChangelogEntries > 0 ? maxChangelogEntries : Integer.MAX_VALUE;
+        for (ChangeLogSet<? extends ChangeLogSet.Entry> cs : changeSets) {
+            for (ChangeLogSet.Entry entry : cs) {
+                if (remaining-- <= 0) {
+                    return "";
+                }
+                User author = entry.getAuthor();
+                if (author != null) {
+                    String email = resolver.apply(author);
+                    if (email != null && !email.isEmpty()) {
+                        return email;
+                    }
+                }
+            }
+        }
+        return "";
+    }
+
+    /** Applies a new size bound, evicting the least recently used entries right away if the cache shrank. */
+    private void setMaxEntries(int maxEntries) {
+        int bound = Math.max(1, maxEntries);
+        if (bound == this.maxEntries) {
+            return;
+        }
+        this.maxEntries = bound;
+        Iterator<String> eldest = cache.keySet().iterator();
+        while (cache.size() > bound && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    int size() {
+        synchronized (lock) {
+            return cache.size();
+        }
+    }
+
+    private static final class CachedEmail {
+        final String email;
+        final long expiresAt;
+
+        CachedEmail(String email, long expiresAt) {
+            this.email = email;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.jenkins.plugins.sample;
+
+import hudson.model.Run;
+
+/** A serialized run or stage event waiting to be delivered to DX. */
+public class DxEvent {
+
+    private final String payload;
+    private final Run<?, ?> run;
+    private final String path;
+    private final long createdAt;
+    private long spoolSegment = -1;
+    private int spoolIndex = -1;
+    private volatile boolean sinksDelivered;
+
+    public DxEvent(String payload, Run<?, ?> run) {
+        this(payload, run, DxDataSender.SYNC_PATH);
+    }
+
+    /** Creates an event posted to the given DX API path instead of the pipeline run endpoint. */
+    public DxEvent(String payload, Run<?, ?> run, String path) {
+        this.payload = payload;
+        this.run = run;
+        this.path = path;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    /** DX API path the payload is posted to, relative to the base URL. */
+    public String getPath() {
+        return path;
+    }
+
+    /** Whether this is a pipeline run event that may be sent in a bulk request. */
+    boolean isRunEvent() {
+        return DxDataSender.SYNC_PATH.equals(path);
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /** Whether this event has been written to the {@link DxSpool} and must be acknowledged there. */
+    public boolean isSpooled() {
+        return spoolSegment >= 0;
+    }
+
+    long getSpoolSegment() {
+        return spoolSegment;
+    }
+
+    int getSpoolIndex() {
+        return spoolIndex;
+    }
+
+    void setSpoolPosition(long segment, int index) {
+        this.spoolSegment = segment;
+        this.spoolIndex = index;
+    }
+
+    /** Whether every enabled {@link DxEventSink} has accepted this event, so that retries only go to the DX API. */
+    boolean isSinksDelivered() {
+        return sinksDelivered;
+    }
+
+    void markSinksDelivered() {
+        this.sinksDelivered = true;
+    }
+}
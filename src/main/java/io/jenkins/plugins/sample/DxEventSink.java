@@ -0,0 +1,45 @@
+package io.jenkins.plugins.sample;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.TaskListener;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A destination for DX events besides the DX API. {@link DxDataSender} hands every event to each enabled sink and to
+ * the DX API when a base URL is configured; an event counts as delivered once all of them have accepted it, so the
+ * delivery queue and the spool retry it otherwise. Once every sink has accepted an event, retries only go to the DX
+ * API; a sink sees an event again only if some sink failed to accept it, or the controller stopped before the spool
+ * recorded the delivery.
+ */
+public abstract class DxEventSink implements ExtensionPoint {
+
+    public abstract boolean isEnabled(DxGlobalConfiguration config);
+
+    /**
+     * Writes a single event.
+     *
+     * @return {@code true} if the sink accepted the event
+     */
+    public abstract boolean send(DxEvent event, DxGlobalConfiguration config, TaskListener listener);
+
+    /**
+     * Writes several events. Sinks that can write a batch more cheaply than one event at a time should override this.
+     *
+     * @return the events the sink accepted
+     */
+    public List<DxEvent> sendBatch(List<DxEvent> events, DxGlobalConfiguration config, TaskListener listener) {
+        List<DxEvent> accepted = new ArrayList<>(events.size());
+        for (DxEvent event : events) {
+            if (send(event, config, listener)) {
+                accepted.add(event);
+            }
+        }
+        return accepted;
+    }
+
+    public static ExtensionList<DxEventSink> all() {
+        return ExtensionList.lookup(DxEventSink.class);
+    }
+}
@@ -0,0 +1,260 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.PeriodicWork;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Writes events as newline-delimited JSON to local segment files, for controllers that cannot reach DX or that ship
+ * events through their own log pipeline. Each line holds the API {@code path} the event would be posted to, its
+ * {@code created_at} time in milliseconds and the {@code payload} itself.
+ *
+ * <p>Records are collected in a buffer and written to the active segment's channel once per call, so a batch costs a
+ * single write. The active segment is closed and a new one opened when it reaches the configured size or age, checked
+ * whenever an event is written and, for the age, once a minute by {@link RollWork} so that a quiet controller does not
+ * keep a segment open; closed segments are optionally gzip-compressed in the background. Segments are named
+ * {@code events-<UTC time>-<sequence>.ndjson} so that they sort in the order they were written.
+ */
+@Extension
+public class DxFileSink extends DxEventSink {
+
+    private static final Logger LOGGER = Logger.getLogger(DxFileSink.class.getName());
+
+    static final String SEGMENT_PREFIX = "events-";
+    static final String SEGMENT_SUFFIX = ".ndjson";
+    static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final DateTimeFormatter SEGMENT_TIME =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private File directory;
+    private File active;
+    private FileChannel channel;
+    private long activeBytes;
+    private long openedAt;
+    private int sequence;
+
+    @Override
+    public boolean isEnabled(DxGlobalConfiguration config) {
+        return config.isFileSinkEnabled();
+    }
+
+    @Override
+    public boolean send(DxEvent event, DxGlobalConfiguration config, TaskListener listener) {
+        return !sendBatch(Collections.singletonList(event), config, listener).isEmpty();
+    }
+
+    /** Writes all events with one channel write, or none of them if the segment cannot be written. */
+    @Override
+    public synchronized List<DxEvent> sendBatch(
+            List<DxEvent> events, DxGlobalConfiguration config, TaskListener listener) {
+        try {
+            for (DxEvent event : events) {
+                write(toRecord(event), config);
+            }
+            flush();
+            return new ArrayList<>(events);
+        } catch (IOException e) {
+            listener.getLogger().println("DX: unable to write events to " + active + ": " + e.getMessage());
+            LOGGER.log(Level.WARNING, "DX: unable to write events to " + active, e);
+            buffer.clear();
+            closeActive(false);
+            return Collections.emptyList();
+        }
+    }
+
+    static byte[] toRecord(DxEvent event) {
+        String json = DxJsonWriter.object()
+                .field("path", event.getPath())
+                .field("created_at", event.getCreatedAt())
+                .rawField("payload", event.getPayload())
+                .toJson();
+        return (json + '\n').getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void write(byte[] record, DxGlobalConfiguration config) throws IOException {
+        File target = getDirectory(config);
+        long now = now();
+        long maxBytes = config.getFileSinkMaxSegmentMegabytes() * 1024L * 1024L;
+        long maxAge = TimeUnit.MINUTES.toMillis(config.getFileSinkRotateMinutes());
+        if (channel == null
+                || !target.equals(directory)
+                || (maxBytes > 0 && activeBytes >= maxBytes)
+                || (maxAge > 0 && now - openedAt >= maxAge)) {
+            rotate(target, now, config.isFileSinkGzip());
+        }
+        if (record.length > buffer.remaining()) {
+            flush();
+        }
+        if (record.length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(record);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+        } else {
+            buffer.put(record);
+        }
+        activeBytes += record.length;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void rotate(File target, long now, boolean gzip) throws IOException {
+        flush();
+        closeActive(gzip);
+        if (!target.isDirectory() && !target.mkdirs()) {
+            throw new IOException("Unable to create directory " + target);
+        }
+        if (!target.equals(directory) && gzip) {
+            // segments left open by a previous run of the controller
+            File[] leftovers = target.listFiles(
+                    (dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+            if (leftovers != null) {
+                for (File leftover : leftovers) {
+                    compressLater(leftover);
+                }
+            }
+        }
+        directory = target;
+        String time = SEGMENT_TIME.format(Instant.ofEpochMilli(now));
+        active = new File(
+                target, String.format(Locale.ROOT, "%s%s-%06d%s", SEGMENT_PREFIX, time, sequence++, SEGMENT_SUFFIX));
+        channel = FileChannel.open(
+                active.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeBytes = channel.size();
+        openedAt = now;
+    }
+
+    private void closeActive(boolean gzip) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "DX: unable to close event segment " + active, e);
+        }
+        channel = null;
+        if (gzip) {
+            compressLater(active);
+        }
+    }
+
+    /** Closes the active segment once it reaches the configured age; the next event opens a new one. */
+    synchronized void rollIfDue(DxGlobalConfiguration config) {
+        long maxAge = TimeUnit.MINUTES.toMillis(config.getFileSinkRotateMinutes());
+        if (channel == null || maxAge <= 0 || now() - openedAt < maxAge) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "DX: unable to write events to " + active, e);
+        }
+        buffer.clear();
+        closeActive(config.isFileSinkGzip());
+    }
+
+    /** Closes the active segment; the next event opens a new one. */
+    synchronized void close() {
+        try {
+            if (channel != null) {
+                flush();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "DX: unable to write events to " + active, e);
+        }
+        buffer.clear();
+        closeActive(false);
+    }
+
+    void compressLater(File segment) {
+        Timer.get().execute(() -> compress(segment));
+    }
+
+    /** Replaces a closed segment with {@code <segment>.gz}. */
+    static void compress(File segment) {
+        File compressed = new File(segment.getPath() + COMPRESSED_SUFFIX);
+        File tmp = new File(compressed.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp.toPath()))) {
+                Files.copy(segment.toPath(), out);
+            }
+            Files.move(tmp.toPath(), compressed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(segment.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "DX: unable to compress event segment " + segment, e);
+        }
+    }
+
+    File getDirectory(DxGlobalConfiguration config) {
+        String configured = config.getFileSinkDirectory();
+        if (configured != null && !configured.trim().isEmpty()) {
+            return new File(configured.trim());
+        }
+        return new File(Jenkins.get().getRootDir(), "dx-data-sharer/events");
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Terminator
+    public static void shutdown() {
+        DxFileSink instance = ExtensionList.lookup(DxFileSink.class).get(DxFileSink.class);
+        if (instance != null) {
+            instance.close();
+        }
+    }
+
+    /** Rolls the active segment by age even when no events are written. */
+    @Extension
+    public static final class RollWork extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            DxFileSink instance = ExtensionList.lookup(DxFileSink.class).get(DxFileSink.class);
+            if (instance != null) {
+                instance.rollIfDue(DxGlobalConfiguration.get());
+            }
+        }
+    }
+}
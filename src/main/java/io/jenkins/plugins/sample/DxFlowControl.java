@@ -0,0 +1,210 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client-side flow control for DX requests: a token bucket caps the request rate, and an additive-increase,
+ * multiplicative-decrease limit caps the number of requests in flight. The limit halves when DX answers 429 or 503,
+ * grows back while latency stays close to the best observed, and every request waits out a {@code Retry-After}.
+ */
+@Extension
+public class DxFlowControl {
+
+    private static final Logger LOGGER = Logger.getLogger(DxFlowControl.class.getName());
+
+    /** Minimum time between two decreases, so a burst of throttled responses halves the limit only once. */
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Latency above this multiple of the baseline stops the limit from growing. */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private final LongSupplier clock;
+    private final Object lock = new Object();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private double limit = -1;
+    private int inFlight;
+    private double tokens = -1;
+    private long lastRefill;
+    private long pausedUntil;
+    private boolean paused;
+    private long lastDecrease;
+    private boolean decreased;
+    private double baselineLatencyNanos;
+
+    public DxFlowControl() {
+        this(System::nanoTime);
+    }
+
+    DxFlowControl(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static DxFlowControl get() {
+        return ExtensionList.lookupSingleton(DxFlowControl.class);
+    }
+
+    /**
+     * Waits until a request may be sent: no {@code Retry-After} pause is in effect, fewer than the current limit are
+     * in flight and the token bucket has a token. A granted request must be followed by {@link #complete} or
+     * {@link #cancel()}.
+     *
+     * @param requestsPerSecond sustained rate, or {@code 0} for no rate limit
+     * @return {@code false} if no slot became available within the timeout
+     */
+    public boolean acquire(int requestsPerSecond, int burst, int maxConcurrency, long timeoutMillis)
+            throws InterruptedException {
+        synchronized (lock) {
+            long deadline = clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (true) {
+                long now = clock.getAsLong();
+                long waitNanos = take(now, requestsPerSecond, burst, maxConcurrency);
+                if (waitNanos < 0) {
+                    return true;
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    timeouts.incrementAndGet();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, Math.max(1, Math.min(waitNanos, remaining)));
+            }
+        }
+    }
+
+    /**
+     * Takes a slot only if one is available right now, for callers on a build's own thread that must never wait. A
+     * granted request must be followed by {@link #complete} or {@link #cancel()}.
+     */
+    public boolean tryAcquire(int requestsPerSecond, int burst, int maxConcurrency) {
+        synchronized (lock) {
+            if (take(clock.getAsLong(), requestsPerSecond, burst, maxConcurrency) < 0) {
+                return true;
+            }
+            timeouts.incrementAndGet();
+            return false;
+        }
+    }
+
+    /** Takes a slot if one is available and returns {@code -1}, or else how long to wait before trying again. */
+    private long take(long now, int requestsPerSecond, int burst, int maxConcurrency) {
+        if (paused && now - pausedUntil < 0) {
+            return pausedUntil - now;
+        }
+        if (inFlight >= getLimit(maxConcurrency)) {
+            return Long.MAX_VALUE;
+        }
+        if (requestsPerSecond > 0 && refill(now, requestsPerSecond, burst) < 1) {
+            return Math.max(1, (long) ((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+        }
+        if (requestsPerSecond > 0) {
+            tokens--;
+        }
+        inFlight++;
+        return -1;
+    }
+
+    /** Returns a slot that was acquired but not used. */
+    public void cancel() {
+        synchronized (lock) {
+            inFlight--;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns a slot and adapts the concurrency limit to the outcome.
+     *
+     * @param code response code, or a negative pseudo code if DX did not answer
+     * @param retryAfterMillis the response's {@code Retry-After}, or {@code -1}
+     */
+    public void complete(int code, long retryAfterMillis, long latencyNanos, int maxConcurrency) {
+        synchronized (lock) {
+            inFlight--;
+            long now = clock.getAsLong();
+            double max = Math.max(1, maxConcurrency);
+            if (limit < 0 || limit > max) {
+                limit = max;
+            }
+
+            if (code == 429 || code == 503) {
+                throttled.incrementAndGet();
+                if (retryAfterMillis > 0) {
+                    long until = now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+                    if (!paused || until - pausedUntil > 0) {
+                        pausedUntil = until;
+                        paused = true;
+                    }
+                }
+                if (!decreased || now - lastDecrease >= DECREASE_INTERVAL_NANOS) {
+                    limit = Math.max(1, limit / 2);
+                    lastDecrease = now;
+                    decreased = true;
+                    LOGGER.log(Level.FINE, "DX: throttled with response code {0}, concurrency limit now {1}",
+                            new Object[] {code, (int) limit});
+                }
+            } else if (code > 0 && code < 500) {
+                if (baselineLatencyNanos == 0 || latencyNanos < baselineLatencyNanos) {
+                    baselineLatencyNanos = latencyNanos;
+                } else {
+                    // let the baseline drift up slowly so that one unusually fast response does not pin it
+                    baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) / 100;
+                }
+                if (latencyNanos <= baselineLatencyNanos * LATENCY_TOLERANCE) {
+                    limit = Math.min(max, limit + 1 / limit);
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private int getLimit(int maxConcurrency) {
+        int max = Math.max(1, maxConcurrency);
+        if (limit < 0 || limit > max) {
+            limit = max;
+        }
+        return (int) limit;
+    }
+
+    private double refill(long now, int requestsPerSecond, int burst) {
+        int capacity = Math.max(1, burst);
+        if (tokens < 0) {
+            tokens = capacity;
+        } else {
+            tokens += (double) (now - lastRefill) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        }
+        tokens = Math.min(tokens, capacity);
+        lastRefill = now;
+        return tokens;
+    }
+
+    /** Current number of concurrent requests allowed. */
+    public int getConcurrencyLimit() {
+        synchronized (lock) {
+            return limit < 0 ? 0 : (int) limit;
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /** Number of 429 and 503 responses received. */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    /** Number of requests that gave up waiting for a slot. */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+}
@@ -0,0 +1,72 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.model.ItemGroup;
+import hudson.model.Run;
+import hudson.plugins.git.Branch;
+import hudson.plugins.git.Revision;
+import hudson.plugins.git.util.BuildData;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import jenkins.plugins.git.AbstractGitSCMSource;
+import jenkins.scm.api.SCMRevisionAction;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+
+/**
+ * Reads the repository, branch and commit that the Git plugin recorded for a run: the remote of the run's Git branch
+ * source, then the {@link BuildData} of the run's last checkout. Only loaded when the Git plugin is installed.
+ */
+@Extension(optional = true)
+public class DxGitScmMetadataProvider extends DxScmMetadataProvider {
+
+    @Override
+    public DxScmMetadata resolve(Run<?, ?> run) {
+        String url = sourceRemote(run);
+        String branch = "";
+        String commit = "";
+
+        // GIT_URL comes from the last checkout too, since each checkout overwrites the variables of the one before
+        List<BuildData> checkouts = run.getActions(BuildData.class);
+        if (!checkouts.isEmpty()) {
+            BuildData data = checkouts.get(checkouts.size() - 1);
+            if (url.isEmpty()) {
+                Set<String> remotes = data.getRemoteUrls();
+                if (remotes != null && !remotes.isEmpty()) {
+                    url = remotes.iterator().next();
+                }
+            }
+            Revision revision = data.getLastBuiltRevision();
+            if (revision != null) {
+                commit = revision.getSha1String();
+                Collection<Branch> branches = revision.getBranches();
+                if (branches != null && !branches.isEmpty()) {
+                    branch = branches.iterator().next().getName();
+                }
+            }
+        }
+
+        if (url.isEmpty() && branch.isEmpty() && (commit == null || commit.isEmpty())) {
+            return null;
+        }
+        return new DxScmMetadata(url, branch, "", "", commit);
+    }
+
+    private static String sourceRemote(Run<?, ?> run) {
+        ItemGroup<?> owner = run.getParent().getParent();
+        if (!(owner instanceof SCMSourceOwner)) {
+            return "";
+        }
+        SCMRevisionAction action = run.getAction(SCMRevisionAction.class);
+        if (action == null || action.getSourceId() == null) {
+            return "";
+        }
+        SCMSource source = ((SCMSourceOwner) owner).getSCMSource(action.getSourceId());
+        if (source instanceof AbstractGitSCMSource) {
+            String remote = ((AbstractGitSCMSource) source).getRemote();
+            return remote != null ? remote : "";
+        }
+        return "";
+    }
+}
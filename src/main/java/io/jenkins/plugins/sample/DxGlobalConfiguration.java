@@ -1,7 +1,11 @@
 package io.jenkins.plugins.sample;
 
+import hudson.BulkChange;
 import hudson.Extension;
+import hudson.ExtensionList;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import java.io.IOException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import jenkins.model.GlobalConfiguration;
@@ -13,15 +17,94 @@ import org.kohsuke.stapler.StaplerRequest;
 @Extension
 public class DxGlobalConfiguration extends GlobalConfiguration {
 
+    static final String DEFAULT_CREDENTIALS_ID = "dx-api-token";
+    static final long DEFAULT_CREDENTIAL_CACHE_TTL_SECONDS = 300;
+    static final long DEFAULT_EMAIL_CACHE_TTL_SECONDS = 3600;
+    static final int DEFAULT_EMAIL_CACHE_SIZE = 1000;
+    static final int DEFAULT_MAX_CHANGELOG_ENTRIES = 50;
+    static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    static final int DEFAULT_DISPATCHER_THREADS = 2;
+    static final long DEFAULT_OVERFLOW_BLOCK_MILLIS = 5000;
+    static final int DEFAULT_BATCH_SIZE = 1;
+    static final long DEFAULT_BATCH_LINGER_MILLIS = 2000;
+    static final int DEFAULT_MAX_RETRIES = 3;
+    static final long DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS = 500;
+    static final long DEFAULT_RETRY_MAX_BACKOFF_MILLIS = 10000;
+    static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_CIRCUIT_OPEN_SECONDS = 30;
+    static final int DEFAULT_RATE_LIMIT_BURST = 10;
+    static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 10;
+    static final long DEFAULT_FLOW_CONTROL_TIMEOUT_MILLIS = 10000;
+    static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+    static final int DEFAULT_MAX_CONNECTIONS = 20;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+    static final int DEFAULT_FILE_SINK_MAX_SEGMENT_MEGABYTES = 64;
+    static final int DEFAULT_FILE_SINK_ROTATE_MINUTES = 60;
+    static final int DEFAULT_ROLLUP_WINDOW_MINUTES = 15;
+
     private String dxBaseUrl;
     private String repositoryDenylist;
+    private String repositoryAllowlist;
+    private String credentialsId = DEFAULT_CREDENTIALS_ID;
+    private long credentialCacheTtlSeconds = DEFAULT_CREDENTIAL_CACHE_TTL_SECONDS;
+    private long emailCacheTtlSeconds = DEFAULT_EMAIL_CACHE_TTL_SECONDS;
+    private int emailCacheSize = DEFAULT_EMAIL_CACHE_SIZE;
+    private int maxChangelogEntries = DEFAULT_MAX_CHANGELOG_ENTRIES;
+    private boolean asyncDelivery;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int dispatcherThreads = DEFAULT_DISPATCHER_THREADS;
+    private DxDeliveryQueue.OverflowPolicy overflowPolicy = DxDeliveryQueue.OverflowPolicy.DROP_OLDEST;
+    private long overflowBlockMillis = DEFAULT_OVERFLOW_BLOCK_MILLIS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long batchLingerMillis = DEFAULT_BATCH_LINGER_MILLIS;
+    private boolean spoolEnabled;
+    private boolean stageEvents;
+    private boolean deduplicateRuns = true;
+    private boolean fileSinkEnabled;
+    private String fileSinkDirectory;
+    private int fileSinkMaxSegmentMegabytes = DEFAULT_FILE_SINK_MAX_SEGMENT_MEGABYTES;
+    private int fileSinkRotateMinutes = DEFAULT_FILE_SINK_ROTATE_MINUTES;
+    private boolean fileSinkGzip;
+    private boolean rollupEnabled;
+    private String rollupJobs;
+    private int rollupWindowMinutes = DEFAULT_ROLLUP_WINDOW_MINUTES;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryInitialBackoffMillis = DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS;
+    private long retryMaxBackoffMillis = DEFAULT_RETRY_MAX_BACKOFF_MILLIS;
+    private int circuitFailureThreshold = DEFAULT_CIRCUIT_FAILURE_THRESHOLD;
+    private long circuitOpenSeconds = DEFAULT_CIRCUIT_OPEN_SECONDS;
+    private int rateLimitPerSecond;
+    private int rateLimitBurst = DEFAULT_RATE_LIMIT_BURST;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private long flowControlTimeoutMillis = DEFAULT_FLOW_CONTROL_TIMEOUT_MILLIS;
+    private boolean gzipRequests;
+    private boolean debugPayloads;
+    private boolean logTimings;
+    private int connectTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private int readTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int idleConnectionTimeoutSeconds = DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS;
+    private transient volatile DxConfigSnapshot snapshot;
 
     public DxGlobalConfiguration() {
         load();
     }
 
     public static DxGlobalConfiguration get() {
-        return GlobalConfiguration.all().get(DxGlobalConfiguration.class);
+        return ExtensionList.lookupSingleton(DxGlobalConfiguration.class);
+    }
+
+    /**
+     * The settings the delivery path reads, parsed and compiled once. A new snapshot is published when the
+     * configuration is loaded or saved, so while a form submission is being bound callers keep reading the previous
+     * one.
+     */
+    @Nonnull
+    public DxConfigSnapshot getSnapshot() {
+        DxConfigSnapshot current = snapshot;
+        return current != null ? current : new DxConfigSnapshot(this);
     }
 
     @Nullable
@@ -34,6 +117,195 @@ public class DxGlobalConfiguration extends GlobalConfiguration {
         return repositoryDenylist;
     }
 
+    @Nullable
+    public String getRepositoryAllowlist() {
+        return repositoryAllowlist;
+    }
+
+    /** Denylist and allowlist compiled into a matcher, rebuilt whenever either list changes. */
+    @Nonnull
+    public DxRepositoryFilter getRepositoryFilter() {
+        return getSnapshot().getRepositoryFilter();
+    }
+
+    @Nonnull
+    public String getCredentialsId() {
+        return credentialsId != null && !credentialsId.trim().isEmpty() ? credentialsId : DEFAULT_CREDENTIALS_ID;
+    }
+
+    public long getCredentialCacheTtlSeconds() {
+        return credentialCacheTtlSeconds;
+    }
+
+    public long getEmailCacheTtlSeconds() {
+        return emailCacheTtlSeconds;
+    }
+
+    public int getEmailCacheSize() {
+        return emailCacheSize;
+    }
+
+    /** Maximum number of changelog entries scanned for a committer email. */
+    public int getMaxChangelogEntries() {
+        return maxChangelogEntries;
+    }
+
+    public boolean isAsyncDelivery() {
+        return asyncDelivery;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getDispatcherThreads() {
+        return dispatcherThreads;
+    }
+
+    @Nonnull
+    public DxDeliveryQueue.OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy != null ? overflowPolicy : DxDeliveryQueue.OverflowPolicy.DROP_OLDEST;
+    }
+
+    public long getOverflowBlockMillis() {
+        return overflowBlockMillis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public boolean isSpoolEnabled() {
+        return spoolEnabled;
+    }
+
+    /** Whether Pipeline stage start and end events are streamed to DX while the build runs. */
+    public boolean isStageEvents() {
+        return stageEvents;
+    }
+
+    /** Whether runs DX has already accepted are skipped instead of being sent again. */
+    public boolean isDeduplicateRuns() {
+        return deduplicateRuns;
+    }
+
+    /** Whether events are also written as NDJSON files by the {@link DxFileSink}. */
+    public boolean isFileSinkEnabled() {
+        return fileSinkEnabled;
+    }
+
+    /** Directory for {@link DxFileSink} segments, or empty for {@code JENKINS_HOME/dx-data-sharer/events}. */
+    public String getFileSinkDirectory() {
+        return fileSinkDirectory;
+    }
+
+    public int getFileSinkMaxSegmentMegabytes() {
+        return fileSinkMaxSegmentMegabytes;
+    }
+
+    public int getFileSinkRotateMinutes() {
+        return fileSinkRotateMinutes;
+    }
+
+    /** Whether closed {@link DxFileSink} segments are gzip-compressed. */
+    public boolean isFileSinkGzip() {
+        return fileSinkGzip;
+    }
+
+    /** Whether runs of the {@link #getRollupJobs() selected jobs} are sent as per-window rollups. */
+    public boolean isRollupEnabled() {
+        return rollupEnabled;
+    }
+
+    /**
+     * Job or folder full names, comma or newline separated, whose runs are aggregated by {@link DxRollupAggregator}.
+     */
+    public String getRollupJobs() {
+        return rollupJobs;
+    }
+
+    public int getRollupWindowMinutes() {
+        return rollupWindowMinutes;
+    }
+
+    /** Number of times a request failing with a connection error, 5xx or 429 is repeated. */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getRetryInitialBackoffMillis() {
+        return retryInitialBackoffMillis;
+    }
+
+    public long getRetryMaxBackoffMillis() {
+        return retryMaxBackoffMillis;
+    }
+
+    /** Consecutive transient failures after which requests are short-circuited. */
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public long getCircuitOpenSeconds() {
+        return circuitOpenSeconds;
+    }
+
+    /** Sustained request rate to DX, or {@code 0} for no limit. */
+    public int getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /** Upper bound of the adaptive limit on concurrent requests. */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public long getFlowControlTimeoutMillis() {
+        return flowControlTimeoutMillis;
+    }
+
+    public boolean isGzipRequests() {
+        return gzipRequests;
+    }
+
+    /** Whether payloads are echoed to the build console and the Jenkins log. */
+    public boolean isDebugPayloads() {
+        return debugPayloads;
+    }
+
+    /** Whether the time spent publishing is printed to the build console. */
+    public boolean isLogTimings() {
+        return logTimings;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public int getIdleConnectionTimeoutSeconds() {
+        return idleConnectionTimeoutSeconds;
+    }
+
     @DataBoundSetter
     public void setDxBaseUrl(@Nullable String dxBaseUrl) {
         this.dxBaseUrl = dxBaseUrl;
@@ -46,17 +318,299 @@ public class DxGlobalConfiguration extends GlobalConfiguration {
         save();
     }
 
+    @DataBoundSetter
+    public void setRepositoryAllowlist(@Nullable String repositoryAllowlist) {
+        this.repositoryAllowlist = repositoryAllowlist;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setCredentialsId(@Nullable String credentialsId) {
+        this.credentialsId = credentialsId != null ? credentialsId.trim() : null;
+        DxCredentialResolver.get().invalidateAll();
+        save();
+    }
+
+    @DataBoundSetter
+    public void setCredentialCacheTtlSeconds(long credentialCacheTtlSeconds) {
+        this.credentialCacheTtlSeconds = Math.max(0, credentialCacheTtlSeconds);
+        save();
+    }
+
+    @DataBoundSetter
+    public void setEmailCacheTtlSeconds(long emailCacheTtlSeconds) {
+        this.emailCacheTtlSeconds = Math.max(0, emailCacheTtlSeconds);
+        save();
+    }
+
+    @DataBoundSetter
+    public void setEmailCacheSize(int emailCacheSize) {
+        this.emailCacheSize = emailCacheSize > 0 ? emailCacheSize : DEFAULT_EMAIL_CACHE_SIZE;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setMaxChangelogEntries(int maxChangelogEntries) {
+        this.maxChangelogEntries = maxChangelogEntries > 0 ? maxChangelogEntries : DEFAULT_MAX_CHANGELOG_ENTRIES;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setAsyncDelivery(boolean asyncDelivery) {
+        this.asyncDelivery = asyncDelivery;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity > 0 ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setDispatcherThreads(int dispatcherThreads) {
+        this.dispatcherThreads = dispatcherThreads > 0 ? dispatcherThreads : DEFAULT_DISPATCHER_THREADS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setOverflowPolicy(@Nullable DxDeliveryQueue.OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setOverflowBlockMillis(long overflowBlockMillis) {
+        this.overflowBlockMillis = Math.max(0, overflowBlockMillis);
+        save();
+    }
+
+    @DataBoundSetter
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setBatchLingerMillis(long batchLingerMillis) {
+        this.batchLingerMillis = Math.max(0, batchLingerMillis);
+        save();
+    }
+
+    @DataBoundSetter
+    public void setSpoolEnabled(boolean spoolEnabled) {
+        this.spoolEnabled = spoolEnabled;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setStageEvents(boolean stageEvents) {
+        this.stageEvents = stageEvents;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setDeduplicateRuns(boolean deduplicateRuns) {
+        this.deduplicateRuns = deduplicateRuns;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setFileSinkEnabled(boolean fileSinkEnabled) {
+        this.fileSinkEnabled = fileSinkEnabled;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setFileSinkDirectory(String fileSinkDirectory) {
+        this.fileSinkDirectory = fileSinkDirectory;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setFileSinkMaxSegmentMegabytes(int fileSinkMaxSegmentMegabytes) {
+        this.fileSinkMaxSegmentMegabytes =
+                fileSinkMaxSegmentMegabytes > 0 ? fileSinkMaxSegmentMegabytes : DEFAULT_FILE_SINK_MAX_SEGMENT_MEGABYTES;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setFileSinkRotateMinutes(int fileSinkRotateMinutes) {
+        this.fileSinkRotateMinutes =
+                fileSinkRotateMinutes > 0 ? fileSinkRotateMinutes : DEFAULT_FILE_SINK_ROTATE_MINUTES;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setFileSinkGzip(boolean fileSinkGzip) {
+        this.fileSinkGzip = fileSinkGzip;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setRollupEnabled(boolean rollupEnabled) {
+        this.rollupEnabled = rollupEnabled;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setRollupJobs(String rollupJobs) {
+        this.rollupJobs = rollupJobs;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setRollupWindowMinutes(int rollupWindowMinutes) {
+        this.rollupWindowMinutes = rollupWindowMinutes > 0 ? rollupWindowMinutes : DEFAULT_ROLLUP_WINDOW_MINUTES;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+        save();
+    }
+
+    @DataBoundSetter
+    public void setRetryInitialBackoffMillis(long retryInitialBackoffMillis) {
+        this.retryInitialBackoffMillis =
+                retryInitialBackoffMillis > 0 ? retryInitialBackoffMillis : DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setRetryMaxBackoffMillis(long retryMaxBackoffMillis) {
+        this.retryMaxBackoffMillis =
+                retryMaxBackoffMillis > 0 ? retryMaxBackoffMillis : DEFAULT_RETRY_MAX_BACKOFF_MILLIS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold =
+                circuitFailureThreshold > 0 ? circuitFailureThreshold : DEFAULT_CIRCUIT_FAILURE_THRESHOLD;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setCircuitOpenSeconds(long circuitOpenSeconds) {
+        this.circuitOpenSeconds = circuitOpenSeconds > 0 ? circuitOpenSeconds : DEFAULT_CIRCUIT_OPEN_SECONDS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setRateLimitPerSecond(int rateLimitPerSecond) {
+        this.rateLimitPerSecond = Math.max(0, rateLimitPerSecond);
+        save();
+    }
+
+    @DataBoundSetter
+    public void setRateLimitBurst(int rateLimitBurst) {
+        this.rateLimitBurst = rateLimitBurst > 0 ? rateLimitBurst : DEFAULT_RATE_LIMIT_BURST;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests =
+                maxConcurrentRequests > 0 ? maxConcurrentRequests : DEFAULT_MAX_CONCURRENT_REQUESTS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setFlowControlTimeoutMillis(long flowControlTimeoutMillis) {
+        this.flowControlTimeoutMillis = Math.max(0, flowControlTimeoutMillis);
+        save();
+    }
+
+    @DataBoundSetter
+    public void setGzipRequests(boolean gzipRequests) {
+        this.gzipRequests = gzipRequests;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setDebugPayloads(boolean debugPayloads) {
+        this.debugPayloads = debugPayloads;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setLogTimings(boolean logTimings) {
+        this.logTimings = logTimings;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis > 0 ? connectTimeoutMillis : DEFAULT_TIMEOUT_MILLIS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis > 0 ? readTimeoutMillis : DEFAULT_TIMEOUT_MILLIS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute =
+                maxConnectionsPerRoute > 0 ? maxConnectionsPerRoute : DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        save();
+    }
+
+    @DataBoundSetter
+    public void setIdleConnectionTimeoutSeconds(int idleConnectionTimeoutSeconds) {
+        this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds > 0
+                ? idleConnectionTimeoutSeconds
+                : DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS;
+        save();
+    }
+
+    /** Whether events have somewhere to go: the DX API or the file sink. */
     public boolean isConfigured() {
-        return dxBaseUrl != null && !dxBaseUrl.trim().isEmpty();
+        return (dxBaseUrl != null && !dxBaseUrl.trim().isEmpty()) || fileSinkEnabled;
     }
 
     @Override
     public boolean configure(@Nonnull StaplerRequest req, @Nonnull JSONObject json) throws FormException {
-        req.bindJSON(this, json);
-        save();
+        // each setter saves; within the bulk change those saves are deferred to a single one on commit
+        try (BulkChange bc = new BulkChange(this)) {
+            req.bindJSON(this, json);
+            bc.commit();
+        } catch (IOException e) {
+            throw new FormException(e, "dxBaseUrl");
+        }
         return true;
     }
 
+    @Override
+    public synchronized void load() {
+        super.load();
+        snapshot = new DxConfigSnapshot(this);
+    }
+
+    @Override
+    public synchronized void save() {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        snapshot = new DxConfigSnapshot(this);
+        persist();
+    }
+
+    /** Writes the configuration file. */
+    void persist() {
+        super.save();
+    }
+
     public FormValidation doCheckDxBaseUrl(@QueryParameter String value) {
         if (value == null || value.trim().isEmpty()) {
             return FormValidation.warning("DX API base URL is empty.");
@@ -67,4 +621,147 @@ public class DxGlobalConfiguration extends GlobalConfiguration {
         return FormValidation.ok();
     }
 
+    public FormValidation doCheckCredentialCacheTtlSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckEmailCacheTtlSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckEmailCacheSize(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxChangelogEntries(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckQueueCapacity(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckDispatcherThreads(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckOverflowBlockMillis(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckBatchSize(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckBatchLingerMillis(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckRollupWindowMinutes(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxRetries(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckRetryInitialBackoffMillis(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckRetryMaxBackoffMillis(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckCircuitFailureThreshold(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckCircuitOpenSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckRateLimitPerSecond(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckRateLimitBurst(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxConcurrentRequests(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckFlowControlTimeoutMillis(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckConnectTimeoutMillis(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckReadTimeoutMillis(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxConnections(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxConnectionsPerRoute(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckIdleConnectionTimeoutSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public ListBoxModel doFillOverflowPolicyItems() {
+        ListBoxModel items = new ListBoxModel();
+        items.add("Drop oldest queued event", DxDeliveryQueue.OverflowPolicy.DROP_OLDEST.name());
+        items.add("Block until deadline, then drop new event", DxDeliveryQueue.OverflowPolicy.BLOCK.name());
+        return items;
+    }
+
+    /** Number of events currently waiting in the asynchronous delivery queue. */
+    public int getDeliveryQueueDepth() {
+        return DxDeliveryQueue.get().getQueueDepth();
+    }
+
+    public long getDroppedEventCount() {
+        return DxDeliveryQueue.get().getDroppedCount();
+    }
+
+    /** Number of jobs with runs aggregated in the current rollup window. */
+    public int getOpenRollupCount() {
+        return DxRollupAggregator.get().getOpenRollupCount();
+    }
+
+    /** Number of journaled events that DX has not acknowledged yet. */
+    public int getSpooledEventCount() {
+        return DxSpool.get().getPendingCount();
+    }
+
+    /** Current circuit breaker state: CLOSED, OPEN or HALF_OPEN. */
+    public String getCircuitState() {
+        return DxCircuitBreaker.get().getState().name();
+    }
+
+    public long getRetryCount() {
+        return DxCircuitBreaker.get().getRetryCount();
+    }
+
+    public long getShortCircuitedCount() {
+        return DxCircuitBreaker.get().getShortCircuitedCount();
+    }
+
+    /** Current adaptive limit on concurrent requests, or 0 before the first request. */
+    public int getConcurrencyLimit() {
+        return DxFlowControl.get().getConcurrencyLimit();
+    }
+
+    public long getThrottledCount() {
+        return DxFlowControl.get().getThrottledCount();
+    }
 }
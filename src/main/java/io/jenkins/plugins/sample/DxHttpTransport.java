@@ -0,0 +1,336 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Shared HTTP client for the DX API. Connections are pooled and kept alive between requests so that builds do not pay
+ * a TCP and TLS handshake each time.
+ */
+@Extension
+public class DxHttpTransport {
+
+    private static final Logger LOGGER = Logger.getLogger(DxHttpTransport.class.getName());
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private PooledClient current;
+    private volatile boolean gzipRejected;
+
+    public static DxHttpTransport get() {
+        return ExtensionList.lookupSingleton(DxHttpTransport.class);
+    }
+
+    public Response post(DxGlobalConfiguration config, String url, String dxToken, String body) throws IOException {
+        return post(config, url, dxToken, body, null);
+    }
+
+    /**
+     * Posts a JSON body with bearer authentication, gzip-compressed when enabled. If the server rejects a compressed
+     * body with 400 or 415 and then accepts the same body uncompressed, gzip is turned off until the client is rebuilt.
+     *
+     * @param idempotencyKey sent as the {@code Idempotency-Key} header so DX can discard a request it already processed
+     * @return the HTTP response code and throttling hint
+     */
+    public Response post(
+            DxGlobalConfiguration config,
+            String url,
+            String dxToken,
+            String body,
+            @CheckForNull String idempotencyKey)
+            throws IOException {
+        DxConfigSnapshot settings = DxConfigSnapshot.of(config);
+        URI uri = URI.create(url);
+        Response response = post(settings, uri, dxToken, body, idempotencyKey, false);
+        return response.isGzipRejected() ? post(settings, uri, dxToken, body, idempotencyKey, true) : response;
+    }
+
+    /**
+     * Sends a single request. A compressed body the server rejects is not resent here, so that the caller can send it
+     * again uncompressed within its own flow-control slot; see {@link Response#isGzipRejected()}.
+     *
+     * @param uncompressed send the body uncompressed because the server just rejected it compressed; if it is now
+     *     accepted, gzip is turned off until the client is rebuilt
+     */
+    Response post(
+            DxConfigSnapshot config,
+            URI url,
+            String dxToken,
+            String body,
+            @CheckForNull String idempotencyKey,
+            boolean uncompressed)
+            throws IOException {
+        PooledClient pooled = lease(config.getHttpSettings());
+        try {
+            boolean gzip = !uncompressed && config.isGzipRequests() && !gzipRejected;
+            Response response = execute(pooled.client, url, dxToken, idempotencyKey, new DxJsonEntity(body, gzip));
+            int code = response.getCode();
+            if (gzip && (code == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE || code == HttpStatus.SC_BAD_REQUEST)) {
+                return new Response(code, response.getRetryAfterMillis(), true);
+            }
+            if (uncompressed && code >= 200 && code < 300 && !gzipRejected) {
+                LOGGER.info("DX: server does not accept gzip request bodies. Sending uncompressed from now on.");
+                gzipRejected = true;
+            }
+            return response;
+        } finally {
+            release(pooled);
+        }
+    }
+
+    private static Response execute(
+            CloseableHttpClient httpClient,
+            URI url,
+            String dxToken,
+            @CheckForNull String idempotencyKey,
+            DxJsonEntity entity)
+            throws IOException {
+        HttpPost request = new HttpPost(url);
+        request.setHeader("Authorization", "Bearer " + dxToken);
+        if (idempotencyKey != null) {
+            request.setHeader(IDEMPOTENCY_KEY_HEADER, headerValue(idempotencyKey));
+        }
+        request.setEntity(entity);
+
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            // drain the body so the connection goes back to the pool
+            EntityUtils.consume(response.getEntity());
+            Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+            return new Response(
+                    response.getStatusLine().getStatusCode(),
+                    retryAfter != null ? parseRetryAfter(retryAfter.getValue(), System.currentTimeMillis()) : -1,
+                    false);
+        }
+    }
+
+    /** Percent-encodes {@code %}, control characters and non-ASCII characters, which job names may contain. */
+    static String headerValue(String value) {
+        StringBuilder encoded = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x7f && c != '%') {
+                if (encoded != null) {
+                    encoded.append(c);
+                }
+                continue;
+            }
+            if (encoded == null) {
+                encoded = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+            for (byte b : value.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                encoded.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+            i = end - 1;
+        }
+        return encoded != null ? encoded.toString() : value;
+    }
+
+    /**
+     * Parses a {@code Retry-After} value given either in seconds or as an HTTP date.
+     *
+     * @return the delay in milliseconds, or {@code -1} if the value is missing or malformed
+     */
+    static long parseRetryAfter(String value, long nowMillis) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(trimmed);
+            return date != null ? Math.max(0, date.getTime() - nowMillis) : -1;
+        }
+    }
+
+    /**
+     * Returns the client for the given settings and counts the caller as one of its in-flight requests. When the
+     * settings change a new client is built and the previous one is only closed once its last request is released.
+     */
+    synchronized PooledClient lease(Settings settings) {
+        if (current == null || !settings.equals(current.settings)) {
+            PooledClient previous = current;
+            current = new PooledClient(settings);
+            gzipRejected = false;
+            if (previous != null) {
+                retire(previous);
+            }
+        }
+        current.leases++;
+        return current;
+    }
+
+    synchronized void release(PooledClient pooled) {
+        pooled.leases--;
+        if (pooled.retired && pooled.leases == 0) {
+            closeQuietly(pooled.client);
+        }
+    }
+
+    private static void retire(PooledClient pooled) {
+        pooled.retired = true;
+        if (pooled.leases == 0) {
+            closeQuietly(pooled.client);
+        }
+    }
+
+    /** Number of pooled connections currently leased or idle, for diagnostics. */
+    public synchronized int getOpenConnections() {
+        if (current == null) {
+            return 0;
+        }
+        return current.connectionManager.getTotalStats().getLeased()
+                + current.connectionManager.getTotalStats().getAvailable();
+    }
+
+    private static void closeQuietly(CloseableHttpClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "DX: unable to close HTTP client", e);
+        }
+    }
+
+    @Terminator
+    public static void shutdown() {
+        DxHttpTransport instance = ExtensionList.lookup(DxHttpTransport.class).get(DxHttpTransport.class);
+        if (instance == null) {
+            return;
+        }
+        instance.close();
+    }
+
+    /** Closes the client once the requests still using it are done. */
+    synchronized void close() {
+        if (current != null) {
+            retire(current);
+            current = null;
+        }
+    }
+
+    /** An HTTP client with its connection pool and the number of requests still using it. */
+    static final class PooledClient {
+        final Settings settings;
+        final PoolingHttpClientConnectionManager connectionManager;
+        final CloseableHttpClient client;
+
+        /** Guarded by the owning {@link DxHttpTransport}. */
+        private int leases;
+
+        private boolean retired;
+
+        PooledClient(Settings settings) {
+            this.settings = settings;
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(settings.maxConnections);
+            connectionManager.setDefaultMaxPerRoute(settings.maxConnectionsPerRoute);
+            connectionManager.setValidateAfterInactivity(1000);
+
+            client = HttpClients.custom()
+                    .useSystemProperties()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(settings.connectTimeoutMillis)
+                            .setSocketTimeout(settings.readTimeoutMillis)
+                            .setConnectionRequestTimeout(settings.connectTimeoutMillis)
+                            .build())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(settings.idleTimeoutSeconds, TimeUnit.SECONDS)
+                    .disableCookieManagement()
+                    .build();
+        }
+
+        boolean isClosed() {
+            return retired && leases == 0;
+        }
+    }
+
+    /** Status code of a DX response together with its {@code Retry-After} delay. */
+    public static final class Response {
+        private final int code;
+        private final long retryAfterMillis;
+        private final boolean gzipRejected;
+
+        Response(int code, long retryAfterMillis, boolean gzipRejected) {
+            this.code = code;
+            this.retryAfterMillis = retryAfterMillis;
+            this.gzipRejected = gzipRejected;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        /** Delay DX asked for before the next request, or {@code -1} if it did not say. */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        /** Whether DX answered 400 or 415 to a compressed body, which should be sent again uncompressed. */
+        public boolean isGzipRejected() {
+            return gzipRejected;
+        }
+    }
+
+    /** Transport settings that require a new client when they change. */
+    static final class Settings {
+        final int connectTimeoutMillis;
+        final int readTimeoutMillis;
+        final int maxConnections;
+        final int maxConnectionsPerRoute;
+        final int idleTimeoutSeconds;
+
+        Settings(DxGlobalConfiguration config) {
+            this.connectTimeoutMillis = config.getConnectTimeoutMillis();
+            this.readTimeoutMillis = config.getReadTimeoutMillis();
+            this.maxConnections = Math.max(1, config.getMaxConnections());
+            this.maxConnectionsPerRoute = Math.max(1, config.getMaxConnectionsPerRoute());
+            this.idleTimeoutSeconds = Math.max(1, config.getIdleConnectionTimeoutSeconds());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return connectTimeoutMillis == other.connectTimeoutMillis
+                    && readTimeoutMillis == other.readTimeoutMillis
+                    && maxConnections == other.maxConnections
+                    && maxConnectionsPerRoute == other.maxConnectionsPerRoute
+                    && idleTimeoutSeconds == other.idleTimeoutSeconds;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = connectTimeoutMillis;
+            result = 31 * result + readTimeoutMillis;
+            result = 31 * result + maxConnections;
+            result = 31 * result + maxConnectionsPerRoute;
+            return 31 * result + idleTimeoutSeconds;
+        }
+    }
+}
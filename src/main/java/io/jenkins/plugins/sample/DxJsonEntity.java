@@ -0,0 +1,133 @@
+package io.jenkins.plugins.sample;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Request body that encodes a JSON string straight into the connection's output stream through a per-thread buffer,
+ * optionally gzip-compressed, instead of first copying it into a byte array.
+ */
+class DxJsonEntity extends AbstractHttpEntity {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<Encoder> ENCODERS = ThreadLocal.withInitial(Encoder::new);
+
+    private final CharSequence json;
+    private final boolean gzip;
+
+    DxJsonEntity(CharSequence json, boolean gzip) {
+        this.json = json;
+        this.gzip = gzip;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        if (gzip) {
+            setContentEncoding("gzip");
+        }
+    }
+
+    boolean isGzip() {
+        return gzip;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return gzip ? -1 : utf8Length(json);
+    }
+
+    /**
+     * Encodes the body into memory for callers that read the entity instead of writing it, such as logging or retry
+     * handlers. Requests themselves go through {@link #writeTo}.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(gzip ? BUFFER_SIZE : (int) utf8Length(json));
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (gzip) {
+            GZIPOutputStream compressed = new GZIPOutputStream(out, BUFFER_SIZE);
+            ENCODERS.get().encode(json, compressed);
+            compressed.finish();
+        } else {
+            ENCODERS.get().encode(json, out);
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    static long utf8Length(CharSequence s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced with '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /** UTF-8 encoder and byte buffer reused by every request on a thread. */
+    private static final class Encoder {
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8
+                .newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+        void encode(CharSequence json, OutputStream out) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(json);
+            encoder.reset();
+            bytes.clear();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                drainTo(out);
+            } while (result.isOverflow());
+            do {
+                result = encoder.flush(bytes);
+                drainTo(out);
+            } while (result.isOverflow());
+        }
+
+        private void drainTo(OutputStream out) throws IOException {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+    }
+}
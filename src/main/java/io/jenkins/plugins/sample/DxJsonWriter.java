@@ -0,0 +1,155 @@
+package io.jenkins.plugins.sample;
+
+/**
+ * Minimal streaming writer for flat JSON objects such as the run event payload. Each thread reuses a few buffers, so
+ * building a payload allocates little more than the resulting string. Objects may be started while another one is
+ * still open on the same thread, for example to build a nested value; each gets its own buffer.
+ *
+ * <pre>
+ * String json = DxJsonWriter.object().field("status", "success").field("started_at", 1700000000L).toJson();
+ * </pre>
+ */
+public final class DxJsonWriter {
+
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    /** Open objects per thread that reuse a buffer; deeper nesting allocates a fresh writer. */
+    private static final int POOLED_WRITERS = 4;
+
+    private static final ThreadLocal<DxJsonWriter[]> WRITERS =
+            ThreadLocal.withInitial(() -> new DxJsonWriter[POOLED_WRITERS]);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private StringBuilder buffer = new StringBuilder(1024);
+    private boolean first;
+    private boolean open;
+
+    private DxJsonWriter() {}
+
+    /**
+     * Starts a new object on a writer of this thread that is not already open. The writer must not be shared with
+     * another thread and is only reused after {@link #toJson()}.
+     */
+    public static DxJsonWriter object() {
+        DxJsonWriter[] writers = WRITERS.get();
+        DxJsonWriter writer = null;
+        for (int i = 0; i < writers.length && writer == null; i++) {
+            if (writers[i] == null) {
+                writers[i] = new DxJsonWriter();
+            }
+            if (!writers[i].open) {
+                writer = writers[i];
+            }
+        }
+        if (writer == null) {
+            writer = new DxJsonWriter();
+        }
+        writer.open = true;
+        writer.buffer.setLength(0);
+        writer.buffer.append('{');
+        writer.first = true;
+        return writer;
+    }
+
+    /** Writes a string field. {@code null} values are omitted, matching {@code JSONObject.put}. */
+    public DxJsonWriter field(String name, String value) {
+        if (value == null) {
+            return this;
+        }
+        name(name);
+        quote(value);
+        return this;
+    }
+
+    public DxJsonWriter field(String name, long value) {
+        name(name);
+        buffer.append(value);
+        return this;
+    }
+
+    public DxJsonWriter field(String name, boolean value) {
+        name(name);
+        buffer.append(value);
+        return this;
+    }
+
+    /** Writes a string field only if the value is neither {@code null} nor empty. */
+    public DxJsonWriter fieldIfNotEmpty(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            return this;
+        }
+        return field(name, value);
+    }
+
+    /** Writes a field whose value is already serialized JSON. */
+    public DxJsonWriter rawField(String name, String json) {
+        if (json == null) {
+            return this;
+        }
+        name(name);
+        buffer.append(json);
+        return this;
+    }
+
+    /** Closes the object and returns it, releasing the writer for the next object on this thread. */
+    public String toJson() {
+        buffer.append('}');
+        String json = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(1024);
+        }
+        open = false;
+        return json;
+    }
+
+    private void name(String name) {
+        if (!first) {
+            buffer.append(',');
+        }
+        first = false;
+        quote(name);
+        buffer.append(':');
+    }
+
+    private void quote(String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        buffer.append("\\u")
+                                .append(HEX[(c >> 12) & 0xf])
+                                .append(HEX[(c >> 8) & 0xf])
+                                .append(HEX[(c >> 4) & 0xf])
+                                .append(HEX[c & 0xf]);
+                    } else {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,90 @@
+package io.jenkins.plugins.sample;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets: every power of two of microseconds is split into four
+ * sub-buckets, so recorded values keep about two significant bits (at most 25% relative error) from a microsecond up
+ * to days, in a fixed 160-slot array.
+ */
+final class DxLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAX_EXPONENT * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sumNanos.add(Math.max(0, nanos));
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /** Number of recorded values below {@code 2^exponent} microseconds. */
+    long countBelowPowerOfTwo(int exponent) {
+        int end = Math.min(counts.length(), exponent <= SUB_BUCKET_BITS ? 1 << exponent : (exponent - 1) * SUB_BUCKETS);
+        long below = 0;
+        for (int i = 0; i < end; i++) {
+            below += counts.get(i);
+        }
+        return below;
+    }
+
+    /** Upper bound in nanoseconds of the bucket holding the given quantile, or {@code 0} if nothing was recorded. */
+    long quantileNanos(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return TimeUnit.MICROSECONDS.toNanos(upperBoundMicros(i));
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(upperBoundMicros(snapshot.length - 1));
+    }
+
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return MAX_EXPONENT * SUB_BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Exclusive upper bound, in microseconds, of the values counted in the bucket. */
+    static long upperBoundMicros(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int exponent = index / SUB_BUCKETS + 1;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+}
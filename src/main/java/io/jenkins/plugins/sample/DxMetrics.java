@@ -0,0 +1,201 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Run;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.CheckForNull;
+
+/**
+ * Low-overhead counters and latency histograms for the publishing hot path, plus the stage timings of the most recent
+ * builds. Exposed in Prometheus text format by {@link DxMetricsAction}.
+ */
+@Extension
+public class DxMetrics {
+
+    /** Timed steps of publishing a run. */
+    public enum Stage {
+        /** The whole {@code onCompleted} callback, including synchronous delivery. */
+        ON_COMPLETED("on_completed"),
+        /** Resolving the repository, branch and commit of the build. */
+        SCM_RESOLUTION("scm_resolution"),
+        /** Resolving the committer or build user email. */
+        EMAIL_RESOLUTION("email_resolution"),
+        /** Extracting run metadata and serializing the payload, including the two stages above. */
+        PAYLOAD_BUILD("payload_build"),
+        /** Looking up the DX API token. */
+        CREDENTIAL_LOOKUP("credential_lookup"),
+        /** One HTTP round-trip to DX. */
+        HTTP_REQUEST("http_request");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    static final int RECENT_RUNS = 200;
+
+    private static final int FIRST_BUCKET_EXPONENT = 7;
+    private static final int LAST_BUCKET_EXPONENT = 26;
+
+    private static final String[] RESPONSE_CLASSES = {
+        "2xx", "3xx", "4xx", "5xx", "connection_error", "short_circuited", "throttled", "other"
+    };
+
+    private final Map<Stage, DxLatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final LongAdder[] responses = new LongAdder[RESPONSE_CLASSES.length];
+    private final LongAdder eventsAccepted = new LongAdder();
+    private final LongAdder eventsFailed = new LongAdder();
+
+    private final LinkedHashMap<String, Map<Stage, Long>> recentRuns =
+            new LinkedHashMap<String, Map<Stage, Long>>(16, 0.75f, false) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<Stage, Long>> eldest) {
+                    return size() > RECENT_RUNS;
+                }
+            };
+
+    public DxMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new DxLatencyHistogram());
+        }
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = new LongAdder();
+        }
+    }
+
+    public static DxMetrics get() {
+        return ExtensionList.lookupSingleton(DxMetrics.class);
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    /** Records a stage duration and adds it to the run's timings. */
+    public void record(@CheckForNull Run<?, ?> run, Stage stage, long nanos) {
+        record(run != null ? run.getExternalizableId() : null, stage, nanos);
+    }
+
+    void record(@CheckForNull String id, Stage stage, long nanos) {
+        record(stage, nanos);
+        if (id == null) {
+            return;
+        }
+        synchronized (recentRuns) {
+            recentRuns.computeIfAbsent(id, k -> new EnumMap<>(Stage.class)).merge(stage, nanos, Long::sum);
+        }
+    }
+
+    /** Counts a response code or one of the {@link DxDataSender} pseudo codes. */
+    public void recordResponse(int code) {
+        responses[responseClass(code)].increment();
+    }
+
+    public void recordDelivery(int accepted, int failed) {
+        eventsAccepted.add(accepted);
+        eventsFailed.add(failed);
+    }
+
+    /** Stage durations in nanoseconds for one of the most recent runs, or {@code null} if it is not known. */
+    @CheckForNull
+    public Map<Stage, Long> getRunTimings(String externalizableId) {
+        synchronized (recentRuns) {
+            Map<Stage, Long> timings = recentRuns.get(externalizableId);
+            return timings != null ? Collections.unmodifiableMap(new EnumMap<>(timings)) : null;
+        }
+    }
+
+    /** Formats run timings as {@code stage=12.3ms} pairs. */
+    static String formatTimings(Map<Stage, Long> timings) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<Stage, Long> timing : timings.entrySet()) {
+            if (out.length() > 0) {
+                out.append(' ');
+            }
+            out.append(timing.getKey().getLabel())
+                    .append('=')
+                    .append(BigDecimal.valueOf(timing.getValue(), 6).setScale(1, RoundingMode.HALF_UP))
+                    .append("ms");
+        }
+        return out.toString();
+    }
+
+    long getResponseCount(String responseClass) {
+        for (int i = 0; i < RESPONSE_CLASSES.length; i++) {
+            if (RESPONSE_CLASSES[i].equals(responseClass)) {
+                return responses[i].sum();
+            }
+        }
+        return 0;
+    }
+
+    DxLatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    /** Appends the counters and histograms in Prometheus text exposition format. */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP dx_stage_duration_seconds Time spent in each step of publishing a run to DX.\n");
+        out.append("# TYPE dx_stage_duration_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            DxLatencyHistogram histogram = histograms.get(stage);
+            long count = histogram.getCount();
+            String label = "stage=\"" + stage.getLabel() + "\"";
+            for (int exponent = FIRST_BUCKET_EXPONENT; exponent <= LAST_BUCKET_EXPONENT; exponent++) {
+                out.append("dx_stage_duration_seconds_bucket{")
+                        .append(label)
+                        .append(",le=\"")
+                        .append(BigDecimal.valueOf(1L << exponent, 6).stripTrailingZeros().toPlainString())
+                        .append("\"} ")
+                        .append(histogram.countBelowPowerOfTwo(exponent))
+                        .append('\n');
+            }
+            out.append("dx_stage_duration_seconds_bucket{").append(label).append(",le=\"+Inf\"} ")
+                    .append(count).append('\n');
+            out.append("dx_stage_duration_seconds_sum{").append(label).append("} ")
+                    .append(BigDecimal.valueOf(histogram.getSumNanos(), 9).toPlainString()).append('\n');
+            out.append("dx_stage_duration_seconds_count{").append(label).append("} ")
+                    .append(count).append('\n');
+        }
+
+        out.append("# HELP dx_http_responses_total DX API responses by status class.\n");
+        out.append("# TYPE dx_http_responses_total counter\n");
+        for (int i = 0; i < RESPONSE_CLASSES.length; i++) {
+            out.append("dx_http_responses_total{class=\"").append(RESPONSE_CLASSES[i]).append("\"} ")
+                    .append(responses[i].sum()).append('\n');
+        }
+
+        out.append("# HELP dx_events_total Run events by delivery outcome.\n");
+        out.append("# TYPE dx_events_total counter\n");
+        out.append("dx_events_total{outcome=\"accepted\"} ").append(eventsAccepted.sum()).append('\n');
+        out.append("dx_events_total{outcome=\"failed\"} ").append(eventsFailed.sum()).append('\n');
+    }
+
+    private static int responseClass(int code) {
+        switch (code) {
+            case DxDataSender.CONNECTION_ERROR:
+                return 4;
+            case DxDataSender.SHORT_CIRCUITED:
+                return 5;
+            case DxDataSender.THROTTLED:
+                return 6;
+            default:
+                return code >= 200 && code < 600 ? code / 100 - 2 : 7;
+        }
+    }
+}
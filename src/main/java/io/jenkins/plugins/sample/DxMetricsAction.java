@@ -0,0 +1,100 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves {@link DxMetrics} in Prometheus text format at {@code /dx-metrics/}, and the stage timings of a recent build
+ * at {@code /dx-metrics/run?id=<job full name>%23<number>}.
+ */
+@Extension
+public class DxMetricsAction implements RootAction {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "DX metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "dx-metrics";
+    }
+
+    public void doIndex(StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+
+        StringBuilder out = new StringBuilder(16 * 1024);
+        DxMetrics.get().writePrometheus(out);
+        writeGauges(out);
+
+        rsp.setContentType(CONTENT_TYPE);
+        try (PrintWriter writer = rsp.getWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    public void doRun(@QueryParameter String id, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+
+        Map<DxMetrics.Stage, Long> timings = id != null ? DxMetrics.get().getRunTimings(id) : null;
+        if (timings == null) {
+            rsp.sendError(
+                    HttpServletResponse.SC_NOT_FOUND,
+                    "No DX timings for '" + id + "'. Only the last " + DxMetrics.RECENT_RUNS + " runs are kept.");
+            return;
+        }
+        rsp.setContentType(CONTENT_TYPE);
+        try (PrintWriter writer = rsp.getWriter()) {
+            writer.println(id + ": " + DxMetrics.formatTimings(timings));
+        }
+    }
+
+    private static void writeGauges(StringBuilder out) {
+        DxDeliveryQueue queue = DxDeliveryQueue.get();
+        gauge(out, "dx_queue_depth", "Events waiting in the asynchronous delivery queue.", queue.getQueueDepth());
+        counter(out, "dx_queue_dropped_total", "Events dropped because the delivery queue was full.",
+                queue.getDroppedCount());
+        gauge(out, "dx_spool_pending", "Journaled events not yet acknowledged by DX.",
+                DxSpool.get().getPendingCount());
+
+        DxCircuitBreaker breaker = DxCircuitBreaker.get();
+        gauge(out, "dx_circuit_open", "1 while the circuit breaker refuses requests.",
+                breaker.getState() == DxCircuitBreaker.State.CLOSED ? 0 : 1);
+        counter(out, "dx_retries_total", "Requests repeated after a transient failure.", breaker.getRetryCount());
+
+        DxFlowControl flowControl = DxFlowControl.get();
+        gauge(out, "dx_concurrency_limit", "Current adaptive limit on concurrent requests.",
+                flowControl.getConcurrencyLimit());
+        gauge(out, "dx_requests_in_flight", "Requests currently sent to DX.", flowControl.getInFlight());
+        gauge(out, "dx_http_connections", "Pooled HTTP connections, leased or idle.",
+                DxHttpTransport.get().getOpenConnections());
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        metric(out, name, help, "gauge", value);
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        metric(out, name, help, "counter", value);
+    }
+
+    private static void metric(StringBuilder out, String name, String help, String type, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
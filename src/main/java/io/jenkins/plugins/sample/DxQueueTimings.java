@@ -0,0 +1,144 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Job;
+import hudson.model.Label;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.queue.QueueListener;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * Records when each queue item entered the queue, became buildable and left it, so the run payload can tell time
+ * spent waiting (quiet period, blocked builds) from time spent waiting for an executor. Entries are keyed by queue
+ * item id, which the run keeps as {@link Run#getQueueId()}, and are removed when the run completes or the item is
+ * cancelled. Each queue transition costs one map operation. Once {@link #MAX_TRACKED} items are tracked, as when runs
+ * never complete, the earliest queued are evicted down to {@link #LOW_WATER_MARK}, so the cost of a prune is spread
+ * over the items queued until the next one.
+ *
+ * <p>Only queue items of jobs are tracked. Pipeline {@code node} blocks are separate queue items for a placeholder
+ * task and are not tracked.
+ */
+@Extension
+public class DxQueueTimings extends QueueListener {
+
+    static final int MAX_TRACKED = 10000;
+    static final int LOW_WATER_MARK = MAX_TRACKED * 3 / 4;
+
+    private final ConcurrentHashMap<Long, Timing> items = new ConcurrentHashMap<>();
+
+    public static DxQueueTimings get() {
+        return ExtensionList.lookupSingleton(DxQueueTimings.class);
+    }
+
+    @Override
+    public void onEnterWaiting(Queue.WaitingItem wi) {
+        track(wi);
+    }
+
+    @Override
+    public void onEnterBuildable(Queue.BuildableItem bi) {
+        Timing timing = track(bi);
+        if (timing != null && timing.buildableAt == 0) {
+            timing.buildableAt = now();
+        }
+    }
+
+    @Override
+    public void onLeft(Queue.LeftItem li) {
+        if (li.isCancelled()) {
+            items.remove(li.getId());
+            return;
+        }
+        Timing timing = items.get(li.getId());
+        if (timing != null) {
+            timing.leftAt = now();
+        }
+    }
+
+    /** Timing of the queue item that started the run, or {@code null} if it was not observed. */
+    @CheckForNull
+    public Timing get(Run<?, ?> run) {
+        return items.get(run.getQueueId());
+    }
+
+    /** Forgets the run's queue item once the run has been reported. */
+    public void remove(Run<?, ?> run) {
+        items.remove(run.getQueueId());
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    @CheckForNull
+    private Timing track(Queue.Item item) {
+        if (!(item.task instanceof Job)) {
+            return null;
+        }
+        Timing timing = items.get(item.getId());
+        if (timing == null) {
+            if (items.size() >= MAX_TRACKED) {
+                prune();
+            }
+            timing = items.computeIfAbsent(item.getId(), id -> new Timing(item.getInQueueSince(), labelOf(item)));
+        }
+        return timing;
+    }
+
+    /** Evicts the items that entered the queue first, down to {@link #LOW_WATER_MARK}. */
+    private void prune() {
+        List<Map.Entry<Long, Timing>> entries = new ArrayList<>(items.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().queuedAt));
+        for (int i = 0; i < entries.size() - LOW_WATER_MARK; i++) {
+            items.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static String labelOf(Queue.Item item) {
+        Label label = item.getAssignedLabel();
+        return label != null ? label.getExpression() : "";
+    }
+
+    /** Queue timestamps of one item, in milliseconds. Fields are written by the queue and read by the run listener. */
+    public static final class Timing {
+        private final long queuedAt;
+        private final String label;
+        private volatile long buildableAt;
+        private volatile long leftAt;
+
+        Timing(long queuedAt, String label) {
+            this.queuedAt = queuedAt;
+            this.label = label != null ? label : "";
+        }
+
+        public long getQueuedAt() {
+            return queuedAt;
+        }
+
+        /** When the item became ready to run and started waiting for an executor, or {@code 0} if it never did. */
+        public long getBuildableAt() {
+            return buildableAt;
+        }
+
+        /** When the item was handed to an executor, or {@code 0} if it has not left the queue. */
+        public long getLeftAt() {
+            return leftAt;
+        }
+
+        /** Label expression the item was restricted to, or empty. */
+        public String getLabel() {
+            return label;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package io.jenkins.plugins.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Repository denylist and allowlist compiled once per configuration change.
+ *
+ * <p>Entries are comma or newline separated and case-insensitive. An entry containing {@code /} matches the
+ * {@code owner/name} path of a repository, any other entry matches its bare name. {@code *} and {@code ?} wildcards
+ * are supported. Exact names and prefix patterns such as {@code infra-*} live in a trie, suffix patterns such as
+ * {@code *-sandbox} in a trie of reversed keys, so a lookup walks the name once and allocates nothing. Only patterns
+ * with inner wildcards fall back to a linear glob scan.
+ */
+public final class DxRepositoryFilter {
+
+    static final DxRepositoryFilter EMPTY = new DxRepositoryFilter(PatternList.EMPTY, PatternList.EMPTY);
+
+    private final PatternList denylist;
+    private final PatternList allowlist;
+
+    private DxRepositoryFilter(PatternList denylist, PatternList allowlist) {
+        this.denylist = denylist;
+        this.allowlist = allowlist;
+    }
+
+    public static DxRepositoryFilter compile(String denylistRaw, String allowlistRaw) {
+        PatternList denylist = PatternList.compile(denylistRaw);
+        PatternList allowlist = PatternList.compile(allowlistRaw);
+        if (denylist.isEmpty() && allowlist.isEmpty()) {
+            return EMPTY;
+        }
+        return new DxRepositoryFilter(denylist, allowlist);
+    }
+
+    /**
+     * Whether the repository matches the denylist.
+     *
+     * @param repositoryPath {@code owner/name} or bare repository name
+     */
+    public boolean isDenylisted(String repositoryPath) {
+        if (repositoryPath == null || repositoryPath.isEmpty()) {
+            return false;
+        }
+        return denylist.matches(repositoryPath);
+    }
+
+    /** Whether the repository passes the allowlist. An empty allowlist allows every repository. */
+    public boolean isAllowlisted(String repositoryPath) {
+        if (allowlist.isEmpty()) {
+            return true;
+        }
+        return repositoryPath != null && !repositoryPath.isEmpty() && allowlist.matches(repositoryPath);
+    }
+
+    /** Whether neither list has entries, so every repository passes. */
+    public boolean isEmpty() {
+        return denylist.isEmpty() && allowlist.isEmpty();
+    }
+
+    public boolean hasAllowlist() {
+        return !allowlist.isEmpty();
+    }
+
+    /** One compiled list of entries, split by whether they match the bare name or the owner/name path. */
+    private static final class PatternList {
+
+        static final PatternList EMPTY = new PatternList(PatternSet.EMPTY, PatternSet.EMPTY);
+
+        private final PatternSet bare;
+        private final PatternSet qualified;
+
+        private PatternList(PatternSet bare, PatternSet qualified) {
+            this.bare = bare;
+            this.qualified = qualified;
+        }
+
+        static PatternList compile(String raw) {
+            if (raw == null || raw.trim().isEmpty()) {
+                return EMPTY;
+            }
+            PatternSet.Builder bare = new PatternSet.Builder();
+            PatternSet.Builder qualified = new PatternSet.Builder();
+            for (String entry : raw.split("[\\n,]")) {
+                String pattern = entry.trim().toLowerCase(Locale.ROOT);
+                if (pattern.isEmpty()) {
+                    continue;
+                }
+                if (pattern.indexOf('/') >= 0) {
+                    qualified.add(pattern);
+                } else {
+                    bare.add(pattern);
+                }
+            }
+            return new PatternList(bare.build(), qualified.build());
+        }
+
+        boolean isEmpty() {
+            return bare.isEmpty() && qualified.isEmpty();
+        }
+
+        boolean matches(String path) {
+            int nameStart = path.lastIndexOf('/') + 1;
+            if (bare.matches(path, nameStart, path.length())) {
+                return true;
+            }
+            return nameStart > 0 && qualified.matches(path, 0, path.length());
+        }
+    }
+
+    /** Compiled patterns of one kind. */
+    private static final class PatternSet {
+
+        static final PatternSet EMPTY = new Builder().build();
+
+        private final Trie forward;
+        private final Trie reversed;
+        private final String[] globs;
+        private final boolean matchAll;
+        private final boolean empty;
+
+        private PatternSet(Trie forward, Trie reversed, String[] globs, boolean matchAll, boolean empty) {
+            this.forward = forward;
+            this.reversed = reversed;
+            this.globs = globs;
+            this.matchAll = matchAll;
+            this.empty = empty;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        boolean matches(String s, int from, int to) {
+            if (empty) {
+                return false;
+            }
+            if (matchAll || forward.matchesForward(s, from, to) || reversed.matchesBackward(s, from, to)) {
+                return true;
+            }
+            for (String glob : globs) {
+                if (globMatches(glob, s, from, to)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static final class Builder {
+            private final Trie.Builder forward = new Trie.Builder();
+            private final Trie.Builder reversed = new Trie.Builder();
+            private final List<String> globs = new ArrayList<>();
+            private boolean matchAll;
+            private boolean empty = true;
+
+            void add(String pattern) {
+                empty = false;
+                int last = pattern.length() - 1;
+                if (isAllStars(pattern)) {
+                    matchAll = true;
+                } else if (!hasWildcard(pattern, 0, pattern.length())) {
+                    forward.add(pattern, false);
+                } else if (pattern.charAt(last) == '*' && !hasWildcard(pattern, 0, last)) {
+                    forward.add(pattern.substring(0, last), true);
+                } else if (pattern.charAt(0) == '*' && !hasWildcard(pattern, 1, pattern.length())) {
+                    reversed.add(new StringBuilder(pattern.substring(1)).reverse().toString(), true);
+                } else {
+                    globs.add(pattern);
+                }
+            }
+
+            PatternSet build() {
+                return new PatternSet(
+                        forward.build(), reversed.build(), globs.toArray(new String[0]), matchAll, empty);
+            }
+
+            private static boolean isAllStars(String pattern) {
+                for (int i = 0; i < pattern.length(); i++) {
+                    if (pattern.charAt(i) != '*') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            private static boolean hasWildcard(String pattern, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    char c = pattern.charAt(i);
+                    if (c == '*' || c == '?') {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+    /** Character trie whose nodes are flagged as exact matches or as prefixes of anything. */
+    private static final class Trie {
+
+        private final char[] keys;
+        private final Trie[] children;
+        private final boolean exact;
+        private final boolean prefix;
+
+        private Trie(char[] keys, Trie[] children, boolean exact, boolean prefix) {
+            this.keys = keys;
+            this.children = children;
+            this.exact = exact;
+            this.prefix = prefix;
+        }
+
+        private Trie child(char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char key = keys[mid];
+                if (key < c) {
+                    low = mid + 1;
+                } else if (key > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        boolean matchesForward(String s, int from, int to) {
+            Trie node = this;
+            for (int i = from; i < to; i++) {
+                if (node.prefix) {
+                    return true;
+                }
+                node = node.child(Character.toLowerCase(s.charAt(i)));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.exact || node.prefix;
+        }
+
+        boolean matchesBackward(String s, int from, int to) {
+            Trie node = this;
+            for (int i = to - 1; i >= from; i--) {
+                if (node.prefix) {
+                    return true;
+                }
+                node = node.child(Character.toLowerCase(s.charAt(i)));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.exact || node.prefix;
+        }
+
+        static final class Builder {
+            private final Map<Character, Builder> children = new TreeMap<>();
+            private boolean exact;
+            private boolean prefix;
+
+            void add(String key, boolean isPrefix) {
+                Builder node = this;
+                for (int i = 0; i < key.length(); i++) {
+                    node = node.children.computeIfAbsent(key.charAt(i), c -> new Builder());
+                }
+                if (isPrefix) {
+                    node.prefix = true;
+                } else {
+                    node.exact = true;
+                }
+            }
+
+            Trie build() {
+                char[] keys = new char[children.size()];
+                Trie[] nodes = new Trie[children.size()];
+                int i = 0;
+                for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                    keys[i] = child.getKey();
+                    nodes[i++] = child.getValue().build();
+                }
+                return new Trie(keys, nodes, exact, prefix);
+            }
+        }
+    }
+
+    /** Allocation-free glob match of a lowercase pattern against {@code s[from, to)}, ignoring case. */
+    static boolean globMatches(String pattern, String s, int from, int to) {
+        int p = 0;
+        int i = from;
+        int star = -1;
+        int mark = from;
+        while (i < to) {
+            char c = Character.toLowerCase(s.charAt(i));
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == c)) {
+                p++;
+                i++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = i;
+            } else if (star >= 0) {
+                p = star + 1;
+                i = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
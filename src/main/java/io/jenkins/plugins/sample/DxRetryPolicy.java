@@ -0,0 +1,64 @@
+package io.jenkins.plugins.sample;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed DX request is worth repeating and how long to wait first. Connection errors, 5xx and 429
+ * responses are retried with exponential backoff and jitter; other 4xx responses are not.
+ */
+final class DxRetryPolicy {
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    DxRetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+    }
+
+    static DxRetryPolicy from(DxGlobalConfiguration config) {
+        return new DxRetryPolicy(
+                config.getMaxRetries(), config.getRetryInitialBackoffMillis(), config.getRetryMaxBackoffMillis());
+    }
+
+    /** Whether the response code, or {@link DxDataSender#CONNECTION_ERROR}, points at a transient failure. */
+    static boolean isRetryable(int code) {
+        return code == DxDataSender.CONNECTION_ERROR || code == 429 || code >= 500;
+    }
+
+    /**
+     * Whether DX answered and refused the request for good, with a 4xx response other than 429: sending the same
+     * payload again cannot succeed, as with a malformed payload or a revoked token.
+     */
+    static boolean isRejection(int code) {
+        return code >= 400 && code < 500 && !isRetryable(code);
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /** Whether to retry after the given zero-based attempt failed with {@code code}. */
+    boolean shouldRetry(int code, int attempt) {
+        return attempt < maxRetries && isRetryable(code);
+    }
+
+    /**
+     * Delay before retrying after the given zero-based attempt: the exponential backoff capped at the maximum, of which
+     * the upper half is randomized so that builds failing together do not retry together.
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = initialBackoffMillis << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+            ceiling = maxBackoffMillis;
+        }
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+}
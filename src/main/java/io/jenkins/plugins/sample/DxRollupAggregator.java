@@ -0,0 +1,407 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.PeriodicWork;
+import hudson.model.Run;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * Aggregates completed runs of selected jobs into one rollup per job and time window instead of sending every run.
+ * A rollup counts runs by status, keeps a {@link DxDurationSketch} of their durations and per-branch counts, and is
+ * posted to {@link DxDataSender#ROLLUP_SYNC_PATH} through the {@link DxDeliveryQueue} once its window has ended. Like
+ * run events, flushed rollups are journaled in the {@link DxSpool}; on shutdown the open window is closed early and
+ * its rollups are left in the spool, to be replayed when Jenkins starts again.
+ *
+ * <p>Windows are aligned to multiples of the configured length. Memory is bounded by {@link #MAX_JOBS} rollups per
+ * window and {@link #MAX_BRANCHES} branches per rollup, beyond which branches are counted together under
+ * {@link #OTHER_BRANCHES}; runs of jobs beyond the limit are sent individually, as if they were not selected.
+ */
+@Extension
+public class DxRollupAggregator {
+
+    private static final Logger LOGGER = Logger.getLogger(DxRollupAggregator.class.getName());
+
+    private static final String PIPELINE_SOURCE = "jenkins";
+
+    static final int MAX_JOBS = 1000;
+    static final int MAX_BRANCHES = 50;
+    static final String OTHER_BRANCHES = "(other)";
+
+    /** Termination milestone reached once every rollup has been spooled, so the spool must stay open until then. */
+    static final String ROLLUPS_FLUSHED = "DxRollupAggregator.rollupsFlushed";
+
+    private static final String[] STATUSES = {"success", "failure", "cancelled"};
+
+    private final int maxJobs;
+    private final int maxBranches;
+    private final AtomicReference<Window> current = new AtomicReference<>();
+    private final Queue<Window> closed = new ConcurrentLinkedQueue<>();
+
+    public DxRollupAggregator() {
+        this(MAX_JOBS, MAX_BRANCHES);
+    }
+
+    DxRollupAggregator(int maxJobs, int maxBranches) {
+        this.maxJobs = maxJobs;
+        this.maxBranches = maxBranches;
+    }
+
+    public static DxRollupAggregator get() {
+        return ExtensionList.lookupSingleton(DxRollupAggregator.class);
+    }
+
+    /**
+     * Counts a completed run in its job's rollup for the current window.
+     *
+     * @param status one of the statuses {@link DxRunListener#mapResult} returns
+     * @return {@code false} if the window already holds rollups for {@link #MAX_JOBS} other jobs
+     */
+    public boolean record(Run<?, ?> run, DxScmMetadata scm, String status, DxConfigSnapshot settings) {
+        return record(
+                run, scm, status, run.getDuration(), settings.getRollupWindowMillis(), System.currentTimeMillis());
+    }
+
+    boolean record(Run<?, ?> run, DxScmMetadata scm, String status, long durationMillis, long windowMillis, long now) {
+        String jobName = run.getParent().getFullName();
+        for (; ; ) {
+            JobRollup rollup = windowAt(now, windowMillis).rollup(jobName, maxJobs, maxBranches);
+            if (rollup == null) {
+                return false;
+            }
+            synchronized (rollup) {
+                if (!rollup.closed) {
+                    rollup.add(run, scm, status, durationMillis);
+                    return true;
+                }
+            }
+        }
+    }
+
+    private Window windowAt(long now, long windowMillis) {
+        long length = Math.max(1, windowMillis);
+        long start = now - Math.floorMod(now, length);
+        for (; ; ) {
+            Window window = current.get();
+            if (window != null && (window.start == start && window.end == start + length || window.start > start)) {
+                return window;
+            }
+            Window next = new Window(start, start + length);
+            if (current.compareAndSet(window, next)) {
+                if (window != null) {
+                    closed.add(window);
+                }
+                return next;
+            }
+        }
+    }
+
+    /** Closes the current window if it has ended and hands the rollups of every closed window to the delivery queue. */
+    void flush(DxGlobalConfiguration config, long now) {
+        flush(config, now, false);
+    }
+
+    void flush(DxGlobalConfiguration config, long now, boolean shutdown) {
+        Window open = current.get();
+        if (open != null && open.end <= now && current.compareAndSet(open, null)) {
+            closed.add(open);
+        }
+        Window window;
+        while ((window = closed.poll()) != null) {
+            for (JobRollup rollup : window.rollups.values()) {
+                DxEvent event;
+                synchronized (rollup) {
+                    rollup.closed = true;
+                    event = rollup.toEvent(window);
+                }
+                if (event != null && !deliver(event, config, shutdown)) {
+                    LOGGER.log(shutdown ? Level.INFO : Level.FINE, "DX: rollup for {0} dropped.", rollup.jobName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Journals a rollup like a run event and queues it for delivery. On shutdown it is only journaled, and left for
+     * the replay on the next start.
+     *
+     * @return {@code false} if the rollup was dropped
+     */
+    boolean deliver(DxEvent event, DxGlobalConfiguration config, boolean shutdown) {
+        if (config == null || !config.isConfigured()) {
+            return false;
+        }
+        DxSpool spool = config.isSpoolEnabled() ? getSpool() : null;
+        if (spool != null) {
+            spool.append(event);
+        }
+        if (!shutdown) {
+            return getDeliveryQueue().submit(event, config);
+        }
+        if (spool == null || !event.isSpooled()) {
+            return false;
+        }
+        spool.release(event);
+        return true;
+    }
+
+    DxSpool getSpool() {
+        return DxSpool.get();
+    }
+
+    DxDeliveryQueue getDeliveryQueue() {
+        return DxDeliveryQueue.get();
+    }
+
+    /** Number of jobs with a rollup in the current window. */
+    public int getOpenRollupCount() {
+        Window window = current.get();
+        return window != null ? window.rollups.size() : 0;
+    }
+
+    /**
+     * Job full names selected for aggregation, compiled once per configuration change. An entry selects the job with
+     * that full name and, if it names a folder, every job inside it.
+     */
+    public static final class JobSelector {
+
+        static final JobSelector EMPTY = new JobSelector(Collections.<String>emptySet());
+
+        private final Set<String> entries;
+
+        private JobSelector(Set<String> entries) {
+            this.entries = entries;
+        }
+
+        static JobSelector compile(@CheckForNull String raw) {
+            if (raw == null || raw.trim().isEmpty()) {
+                return EMPTY;
+            }
+            Set<String> entries = new HashSet<>();
+            for (String entry : raw.split("[\\n,]")) {
+                String name = entry.trim();
+                while (name.endsWith("/") || name.endsWith("/*")) {
+                    name = name.substring(0, name.lastIndexOf('/'));
+                }
+                if (!name.isEmpty()) {
+                    entries.add(name);
+                }
+            }
+            return entries.isEmpty() ? EMPTY : new JobSelector(entries);
+        }
+
+        /** Whether the job or one of its enclosing folders is selected, checked with one lookup per folder level. */
+        public boolean matches(@CheckForNull String jobFullName) {
+            if (entries.isEmpty() || jobFullName == null) {
+                return false;
+            }
+            if (entries.contains(jobFullName)) {
+                return true;
+            }
+            for (int slash = jobFullName.indexOf('/'); slash > 0; slash = jobFullName.indexOf('/', slash + 1)) {
+                if (entries.contains(jobFullName.substring(0, slash))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+    }
+
+    private static final class Window {
+        final long start;
+        final long end;
+        final ConcurrentHashMap<String, JobRollup> rollups = new ConcurrentHashMap<>();
+
+        Window(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @CheckForNull
+        JobRollup rollup(String jobName, int maxJobs, int maxBranches) {
+            JobRollup rollup = rollups.get(jobName);
+            if (rollup != null) {
+                return rollup;
+            }
+            if (rollups.size() >= maxJobs) {
+                return null;
+            }
+            return rollups.computeIfAbsent(jobName, name -> new JobRollup(name, maxBranches));
+        }
+    }
+
+    /** Per-status counts and duration totals of a set of runs. */
+    private static class Stats {
+        final long[] statusCounts = new long[STATUSES.length];
+        long runs;
+        long totalDurationMillis;
+        long maxDurationMillis;
+
+        void add(String status, long durationMillis) {
+            statusCounts[statusIndex(status)]++;
+            runs++;
+            totalDurationMillis += durationMillis;
+            maxDurationMillis = Math.max(maxDurationMillis, durationMillis);
+        }
+
+        String statusCountsJson() {
+            DxJsonWriter json = DxJsonWriter.object();
+            for (int i = 0; i < STATUSES.length; i++) {
+                json.field(STATUSES[i], statusCounts[i]);
+            }
+            return json.toJson();
+        }
+
+        private static int statusIndex(String status) {
+            for (int i = 0; i < STATUSES.length; i++) {
+                if (STATUSES[i].equals(status)) {
+                    return i;
+                }
+            }
+            return 1;
+        }
+    }
+
+    /** One job's runs in one window. Guarded by its own monitor. */
+    private static final class JobRollup extends Stats {
+        final String jobName;
+        final int maxBranches;
+        final DxDurationSketch durations = new DxDurationSketch();
+        final Map<String, Stats> branches = new LinkedHashMap<>();
+        Stats otherBranches;
+        Run<?, ?> lastRun;
+        String repository = "";
+        String sourceUrl = "";
+        boolean closed;
+
+        JobRollup(String jobName, int maxBranches) {
+            this.jobName = jobName;
+            this.maxBranches = maxBranches;
+        }
+
+        void add(Run<?, ?> run, DxScmMetadata scm, String status, long durationMillis) {
+            long duration = Math.max(0, durationMillis);
+            add(status, duration);
+            durations.record(duration);
+            branchStats(scm.getBranch()).add(status, duration);
+            lastRun = run;
+            if (!scm.getRepositoryUrl().isEmpty()) {
+                repository = scm.getRepositoryName();
+                sourceUrl = scm.getRepositoryUrl();
+            }
+        }
+
+        private Stats branchStats(String branch) {
+            Stats stats = branches.get(branch);
+            if (stats != null) {
+                return stats;
+            }
+            if (branches.size() < maxBranches) {
+                stats = new Stats();
+                branches.put(branch, stats);
+                return stats;
+            }
+            if (otherBranches == null) {
+                otherBranches = new Stats();
+            }
+            return otherBranches;
+        }
+
+        /** Serializes the rollup; the run it carries supplies the credentials context for delivery. */
+        @CheckForNull
+        DxEvent toEvent(Window window) {
+            if (runs == 0 || lastRun == null) {
+                return null;
+            }
+            StringBuilder branchesJson = new StringBuilder("[");
+            for (Map.Entry<String, Stats> branch : branches.entrySet()) {
+                appendBranch(branchesJson, branch.getKey(), branch.getValue());
+            }
+            if (otherBranches != null) {
+                appendBranch(branchesJson, OTHER_BRANCHES, otherBranches);
+            }
+            branchesJson.append(']');
+            String statusCountsJson = statusCountsJson();
+            String sketchJson = durations.toJson();
+            String durationJson = DxJsonWriter.object()
+                    .field("p50", durations.quantile(0.5))
+                    .field("p90", durations.quantile(0.9))
+                    .field("p95", durations.quantile(0.95))
+                    .field("p99", durations.quantile(0.99))
+                    .field("max", maxDurationMillis)
+                    .field("total", totalDurationMillis)
+                    .toJson();
+
+            String payload = DxJsonWriter.object()
+                    .field("pipeline_name", jobName)
+                    .field("pipeline_source", PIPELINE_SOURCE)
+                    .field("source_id", jobName)
+                    .field("window_start", TimeUnit.MILLISECONDS.toSeconds(window.start))
+                    .field("window_end", TimeUnit.MILLISECONDS.toSeconds(window.end))
+                    .field("repository", repository)
+                    .field("source_url", sourceUrl)
+                    .field("run_count", runs)
+                    .rawField("status_counts", statusCountsJson)
+                    .rawField("duration_ms", durationJson)
+                    .rawField("duration_sketch", sketchJson)
+                    .rawField("branches", branchesJson.toString())
+                    .toJson();
+            return new DxEvent(payload, lastRun, DxDataSender.ROLLUP_SYNC_PATH);
+        }
+
+        private static void appendBranch(StringBuilder json, String branch, Stats stats) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            String statusCounts = stats.statusCountsJson();
+            json.append(DxJsonWriter.object()
+                    .field("head_branch", branch)
+                    .field("run_count", stats.runs)
+                    .rawField("status_counts", statusCounts)
+                    .field("total_duration_ms", stats.totalDurationMillis)
+                    .field("max_duration_ms", stats.maxDurationMillis)
+                    .toJson());
+        }
+    }
+
+    /** Spools the rollups of every window, including the open one, since their runs were never sent on their own. */
+    @Terminator(attains = ROLLUPS_FLUSHED)
+    public static void shutdown() {
+        DxRollupAggregator instance = ExtensionList.lookup(DxRollupAggregator.class).get(DxRollupAggregator.class);
+        if (instance != null) {
+            instance.flush(DxGlobalConfiguration.get(), Long.MAX_VALUE, true);
+        }
+    }
+
+    /** Flushes rollups whose window has ended, checking once a minute. */
+    @Extension
+    public static final class FlushWork extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            DxRollupAggregator.get().flush(DxGlobalConfiguration.get(), System.currentTimeMillis());
+        }
+    }
+}
@@ -1,76 +1,163 @@
 package io.jenkins.plugins.sample;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import hudson.EnvVars;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.OneOffExecutor;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.User;
 import hudson.model.listeners.RunListener;
-import hudson.scm.ChangeLogSet;
-import hudson.tasks.MailAddressResolver;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
-import jenkins.scm.api.SCMHead;
-import jenkins.scm.api.SCMRevisionAction;
 import jenkins.scm.api.metadata.ContributorMetadataAction;
-import jenkins.scm.api.mixin.ChangeRequestSCMHead;
-import org.json.JSONObject;
 
 /** Listener that publishes pipeline run metadata to the DX API. */
 @Extension
 @SuppressFBWarnings("NP_NULL_ON_SOME_PATH")
 public class DxRunListener extends RunListener<Run<?, ?>> {
 
+    private static final Logger LOGGER = Logger.getLogger(DxRunListener.class.getName());
+
     private static final String PIPELINE_SOURCE = "jenkins";
+    private static final String BUILT_IN_NODE = "built-in";
 
     @Override
     public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
-        Result result = run.getResult();
+        long started = System.nanoTime();
+        try {
+            publish(run, listener);
+        } finally {
+            getQueueTimings().remove(run);
+            DxMetrics metrics = getMetrics();
+            metrics.record(run, DxMetrics.Stage.ON_COMPLETED, System.nanoTime() - started);
+            DxGlobalConfiguration config = getConfiguration();
+            if (config != null && config.isLogTimings()) {
+                Map<DxMetrics.Stage, Long> timings = metrics.getRunTimings(run.getExternalizableId());
+                if (timings != null) {
+                    listener.getLogger().println("DX: timings " + DxMetrics.formatTimings(timings));
+                }
+            }
+        }
+    }
 
+    private void publish(Run<?, ?> run, TaskListener listener) {
         DxGlobalConfiguration config = getConfiguration();
         if (config == null || !config.isConfigured()) {
             listener.getLogger().println("DX: plugin not configured. Skipping.");
             return;
         }
 
-        String repoUrl = resolveRepositoryUrl(run, listener);
-        String commitSha = "";
-        String branchName = "";
-        String targetBranch = "";
-
-        SCMRevisionAction scmRevisionAction = run.getAction(SCMRevisionAction.class);
-        String prNumber = "";
-        if (scmRevisionAction != null && scmRevisionAction.getRevision() != null) {
-            SCMHead head = scmRevisionAction.getRevision().getHead();
-            if (head instanceof ChangeRequestSCMHead) {
-                ChangeRequestSCMHead changeRequestHead = (ChangeRequestSCMHead) head;
-                branchName = changeRequestHead.getName();
-                targetBranch = changeRequestHead.getTarget().getName();
-                prNumber = changeRequestHead.getId();
-            } else if (branchName == null || branchName.isEmpty()) {
-                branchName = head.getName();
+        if (config.isDeduplicateRuns() && getDeduplicator().isDelivered(run)) {
+            listener.getLogger().println("DX: run already delivered. Skipping.");
+            return;
+        }
+
+        DxScmMetadata scm = resolveScm(run, listener);
+        if (rollUp(run, scm, listener, config)) {
+            return;
+        }
+
+        String payload = buildPayload(run, listener, config, scm);
+        if (payload == null) {
+            return;
+        }
+
+        if (config.isDebugPayloads() && LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.log(Level.INFO, "DX Payload: {0}", payload);
+        }
+
+        DxEvent event = new DxEvent(payload, run);
+        DxSpool spool = config.isSpoolEnabled() ? getSpool() : null;
+        if (spool != null) {
+            spool.append(event);
+        }
+
+        if (config.isAsyncDelivery()) {
+            if (getDeliveryQueue().submit(event, config)) {
+                listener.getLogger().println("DX: payload queued for delivery.");
+            } else {
+                listener.getLogger().println("DX: delivery queue full. Payload dropped.");
             }
+            return;
+        }
 
-            if (commitSha == null || commitSha.isEmpty()) {
-                commitSha = scmRevisionAction.getRevision().toString();
+        // a single attempt, so that an outage never holds up the build; retries happen on the dispatcher threads
+        DxDataSender dxSender = createDxDataSender(config, listener);
+        dxSender.setSingleAttempt(true);
+        boolean delivered = dxSender.send(event);
+        if (delivered) {
+            if (spool != null) {
+                spool.acknowledge(event);
             }
+        } else if (dxSender.isRejected()) {
+            if (spool != null) {
+                spool.discard(event, dxSender.getLastResponseCode());
+            }
+        } else if (dxSender.isDeferrable() && getDeliveryQueue().offer(event, config)) {
+            listener.getLogger().println("DX: delivery failed. Payload queued for retry.");
+        } else if (spool != null) {
+            spool.release(event);
         }
+    }
 
-        if (branchName != null && !branchName.isEmpty()) {
-            branchName = branchName
-                    .replaceFirst("^refs/heads/", "")
-                    .replaceFirst("^refs/remotes/origin/", "")
-                    .replaceFirst("^origin/", "");
+    /**
+     * Counts the run in its job's rollup instead of sending it, if the job is selected for aggregation.
+     *
+     * @return whether the run needs no event of its own
+     */
+    private boolean rollUp(Run<?, ?> run, DxScmMetadata scm, TaskListener listener, DxGlobalConfiguration config) {
+        DxConfigSnapshot settings = DxConfigSnapshot.of(config);
+        if (!settings.getRollupJobs().matches(run.getParent().getFullName())) {
+            return false;
         }
-        if (targetBranch != null && !targetBranch.isEmpty()) {
-            targetBranch = targetBranch
-                    .replaceFirst("^refs/heads/", "")
-                    .replaceFirst("^refs/remotes/origin/", "")
-                    .replaceFirst("^origin/", "");
+        if (!isShared(scm, config, listener)) {
+            return true;
         }
+        if (getRollupAggregator().record(run, scm, mapResult(run.getResult()), settings)) {
+            listener.getLogger().println("DX: run added to the rollup for the current window.");
+            return true;
+        }
+        listener.getLogger().println("DX: rollup limit reached. Sending the run individually.");
+        return false;
+    }
+
+    private DxScmMetadata resolveScm(Run<?, ?> run, TaskListener listener) {
+        long started = System.nanoTime();
+        DxScmMetadata scm = getScmMetadataResolver().resolve(run, listener);
+        getMetrics().record(run, DxMetrics.Stage.SCM_RESOLUTION, System.nanoTime() - started);
+        return scm;
+    }
+
+    /**
+     * Builds the pipeline run payload DX receives for a completed run.
+     *
+     * @return the payload, or {@code null} if the run's repository is excluded by the repository filter
+     */
+    @CheckForNull
+    String buildPayload(Run<?, ?> run, TaskListener listener, DxGlobalConfiguration config) {
+        return buildPayload(run, listener, config, resolveScm(run, listener));
+    }
 
+    @CheckForNull
+    private String buildPayload(Run<?, ?> run, TaskListener listener, DxGlobalConfiguration config, DxScmMetadata scm) {
+        long started = System.nanoTime();
+        Result result = run.getResult();
+
+        DxMetrics metrics = getMetrics();
+        String repoUrl = scm.getRepositoryUrl();
+        String branchName = scm.getBranch();
+        String targetBranch = scm.getTargetBranch();
+        String prNumber = scm.getChangeRequestId();
+        String commitSha = scm.getCommit();
+
+        long emailStarted = System.nanoTime();
         String userEmail = "";
         ContributorMetadataAction contributor = run.getAction(ContributorMetadataAction.class);
         if (contributor != null && contributor.getContributorEmail() != null) {
@@ -78,23 +165,7 @@ public class DxRunListener extends RunListener<Run<?, ?>> {
         }
 
         if (userEmail.isEmpty() && run instanceof AbstractBuild) {
-            @SuppressWarnings("unchecked")
-            AbstractBuild<?, ?> build = (AbstractBuild<?, ?>) run;
-            for (ChangeLogSet<? extends ChangeLogSet.Entry> cs : build.getChangeSets()) {
-                for (ChangeLogSet.Entry entry : cs) {
-                    User author = entry.getAuthor();
-                    if (author != null) {
-                        String email = MailAddressResolver.resolve(author);
-                        if (email != null && !email.isEmpty()) {
-                            userEmail = email;
-                            break;
-                        }
-                    }
-                }
-                if (!userEmail.isEmpty()) {
-                    break;
-                }
-            }
+            userEmail = resolveCommitterEmail((AbstractBuild<?, ?>) run, config);
         }
 
         if (userEmail.isEmpty()) {
@@ -104,7 +175,7 @@ public class DxRunListener extends RunListener<Run<?, ?>> {
                 if (userId != null) {
                     User buildUser = User.getById(userId, false);
                     if (buildUser != null) {
-                        String fallbackEmail = MailAddressResolver.resolve(buildUser);
+                        String fallbackEmail = resolveEmail(buildUser, config);
                         if (fallbackEmail != null && !fallbackEmail.isEmpty()) {
                             userEmail = fallbackEmail;
                             listener.getLogger().println("DX: fallback email found from build user.");
@@ -113,6 +184,7 @@ public class DxRunListener extends RunListener<Run<?, ?>> {
                 }
             }
         }
+        metrics.record(run, DxMetrics.Stage.EMAIL_RESOLUTION, System.nanoTime() - emailStarted);
 
         String jobName = run.getParent().getFullName();
 
@@ -123,12 +195,9 @@ public class DxRunListener extends RunListener<Run<?, ?>> {
             status = "failure";
         }
 
-        String repositoryName = extractRepositoryName(repoUrl);
-
-        if (isRepositoryDenied(repositoryName, config.getRepositoryDenylist())) {
-            listener.getLogger()
-                    .println("DX: repository '" + repositoryName + "' is denylisted. Skipping DX submission.");
-            return;
+        String repositoryName = scm.getRepositoryName();
+        if (!isShared(scm, config, listener)) {
+            return null;
         }
 
         String pipelineName = jobName;
@@ -139,31 +208,80 @@ public class DxRunListener extends RunListener<Run<?, ?>> {
         String sourceId = jobName;
         String pipelineSource = PIPELINE_SOURCE;
 
-        JSONObject payload = new JSONObject();
-        payload.put("pipeline_name", pipelineName);
-        payload.put("pipeline_source", pipelineSource);
-        payload.put("reference_id", referenceId);
-        payload.put("source_id", sourceId);
-        payload.put("started_at", start);
-        payload.put("finished_at", finish);
-        payload.put("status", status);
-        payload.put("repository", repositoryName);
-        payload.put("source_url", repoUrl);
-        payload.put("head_branch", branchName);
-        if (targetBranch != null && !targetBranch.isEmpty()) {
-            payload.put("base_branch", targetBranch);
-        }
-        payload.put("commit_sha", commitSha != null ? commitSha : "");
-        if (prNumber != null && !prNumber.isEmpty()) {
-            payload.put("pr_number", prNumber);
-        }
-        payload.put("email", userEmail);
-
-        System.out.println("DX Payload:");
-        System.out.println(payload.toString(2));
+        DxJsonWriter json = DxJsonWriter.object()
+                .field("pipeline_name", pipelineName)
+                .field("pipeline_source", pipelineSource)
+                .field("reference_id", referenceId)
+                .field("source_id", sourceId)
+                .field("started_at", start)
+                .field("finished_at", finish)
+                .field("status", status)
+                .field("repository", repositoryName)
+                .field("source_url", repoUrl)
+                .field("head_branch", branchName)
+                .fieldIfNotEmpty("base_branch", targetBranch)
+                .field("commit_sha", commitSha)
+                .fieldIfNotEmpty("pr_number", prNumber)
+                .field("email", userEmail);
+        writeQueueTimings(json, run);
+        String payload = json.toJson();
+        metrics.record(run, DxMetrics.Stage.PAYLOAD_BUILD, System.nanoTime() - started);
+        return payload;
+    }
+
+    /**
+     * Adds when the run was queued, how long it spent in the queue and waiting for an executor, and where it ran. The
+     * queue fields are omitted for runs whose queue item was not observed, such as runs started before a restart. The
+     * agent is omitted for runs on a flyweight executor, such as a Pipeline outside its {@code node} blocks, which
+     * occupies no agent even though it is owned by the built-in node.
+     */
+    private void writeQueueTimings(DxJsonWriter json, Run<?, ?> run) {
+        DxQueueTimings.Timing timing = getQueueTimings().get(run);
+        if (timing != null && timing.getLeftAt() > 0) {
+            long queuedAt = timing.getQueuedAt();
+            long leftAt = timing.getLeftAt();
+            long buildableAt = timing.getBuildableAt() > 0 ? timing.getBuildableAt() : leftAt;
+            json.field("queued_at", queuedAt / 1000)
+                    .field("queue_duration_ms", Math.max(0, leftAt - queuedAt))
+                    .field("executor_wait_ms", Math.max(0, leftAt - buildableAt))
+                    .fieldIfNotEmpty("agent_label", timing.getLabel());
+        }
+        Executor executor = run.getExecutor();
+        Computer computer = executor != null && !(executor instanceof OneOffExecutor) ? executor.getOwner() : null;
+        if (computer != null) {
+            String name = computer.getName();
+            json.field("agent", name == null || name.isEmpty() ? BUILT_IN_NODE : name);
+        }
+    }
 
-        DxDataSender dxSender = createDxDataSender(config, listener);
-        dxSender.send(payload.toString(), run);
+    /** Whether the run's repository passes the repository denylist and allowlist. */
+    static boolean isShared(DxScmMetadata scm, DxGlobalConfiguration config, TaskListener listener) {
+        DxRepositoryFilter repositoryFilter = config.getRepositoryFilter();
+        if (repositoryFilter == null) {
+            return true;
+        }
+        String repositoryPath = scm.getRepositoryPath();
+        if (repositoryFilter.isDenylisted(repositoryPath)) {
+            listener.getLogger()
+                    .println("DX: repository '" + scm.getRepositoryName() + "' is denylisted. Skipping DX submission.");
+            return false;
+        }
+        if (!repositoryFilter.isAllowlisted(repositoryPath)) {
+            listener.getLogger()
+                    .println("DX: repository '" + scm.getRepositoryName()
+                            + "' is not in the allowlist. Skipping DX submission.");
+            return false;
+        }
+        return true;
+    }
+
+    private String resolveCommitterEmail(AbstractBuild<?, ?> build, DxGlobalConfiguration config) {
+        return DxEmailResolver.firstAuthorEmail(
+                build.getChangeSets(), config.getMaxChangelogEntries(), user -> resolveEmail(user, config));
+    }
+
+    private String resolveEmail(User user, DxGlobalConfiguration config) {
+        return getEmailResolver().resolve(user, config.getEmailCacheTtlSeconds(), config.getEmailCacheSize());
     }
 
     static String mapResult(Result result) {
@@ -193,7 +311,49 @@ public class DxRunListener extends RunListener<Run<?, ?>> {
         return new DxDataSender(config, listener);
     }
 
-    private static String extractRepositoryName(String repoUrl) {
+    DxDeliveryQueue getDeliveryQueue() {
+        return DxDeliveryQueue.get();
+    }
+
+    DxEmailResolver getEmailResolver() {
+        return DxEmailResolver.get();
+    }
+
+    DxSpool getSpool() {
+        return DxSpool.get();
+    }
+
+    DxMetrics getMetrics() {
+        return DxMetrics.get();
+    }
+
+    DxScmMetadataResolver getScmMetadataResolver() {
+        return DxScmMetadataResolver.get();
+    }
+
+    DxDeduplicator getDeduplicator() {
+        return DxDeduplicator.get();
+    }
+
+    DxRollupAggregator getRollupAggregator() {
+        return DxRollupAggregator.get();
+    }
+
+    DxQueueTimings getQueueTimings() {
+        return DxQueueTimings.get();
+    }
+
+    /** Strips the {@code refs/heads/}, {@code refs/remotes/origin/} and {@code origin/} prefixes from a branch name. */
+    static String normalizeBranch(String branch) {
+        if (branch == null || branch.isEmpty()) {
+            return branch;
+        }
+        return branch.replaceFirst("^refs/heads/", "")
+                .replaceFirst("^refs/remotes/origin/", "")
+                .replaceFirst("^origin/", "");
+    }
+
+    static String extractRepositoryName(String repoUrl) {
         if (repoUrl == null || repoUrl.isEmpty()) {
             return "";
         }
@@ -202,45 +362,24 @@ public class DxRunListener extends RunListener<Run<?, ?>> {
         return parts[parts.length - 1];
     }
 
-    static boolean isRepositoryDenied(String repositoryName, String denylistRaw) {
-        if (repositoryName == null || repositoryName.trim().isEmpty()) {
-            return false;
-        }
-        if (denylistRaw == null || denylistRaw.trim().isEmpty()) {
-            return false;
-        }
-
-        String normalizedRepository = repositoryName.trim().toLowerCase();
-        String[] entries = denylistRaw.split("[\\n,]");
-        for (String entry : entries) {
-            String denylisted = entry.trim().toLowerCase();
-            if (!denylisted.isEmpty() && normalizedRepository.equals(denylisted)) {
-                return true;
-            }
+    /** Returns {@code owner/name} for a repository URL, or just the name if the URL has no owner segment. */
+    static String extractRepositoryPath(String repoUrl) {
+        if (repoUrl == null || repoUrl.isEmpty()) {
+            return "";
         }
-        return false;
-    }
-
-    private static String resolveRepositoryUrl(Run<?, ?> run, TaskListener listener) {
-        String repoUrl = "";
-        try {
-            EnvVars env = run.getEnvironment(listener);
-            repoUrl = firstNonEmpty(env.get("GIT_URL"), env.get("GIT_URL_1"), env.get("GIT_URL_2"));
-        } catch (Exception e) {
-            listener.getLogger().println("DX: Unable to determine repository URL: " + e.getMessage());
+        String cleaned = repoUrl.replaceAll("\\.git$", "");
+        String[] parts = cleaned.split("[/:]");
+        String name = parts[parts.length - 1];
+        if (parts.length < 2 || parts[parts.length - 2].isEmpty()) {
+            return name;
         }
-        return repoUrl != null ? repoUrl : "";
+        return parts[parts.length - 2] + "/" + name;
     }
 
-    private static String firstNonEmpty(String... values) {
-        if (values == null) {
-            return "";
-        }
-        for (String value : values) {
-            if (value != null && !value.trim().isEmpty()) {
-                return value;
-            }
+    static boolean isRepositoryDenied(String repositoryName, String denylistRaw) {
+        if (repositoryName == null || repositoryName.trim().isEmpty()) {
+            return false;
         }
-        return "";
+        return DxRepositoryFilter.compile(denylistRaw, null).isDenylisted(repositoryName.trim());
     }
 }
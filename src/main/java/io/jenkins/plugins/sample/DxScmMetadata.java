@@ -0,0 +1,76 @@
+package io.jenkins.plugins.sample;
+
+/**
+ * Repository, branch and commit of a run. Missing values are empty strings, never {@code null}.
+ *
+ * @see DxScmMetadataResolver
+ */
+public final class DxScmMetadata {
+
+    private final String repositoryUrl;
+    private final String repositoryName;
+    private final String repositoryPath;
+    private final String branch;
+    private final String targetBranch;
+    private final String changeRequestId;
+    private final String commit;
+
+    public DxScmMetadata(
+            String repositoryUrl, String branch, String targetBranch, String changeRequestId, String commit) {
+        this(repositoryUrl, null, null, branch, targetBranch, changeRequestId, commit);
+    }
+
+    DxScmMetadata(
+            String repositoryUrl,
+            String repositoryName,
+            String repositoryPath,
+            String branch,
+            String targetBranch,
+            String changeRequestId,
+            String commit) {
+        this.repositoryUrl = nullToEmpty(repositoryUrl);
+        this.repositoryName =
+                repositoryName != null ? repositoryName : DxRunListener.extractRepositoryName(this.repositoryUrl);
+        this.repositoryPath =
+                repositoryPath != null ? repositoryPath : DxRunListener.extractRepositoryPath(this.repositoryUrl);
+        this.branch = nullToEmpty(branch);
+        this.targetBranch = nullToEmpty(targetBranch);
+        this.changeRequestId = nullToEmpty(changeRequestId);
+        this.commit = nullToEmpty(commit);
+    }
+
+    public String getRepositoryUrl() {
+        return repositoryUrl;
+    }
+
+    /** The last segment of the repository URL without {@code .git}. */
+    public String getRepositoryName() {
+        return repositoryName;
+    }
+
+    /** {@code owner/name} of the repository, as matched by the repository filter. */
+    public String getRepositoryPath() {
+        return repositoryPath;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    /** The branch a change request targets, or an empty string for a plain branch build. */
+    public String getTargetBranch() {
+        return targetBranch;
+    }
+
+    public String getChangeRequestId() {
+        return changeRequestId;
+    }
+
+    public String getCommit() {
+        return commit;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
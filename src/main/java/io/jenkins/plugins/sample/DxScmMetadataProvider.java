@@ -0,0 +1,25 @@
+package io.jenkins.plugins.sample;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.Run;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Reads SCM metadata of a run from data an SCM plugin has already attached to the run or its job. Providers are
+ * consulted in ordinal order and only fill values that are still missing.
+ *
+ * <p>Implementations are called from {@code onCompleted} and from the CPS VM thread, so they must not block, contact
+ * an agent or compute the run's environment.
+ */
+public abstract class DxScmMetadataProvider implements ExtensionPoint {
+
+    /** Returns what this provider knows about {@code run}, or {@code null} if it knows nothing. */
+    @CheckForNull
+    public abstract DxScmMetadata resolve(@Nonnull Run<?, ?> run);
+
+    public static ExtensionList<DxScmMetadataProvider> all() {
+        return ExtensionList.lookup(DxScmMetadataProvider.class);
+    }
+}
@@ -0,0 +1,243 @@
+package io.jenkins.plugins.sample;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMRevisionAction;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+
+/**
+ * Resolves the repository, branch and commit of a run from actions SCM plugins have already attached, instead of
+ * computing the run's environment, which runs every {@code EnvironmentContributor} and may contact the agent.
+ *
+ * <p>Values are read from the {@link SCMRevisionAction} first, then from the {@link DxScmMetadataProvider}s. The
+ * repository URL of each job is cached together with its derived name and path, and is used when a run carries no
+ * repository of its own. {@code GIT_URL}, {@code GIT_URL_1} and {@code GIT_URL_2} are read from the environment only
+ * when neither knows the repository. Cache entries are dropped when a job or folder is saved, moved or deleted.
+ */
+@Extension
+public class DxScmMetadataResolver {
+
+    private static final Logger LOGGER = Logger.getLogger(DxScmMetadataResolver.class.getName());
+
+    static final int MAX_CACHED_JOBS = 2000;
+
+    @CheckForNull
+    private final List<? extends DxScmMetadataProvider> providers;
+
+    private final LinkedHashMap<String, Repository> repositories =
+            new LinkedHashMap<String, Repository>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Repository> eldest) {
+                    return size() > MAX_CACHED_JOBS;
+                }
+            };
+
+    public DxScmMetadataResolver() {
+        this(null);
+    }
+
+    DxScmMetadataResolver(@CheckForNull List<? extends DxScmMetadataProvider> providers) {
+        this.providers = providers;
+    }
+
+    public static DxScmMetadataResolver get() {
+        return ExtensionList.lookupSingleton(DxScmMetadataResolver.class);
+    }
+
+    public DxScmMetadata resolve(Run<?, ?> run, TaskListener listener) {
+        return resolve(run, listener, true);
+    }
+
+    /**
+     * Resolves what the run's actions and the job's cached repository tell, without ever falling back to the
+     * environment, for callers on the CPS VM thread. The repository is empty if neither knows it yet, for example
+     * before the first checkout of a job's first build.
+     */
+    public DxScmMetadata resolveWithoutEnvironment(Run<?, ?> run) {
+        return resolve(run, TaskListener.NULL, false);
+    }
+
+    private DxScmMetadata resolve(Run<?, ?> run, TaskListener listener, boolean useEnvironment) {
+        String repoUrl = "";
+        String branchName = "";
+        String targetBranch = "";
+        String prNumber = "";
+        String commitSha = "";
+
+        SCMRevisionAction scmRevisionAction = run.getAction(SCMRevisionAction.class);
+        if (scmRevisionAction != null && scmRevisionAction.getRevision() != null) {
+            SCMHead head = scmRevisionAction.getRevision().getHead();
+            if (head instanceof ChangeRequestSCMHead) {
+                ChangeRequestSCMHead changeRequestHead = (ChangeRequestSCMHead) head;
+                branchName = changeRequestHead.getName();
+                targetBranch = changeRequestHead.getTarget().getName();
+                prNumber = changeRequestHead.getId();
+            } else {
+                branchName = head.getName();
+            }
+            commitSha = scmRevisionAction.getRevision().toString();
+        }
+
+        for (DxScmMetadataProvider provider : getProviders()) {
+            if (!isEmpty(repoUrl) && !isEmpty(branchName) && !isEmpty(commitSha)) {
+                break;
+            }
+            DxScmMetadata metadata;
+            try {
+                metadata = provider.resolve(run);
+            } catch (RuntimeException | LinkageError e) {
+                LOGGER.log(Level.FINE, "DX: " + provider.getClass().getName() + " failed", e);
+                continue;
+            }
+            if (metadata == null) {
+                continue;
+            }
+            if (isEmpty(repoUrl)) {
+                repoUrl = metadata.getRepositoryUrl();
+            }
+            if (isEmpty(branchName)) {
+                branchName = metadata.getBranch();
+                targetBranch = metadata.getTargetBranch();
+                prNumber = metadata.getChangeRequestId();
+            }
+            if (isEmpty(commitSha)) {
+                commitSha = metadata.getCommit();
+            }
+        }
+
+        Repository repository = repository(run, repoUrl, listener, useEnvironment);
+        return new DxScmMetadata(
+                repository.url,
+                repository.name,
+                repository.path,
+                DxRunListener.normalizeBranch(branchName),
+                DxRunListener.normalizeBranch(targetBranch),
+                prNumber,
+                commitSha);
+    }
+
+    /** Returns the cached repository of the run's job, updated to {@code repoUrl} if the run has a different one. */
+    private Repository repository(Run<?, ?> run, String repoUrl, TaskListener listener, boolean useEnvironment) {
+        String jobName = run.getParent().getFullName();
+        Repository cached;
+        synchronized (repositories) {
+            cached = repositories.get(jobName);
+        }
+        if (cached != null && (isEmpty(repoUrl) || cached.url.equals(repoUrl))) {
+            return cached;
+        }
+        if (isEmpty(repoUrl)) {
+            repoUrl = useEnvironment ? resolveFromEnvironment(run, listener) : "";
+            if (repoUrl.isEmpty()) {
+                // not cached: a later build may check out the repository this one failed before reaching
+                return Repository.NONE;
+            }
+        }
+        Repository repository = new Repository(repoUrl);
+        synchronized (repositories) {
+            repositories.put(jobName, repository);
+        }
+        return repository;
+    }
+
+    static String resolveFromEnvironment(Run<?, ?> run, TaskListener listener) {
+        String repoUrl = "";
+        try {
+            EnvVars env = run.getEnvironment(listener);
+            repoUrl = firstNonEmpty(env.get("GIT_URL"), env.get("GIT_URL_1"), env.get("GIT_URL_2"));
+        } catch (Exception e) {
+            listener.getLogger().println("DX: Unable to determine repository URL: " + e.getMessage());
+        }
+        return repoUrl != null ? repoUrl : "";
+    }
+
+    List<? extends DxScmMetadataProvider> getProviders() {
+        return providers != null ? providers : DxScmMetadataProvider.all();
+    }
+
+    /** Drops the cached repositories of the given folder or job and everything below it. */
+    public void invalidate(String fullName) {
+        String prefix = fullName + "/";
+        synchronized (repositories) {
+            repositories.keySet().removeIf(job -> job.equals(fullName) || job.startsWith(prefix));
+        }
+    }
+
+    int size() {
+        synchronized (repositories) {
+            return repositories.size();
+        }
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static String firstNonEmpty(String... values) {
+        if (values == null) {
+            return "";
+        }
+        for (String value : values) {
+            if (value != null && !value.trim().isEmpty()) {
+                return value;
+            }
+        }
+        return "";
+    }
+
+    private static final class Repository {
+        static final Repository NONE = new Repository("");
+
+        final String url;
+        final String name;
+        final String path;
+
+        Repository(String url) {
+            this.url = url;
+            this.name = DxRunListener.extractRepositoryName(url);
+            this.path = DxRunListener.extractRepositoryPath(url);
+        }
+    }
+
+    /** Drops cached repositories when a job's SCM configuration may have changed. */
+    @Extension
+    public static class InvalidationListener extends ItemListener {
+
+        @Override
+        public void onUpdated(Item item) {
+            invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            invalidate(oldFullName);
+        }
+
+        private static void invalidate(String fullName) {
+            DxScmMetadataResolver resolver =
+                    ExtensionList.lookup(DxScmMetadataResolver.class).get(DxScmMetadataResolver.class);
+            if (resolver != null) {
+                resolver.invalidate(fullName);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.model.Actionable;
+import hudson.model.ItemGroup;
+import hudson.model.Run;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.metadata.ObjectMetadataAction;
+
+/**
+ * Reads the repository URL that a branch source stored on the multibranch project of a run. Ordered after the SCM
+ * specific providers, which know the clone URL rather than the web URL.
+ */
+@Extension(ordinal = -100)
+public class DxScmSourceMetadataProvider extends DxScmMetadataProvider {
+
+    @Override
+    public DxScmMetadata resolve(Run<?, ?> run) {
+        ItemGroup<?> owner = run.getParent().getParent();
+        if (!(owner instanceof SCMSourceOwner) || !(owner instanceof Actionable)) {
+            return null;
+        }
+        ObjectMetadataAction metadata = ((Actionable) owner).getAction(ObjectMetadataAction.class);
+        if (metadata == null || metadata.getObjectUrl() == null) {
+            return null;
+        }
+        return new DxScmMetadata(metadata.getObjectUrl(), "", "", "", "");
+    }
+}
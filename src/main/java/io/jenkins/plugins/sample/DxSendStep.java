@@ -0,0 +1,275 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import org.jenkinsci.plugins.workflow.steps.GeneralNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * {@code dxSend} Pipeline step that reports a custom event, such as a deployment, for the current build:
+ *
+ * <pre>
+ * dxSend type: 'deployment', environment: 'production', properties: '{"service":"api"}'
+ * </pre>
+ *
+ * <p>The event is serialized with the build's pipeline and repository fields and handed to the {@link DxDeliveryQueue},
+ * so the step returns without waiting for DX. With {@code wait: true} the event is sent on a background thread and the
+ * step completes once DX has answered; the CPS VM thread is free in the meantime. The step returns whether the event
+ * was queued or, when waiting, delivered.
+ */
+public class DxSendStep extends Step {
+
+    private static final String PIPELINE_SOURCE = "jenkins";
+
+    private final String type;
+    private String name;
+    private String status;
+    private String environment;
+    private String properties;
+    private boolean wait;
+
+    @DataBoundConstructor
+    public DxSendStep(String type) {
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    @CheckForNull
+    public String getName() {
+        return name;
+    }
+
+    /** Outcome of the event, {@code success} unless given. */
+    @CheckForNull
+    public String getStatus() {
+        return status;
+    }
+
+    @CheckForNull
+    public String getEnvironment() {
+        return environment;
+    }
+
+    /** Additional fields as a JSON object, sent as {@code properties}. */
+    @CheckForNull
+    public String getProperties() {
+        return properties;
+    }
+
+    public boolean isWait() {
+        return wait;
+    }
+
+    @DataBoundSetter
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @DataBoundSetter
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    @DataBoundSetter
+    public void setEnvironment(String environment) {
+        this.environment = environment;
+    }
+
+    @DataBoundSetter
+    public void setProperties(String properties) {
+        this.properties = properties;
+    }
+
+    @DataBoundSetter
+    public void setWait(boolean wait) {
+        this.wait = wait;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new Execution(this, context);
+    }
+
+    /**
+     * Serializes the event for the run.
+     *
+     * @param occurredAt time of the event in milliseconds
+     * @throws IllegalArgumentException if {@code properties} is not a JSON object
+     */
+    static String toPayload(DxSendStep step, Run<?, ?> run, DxScmMetadata scm, long occurredAt) {
+        String propertiesJson = null;
+        if (step.properties != null && !step.properties.trim().isEmpty()) {
+            try {
+                propertiesJson = new JSONObject(step.properties).toString();
+            } catch (JSONException e) {
+                throw new IllegalArgumentException("dxSend: properties must be a JSON object: " + e.getMessage(), e);
+            }
+        }
+        String jobName = run.getParent().getFullName();
+        return DxJsonWriter.object()
+                .field("pipeline_name", jobName)
+                .field("pipeline_source", PIPELINE_SOURCE)
+                .field("reference_id", jobName + " #" + run.getNumber())
+                .field("source_id", jobName)
+                .field("event_type", step.type)
+                .fieldIfNotEmpty("event_name", step.name)
+                .field("status", step.status != null && !step.status.trim().isEmpty() ? step.status.trim() : "success")
+                .fieldIfNotEmpty("environment", step.environment)
+                .field("occurred_at", occurredAt / 1000)
+                .field("repository", scm.getRepositoryName())
+                .field("source_url", scm.getRepositoryUrl())
+                .field("head_branch", scm.getBranch())
+                .field("commit_sha", scm.getCommit())
+                .rawField("properties", propertiesJson)
+                .toJson();
+    }
+
+    static class Execution extends GeneralNonBlockingStepExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient DxSendStep step;
+
+        Execution(DxSendStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            Run<?, ?> run = getContext().get(Run.class);
+            TaskListener listener = getContext().get(TaskListener.class);
+            if (!step.wait) {
+                getContext().onSuccess(enqueue(run, listener));
+                return true;
+            }
+            run(() -> getContext().onSuccess(send(run, listener)));
+            return false;
+        }
+
+        /**
+         * Hands the event to the delivery queue without blocking. Runs on the CPS VM thread, so the repository comes
+         * from the run's actions or the job's cached repository only, never from the run's environment.
+         */
+        boolean enqueue(Run<?, ?> run, TaskListener listener) {
+            DxGlobalConfiguration config = getConfiguration();
+            DxEvent event = createEvent(run, listener, config, false);
+            if (event == null) {
+                return false;
+            }
+            if (!getDeliveryQueue().offer(event, config)) {
+                listener.getLogger().println("DX: delivery queue full. Event dropped.");
+                return false;
+            }
+            listener.getLogger().println("DX: " + step.type + " event queued for delivery.");
+            return true;
+        }
+
+        /** Sends the event and waits for DX. Runs on a background thread. */
+        boolean send(Run<?, ?> run, TaskListener listener) {
+            DxGlobalConfiguration config = getConfiguration();
+            DxEvent event = createEvent(run, listener, config, true);
+            if (event == null) {
+                return false;
+            }
+            return createDxDataSender(config, listener).send(event.getPayload(), run, event.getPath());
+        }
+
+        @CheckForNull
+        private DxEvent createEvent(
+                Run<?, ?> run,
+                TaskListener listener,
+                @CheckForNull DxGlobalConfiguration config,
+                boolean useEnvironment) {
+            if (config == null || !config.isConfigured()) {
+                listener.getLogger().println("DX: plugin not configured. Skipping.");
+                return null;
+            }
+            DxScmMetadata scm = useEnvironment
+                    ? getScmMetadataResolver().resolve(run, listener)
+                    : getScmMetadataResolver().resolveWithoutEnvironment(run);
+            if (!DxRunListener.isShared(scm, config, listener)) {
+                return null;
+            }
+            String payload = toPayload(step, run, scm, System.currentTimeMillis());
+            if (config.isDebugPayloads()) {
+                listener.getLogger().println("DX Payload: " + payload);
+            }
+            return new DxEvent(payload, run, DxDataSender.EVENT_SYNC_PATH);
+        }
+
+        DxGlobalConfiguration getConfiguration() {
+            return DxGlobalConfiguration.get();
+        }
+
+        DxDeliveryQueue getDeliveryQueue() {
+            return DxDeliveryQueue.get();
+        }
+
+        DxScmMetadataResolver getScmMetadataResolver() {
+            return DxScmMetadataResolver.get();
+        }
+
+        DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+            return new DxDataSender(config, listener);
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            Set<Class<?>> context = new HashSet<>();
+            Collections.addAll(context, Run.class, TaskListener.class);
+            return Collections.unmodifiableSet(context);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "dxSend";
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return "Send a custom event to DX";
+        }
+
+        public FormValidation doCheckType(@QueryParameter String value) {
+            return value == null || value.trim().isEmpty()
+                    ? FormValidation.error("Event type is required, e.g. deployment.")
+                    : FormValidation.ok();
+        }
+
+        public FormValidation doCheckProperties(@QueryParameter String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return FormValidation.ok();
+            }
+            try {
+                new JSONObject(value);
+                return FormValidation.ok();
+            } catch (JSONException e) {
+                return FormValidation.error("Properties must be a JSON object: " + e.getMessage());
+            }
+        }
+    }
+}
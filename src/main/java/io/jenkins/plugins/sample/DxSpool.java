@@ -0,0 +1,450 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Append-only journal of run and rollup events under {@code JENKINS_HOME}, so that events survive DX outages and
+ * controller restarts.
+ *
+ * <p>Each event is appended as one line to the active {@code segment-N.log} before delivery, prefixed with its
+ * build and, for events other than run events, its API path. Successful deliveries
+ * append the line index to the matching {@code segment-N.ack}; events only the {@link DxEventSink sinks} accepted
+ * append it prefixed with {@code s}, so that replay does not write them to the sinks again. Segments rotate by size
+ * and are deleted once every event in them has been acknowledged. Unacknowledged events are replayed in the
+ * background at startup and after a delivery succeeds following a failure.
+ */
+@Extension
+public class DxSpool {
+
+    private static final Logger LOGGER = Logger.getLogger(DxSpool.class.getName());
+
+    private static final TaskListener BACKGROUND_LISTENER = new LogTaskListener(LOGGER, Level.FINE);
+
+    static final long SEGMENT_SIZE_BYTES =
+            Long.getLong(DxSpool.class.getName() + ".segmentSizeBytes", 4L * 1024 * 1024);
+
+    static final long REPLAY_RETRY_SECONDS = Long.getLong(DxSpool.class.getName() + ".replayRetrySeconds", 60);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+    private final Map<Long, Segment> segments = new TreeMap<>();
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean replayNeeded = new AtomicBoolean();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+
+    private File directory;
+    private boolean loaded;
+    private Segment active;
+    private OutputStream activeOut;
+    private long nextSequence;
+
+    public DxSpool() {}
+
+    DxSpool(File directory) {
+        this.directory = directory;
+    }
+
+    public static DxSpool get() {
+        return ExtensionList.lookupSingleton(DxSpool.class);
+    }
+
+    /**
+     * Appends an event to the journal. On failure the event is left unspooled and is still delivered, just without
+     * the durability guarantee.
+     */
+    public synchronized void append(DxEvent event) {
+        try {
+            ensureLoaded();
+            if (active == null || active.bytes >= SEGMENT_SIZE_BYTES) {
+                rotate();
+            }
+            byte[] record = (toRecord(event) + '\n').getBytes(StandardCharsets.UTF_8);
+            activeOut.write(record);
+            activeOut.flush();
+
+            int index = active.records++;
+            active.bytes += record.length;
+            event.setSpoolPosition(active.sequence, index);
+            inFlight.add(key(active.sequence, index));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "DX: unable to spool event to " + directory, e);
+        }
+    }
+
+    /** Records that an event was delivered, and replays the backlog if earlier deliveries had failed. */
+    public void acknowledge(DxEvent event) {
+        if (!event.isSpooled()) {
+            return;
+        }
+        inFlight.remove(key(event.getSpoolSegment(), event.getSpoolIndex()));
+        synchronized (this) {
+            Segment segment = segments.get(event.getSpoolSegment());
+            if (segment != null && !segment.acked.get(event.getSpoolIndex())) {
+                segment.acked.set(event.getSpoolIndex());
+                segment.ackedCount++;
+                try (OutputStream out = new FileOutputStream(segment.ackFile, true)) {
+                    out.write((event.getSpoolIndex() + "\n").getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "DX: unable to record acknowledgement in " + segment.ackFile, e);
+                }
+                compact(segment);
+            }
+        }
+        if (replayNeeded.compareAndSet(true, false)) {
+            scheduleReplay(0);
+        }
+    }
+
+    /**
+     * Drops an event DX refused for good, such as a malformed payload or one sent with a revoked token, so that it
+     * does not hold up the replay of every event journaled after it.
+     */
+    public void discard(DxEvent event, int code) {
+        if (!event.isSpooled()) {
+            return;
+        }
+        String source = event.getRun() != null ? event.getRun().getExternalizableId() : event.getPath();
+        LOGGER.log(Level.WARNING, "DX: event for {0} rejected with code {1}. Dropped from the spool.", new Object[] {
+            source, code
+        });
+        acknowledge(event);
+    }
+
+    /** Records that delivery of an event failed or was abandoned, leaving it in the journal for replay. */
+    public void release(DxEvent event) {
+        if (!event.isSpooled()) {
+            return;
+        }
+        inFlight.remove(key(event.getSpoolSegment(), event.getSpoolIndex()));
+        recordSinksDelivered(event);
+        replayNeeded.set(true);
+    }
+
+    private synchronized void recordSinksDelivered(DxEvent event) {
+        Segment segment = segments.get(event.getSpoolSegment());
+        if (!event.isSinksDelivered() || segment == null || segment.sunk.get(event.getSpoolIndex())) {
+            return;
+        }
+        segment.sunk.set(event.getSpoolIndex());
+        try (OutputStream out = new FileOutputStream(segment.ackFile, true)) {
+            out.write(("s" + event.getSpoolIndex() + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "DX: unable to record sink delivery in " + segment.ackFile, e);
+        }
+    }
+
+    /** Number of journaled events that have not been acknowledged yet. */
+    public synchronized int getPendingCount() {
+        try {
+            ensureLoaded();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "DX: unable to load spool from " + directory, e);
+        }
+        int pending = 0;
+        for (Segment segment : segments.values()) {
+            pending += segment.records - segment.ackedCount;
+        }
+        return pending;
+    }
+
+    void scheduleReplay(long delaySeconds) {
+        if (delaySeconds > 0) {
+            if (retryScheduled.compareAndSet(false, true)) {
+                Timer.get().schedule(() -> {
+                    retryScheduled.set(false);
+                    replay();
+                }, delaySeconds, TimeUnit.SECONDS);
+            }
+        } else {
+            Timer.get().execute(this::replay);
+        }
+    }
+
+    void replay() {
+        DxGlobalConfiguration config = DxGlobalConfiguration.get();
+        if (config == null || !config.isConfigured() || !config.isSpoolEnabled()) {
+            return;
+        }
+        replay(new DxDataSender(config, BACKGROUND_LISTENER));
+    }
+
+    /**
+     * Sends every unacknowledged event that is not already on its way through the delivery queue, stopping at the
+     * first failure that a later attempt may get past. Events DX rejects for good are discarded.
+     *
+     * @return {@code true} if the journal was fully drained
+     */
+    boolean replay(DxDataSender sender) {
+        if (!replaying.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            replayNeeded.set(false);
+            List<long[]> pending = new ArrayList<>();
+            synchronized (this) {
+                ensureLoaded();
+                for (Segment segment : segments.values()) {
+                    if (segment.ackedCount < segment.records) {
+                        pending.add(new long[] {segment.sequence, segment.records});
+                    }
+                }
+            }
+            for (long[] entry : pending) {
+                if (!replaySegment(entry[0], (int) entry[1], sender)) {
+                    replayNeeded.set(true);
+                    scheduleReplay(REPLAY_RETRY_SECONDS);
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "DX: unable to replay spooled events from " + directory, e);
+            return false;
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    private boolean replaySegment(long sequence, int records, DxDataSender sender) throws IOException {
+        Segment segment;
+        synchronized (this) {
+            segment = segments.get(sequence);
+        }
+        if (segment == null) {
+            return true;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(segment.logFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            for (int index = 0; index < records && (line = reader.readLine()) != null; index++) {
+                if (isAcknowledged(segment, index) || inFlight.contains(key(sequence, index))) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                Run<?, ?> run = tab > 0 ? lookupRun(line.substring(0, tab)) : null;
+                DxEvent event = fromRecord(line, run);
+                event.setSpoolPosition(sequence, index);
+                if (isSinksDelivered(segment, index)) {
+                    event.markSinksDelivered();
+                }
+                if (run == null) {
+                    LOGGER.log(Level.FINE, "DX: build for spooled event no longer exists. Discarding: {0}", line);
+                    acknowledge(event);
+                    continue;
+                }
+                if (sender.send(event)) {
+                    acknowledge(event);
+                } else if (sender.isRejected()) {
+                    discard(event, sender.getLastResponseCode());
+                } else {
+                    recordSinksDelivered(event);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Journal line of an event: build id, the API path unless it is a run event, and payload, separated by tabs. */
+    static String toRecord(DxEvent event) {
+        String runId = event.getRun() != null ? event.getRun().getExternalizableId() : "";
+        return event.isRunEvent()
+                ? runId + '\t' + event.getPayload()
+                : runId + '\t' + event.getPath() + '\t' + event.getPayload();
+    }
+
+    /** Reads a journal line back; payloads are JSON objects, so a field starting with {@code /} is a path. */
+    static DxEvent fromRecord(String line, Run<?, ?> run) {
+        String rest = line.substring(line.indexOf('\t') + 1);
+        int tab = rest.indexOf('\t');
+        if (rest.startsWith("/") && tab > 0) {
+            return new DxEvent(rest.substring(tab + 1), run, rest.substring(0, tab));
+        }
+        return new DxEvent(rest, run);
+    }
+
+    Run<?, ?> lookupRun(String externalizableId) {
+        try {
+            return Run.fromExternalizableId(externalizableId);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private synchronized boolean isAcknowledged(Segment segment, int index) {
+        return segment.acked.get(index);
+    }
+
+    private synchronized boolean isSinksDelivered(Segment segment, int index) {
+        return segment.sunk.get(index);
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        if (directory == null) {
+            directory = new File(Jenkins.get().getRootDir(), "dx-data-sharer/spool");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    Segment segment = new Segment(directory, Long.parseLong(matcher.group(1)));
+                    segment.load();
+                    segments.put(segment.sequence, segment);
+                    nextSequence = Math.max(nextSequence, segment.sequence + 1);
+                }
+            }
+        }
+        loaded = true;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            compact(segment);
+        }
+        if (!segments.isEmpty()) {
+            LOGGER.log(Level.INFO, "DX: loaded {0} unacknowledged spooled events", getPendingCount());
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeActive();
+        Segment previous = active;
+        active = new Segment(directory, nextSequence++);
+        segments.put(active.sequence, active);
+        activeOut = new BufferedOutputStream(new FileOutputStream(active.logFile, true));
+        if (previous != null) {
+            compact(previous);
+        }
+    }
+
+    private void compact(Segment segment) {
+        if (segment == active || segment.ackedCount < segment.records) {
+            return;
+        }
+        segments.remove(segment.sequence);
+        if (!segment.logFile.delete() || (segment.ackFile.exists() && !segment.ackFile.delete())) {
+            LOGGER.log(Level.FINE, "DX: unable to delete acknowledged spool segment {0}", segment.logFile);
+        }
+    }
+
+    private void closeActive() {
+        if (activeOut != null) {
+            try {
+                activeOut.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "DX: unable to close spool segment", e);
+            }
+            activeOut = null;
+        }
+    }
+
+    synchronized void close() {
+        closeActive();
+        active = null;
+    }
+
+    private static long key(long sequence, int index) {
+        return (sequence << 32) | (index & 0xffffffffL);
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void replayOnStartup() {
+        DxGlobalConfiguration config = DxGlobalConfiguration.get();
+        if (config != null && config.isSpoolEnabled()) {
+            get().scheduleReplay(0);
+        }
+    }
+
+    @Terminator(requires = DxRollupAggregator.ROLLUPS_FLUSHED)
+    public static void shutdown() {
+        DxSpool instance = ExtensionList.lookup(DxSpool.class).get(DxSpool.class);
+        if (instance != null) {
+            instance.close();
+        }
+    }
+
+    private static final class Segment {
+        final long sequence;
+        final File logFile;
+        final File ackFile;
+        final BitSet acked = new BitSet();
+        final BitSet sunk = new BitSet();
+        int records;
+        int ackedCount;
+        long bytes;
+
+        Segment(File directory, long sequence) {
+            this.sequence = sequence;
+            this.logFile = new File(directory, "segment-" + sequence + ".log");
+            this.ackFile = new File(directory, "segment-" + sequence + ".ack");
+        }
+
+        /** Counts complete records and reads acknowledgements. A torn final line is ignored. */
+        void load() throws IOException {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = Files.newInputStream(logFile.toPath())) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    bytes += read;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            records++;
+                        }
+                    }
+                }
+            }
+            if (ackFile.exists()) {
+                for (String line : Files.readAllLines(ackFile.toPath(), StandardCharsets.UTF_8)) {
+                    try {
+                        if (line.startsWith("s")) {
+                            sunk.set(Integer.parseInt(line.substring(1).trim()));
+                            continue;
+                        }
+                        int index = Integer.parseInt(line.trim());
+                        if (index < records && !acked.get(index)) {
+                            acked.set(index);
+                            ackedCount++;
+                        }
+                    } catch (NumberFormatException e) {
+                        // torn write; the event will simply be replayed
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package io.jenkins.plugins.sample;
+
+import hudson.Extension;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import org.jenkinsci.plugins.workflow.actions.ErrorAction;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.actions.TagsAction;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.actions.WarningAction;
+import org.jenkinsci.plugins.workflow.flow.GraphListener;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowEndNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+
+/**
+ * Streams Pipeline stage start and end events to DX as flow nodes are added, instead of walking the flow graph when
+ * the build completes. Each node is handled in constant time from its own actions and, for block ends, its start
+ * node; events are handed to the {@link DxDeliveryQueue} without blocking the CPS VM thread.
+ */
+@Extension
+public class DxStageListener implements GraphListener {
+
+    private static final Logger LOGGER = Logger.getLogger(DxStageListener.class.getName());
+
+    private static final String PIPELINE_SOURCE = "jenkins";
+    private static final String STAGE_STATUS_TAG = "STAGE_STATUS";
+
+    static final int RECENT_RUNS = 200;
+
+    /** Stage events held back per build while its repository is not known yet. */
+    static final int MAX_DEFERRED_EVENTS = 100;
+
+    /** Repository filter state of running builds, so a known repository is resolved once per build. */
+    private final LinkedHashMap<String, FilterState> runs = new LinkedHashMap<String, FilterState>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FilterState> eldest) {
+            return size() > RECENT_RUNS;
+        }
+    };
+
+    @Override
+    public void onNewHead(FlowNode node) {
+        DxGlobalConfiguration config = getConfiguration();
+        if (config == null || !config.isStageEvents() || !config.isConfigured()) {
+            return;
+        }
+        try {
+            if (node instanceof FlowEndNode) {
+                finish(config, node);
+            } else if (node instanceof BlockStartNode) {
+                if (isStage(node)) {
+                    publish(config, node, null);
+                }
+            } else if (node instanceof BlockEndNode) {
+                BlockStartNode start = ((BlockEndNode<?>) node).getStartNode();
+                if (start != null && isStage(start)) {
+                    publish(config, start, node);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "DX: unable to publish stage event for node " + node.getId(), e);
+        }
+    }
+
+    /** Whether the node opens a stage body; parallel branches also carry a label but are not stages. */
+    static boolean isStage(FlowNode node) {
+        return node.getPersistentAction(LabelAction.class) != null
+                && node.getPersistentAction(ThreadNameAction.class) == null;
+    }
+
+    private void publish(DxGlobalConfiguration config, FlowNode start, @CheckForNull FlowNode end) throws IOException {
+        Run<?, ?> run = runOf(start);
+        if (run == null) {
+            return;
+        }
+        DxEvent event = new DxEvent(toPayload(run, start, end), run, DxDataSender.STAGE_SYNC_PATH);
+        offer(config, run, filter(run, event, config.getRepositoryFilter(), false));
+    }
+
+    /** Settles the events of a build whose repository never became known, now that no more stages will start. */
+    private void finish(DxGlobalConfiguration config, FlowNode end) throws IOException {
+        Run<?, ?> run = runOf(end);
+        if (run != null) {
+            offer(config, run, filter(run, null, config.getRepositoryFilter(), true));
+        }
+    }
+
+    @CheckForNull
+    private static Run<?, ?> runOf(FlowNode node) throws IOException {
+        Queue.Executable executable = node.getExecution().getOwner().getExecutable();
+        return executable instanceof Run ? (Run<?, ?>) executable : null;
+    }
+
+    private void offer(DxGlobalConfiguration config, Run<?, ?> run, List<DxEvent> events) {
+        for (DxEvent event : events) {
+            if (!getDeliveryQueue().offer(event, config)) {
+                LOGGER.log(
+                        Level.FINE, "DX: delivery queue full. Stage event for {0} dropped.", run.getExternalizableId());
+            }
+        }
+    }
+
+    /** Serializes a stage start event, or a stage end event when {@code end} is given. */
+    static String toPayload(Run<?, ?> run, FlowNode start, @CheckForNull FlowNode end) {
+        String jobName = run.getParent().getFullName();
+        LabelAction label = start.getPersistentAction(LabelAction.class);
+        long startedAt = TimingAction.getStartTime(start);
+
+        DxJsonWriter json = DxJsonWriter.object()
+                .field("pipeline_name", jobName)
+                .field("pipeline_source", PIPELINE_SOURCE)
+                .field("reference_id", jobName + " #" + run.getNumber())
+                .field("source_id", jobName)
+                .field("stage_id", start.getId())
+                .field("stage_name", label != null ? label.getDisplayName() : start.getDisplayName())
+                .field("started_at", startedAt / 1000);
+        if (end == null) {
+            return json.field("status", "running").toJson();
+        }
+        long finishedAt = TimingAction.getStartTime(end);
+        return json.field("finished_at", finishedAt / 1000)
+                .field("duration_ms", startedAt > 0 && finishedAt >= startedAt ? finishedAt - startedAt : 0)
+                .field("status", stageStatus(start, end))
+                .toJson();
+    }
+
+    /** Maps the outcome recorded on the stage's nodes to the statuses used for pipeline runs. */
+    static String stageStatus(FlowNode start, FlowNode end) {
+        String tag = TagsAction.getTagValue(start, STAGE_STATUS_TAG);
+        if (tag != null && tag.startsWith("SKIPPED")) {
+            return "cancelled";
+        }
+        ErrorAction error = end.getPersistentAction(ErrorAction.class);
+        if (error != null) {
+            Throwable cause = error.getError();
+            return DxRunListener.mapResult(
+                    cause instanceof FlowInterruptedException
+                            ? ((FlowInterruptedException) cause).getResult()
+                            : Result.FAILURE);
+        }
+        WarningAction warning = end.getPersistentAction(WarningAction.class);
+        if (warning == null) {
+            warning = start.getPersistentAction(WarningAction.class);
+        }
+        return DxRunListener.mapResult(warning != null ? warning.getResult() : Result.SUCCESS);
+    }
+
+    /**
+     * Applies the repository filter to a build's stage event and returns the events that may be sent now. The
+     * repository is taken from the build's actions or the job's cached repository only, never from the environment,
+     * since this runs on the CPS VM thread. While it is unknown, events are held back instead of deciding on an empty
+     * repository; once it is known, or the build has finished, the held events are released or dropped together.
+     */
+    private List<DxEvent> filter(
+            Run<?, ?> run, @CheckForNull DxEvent event, @CheckForNull DxRepositoryFilter filter, boolean finished) {
+        if (filter == null || filter.isEmpty()) {
+            return event != null ? Collections.singletonList(event) : Collections.emptyList();
+        }
+        String id = run.getExternalizableId();
+        FilterState state;
+        synchronized (runs) {
+            state = finished ? runs.remove(id) : runs.computeIfAbsent(id, k -> new FilterState());
+        }
+        if (state == null) {
+            state = new FilterState();
+        }
+        synchronized (state) {
+            if (state.shared == null) {
+                String repositoryPath = getScmMetadataResolver().resolveWithoutEnvironment(run).getRepositoryPath();
+                if (repositoryPath.isEmpty() && !finished) {
+                    if (event != null && state.deferred.size() < MAX_DEFERRED_EVENTS) {
+                        state.deferred.add(event);
+                    }
+                    return Collections.emptyList();
+                }
+                state.shared = !filter.isDenylisted(repositoryPath) && filter.isAllowlisted(repositoryPath);
+            }
+            List<DxEvent> ready = Collections.emptyList();
+            if (state.shared) {
+                ready = new ArrayList<>(state.deferred);
+                if (event != null) {
+                    ready.add(event);
+                }
+            }
+            state.deferred.clear();
+            return ready;
+        }
+    }
+
+    DxGlobalConfiguration getConfiguration() {
+        return DxGlobalConfiguration.get();
+    }
+
+    DxDeliveryQueue getDeliveryQueue() {
+        return DxDeliveryQueue.get();
+    }
+
+    DxScmMetadataResolver getScmMetadataResolver() {
+        return DxScmMetadataResolver.get();
+    }
+
+    /** Whether a build's repository passes the filter, once known, and the events waiting for that decision. */
+    private static final class FilterState {
+        @CheckForNull
+        Boolean shared;
+
+        final List<DxEvent> deferred = new ArrayList<>();
+    }
+}
@@ -0,0 +1,269 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the backfill walk over build history and its checkpoint. */
+public class DxBackfillTest {
+
+    private File directory;
+    private File checkpointFile;
+    private DxGlobalConfiguration config;
+    private DxRunListener runListener;
+    private DxDataSender sender;
+    private DxCircuitBreaker breaker;
+    private final List<String> sentPayloads = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dx-backfill").toFile();
+        checkpointFile = new File(directory, "checkpoint.properties");
+        config = mock(DxGlobalConfiguration.class);
+        doReturn(true).when(config).isConfigured();
+        runListener = mock(DxRunListener.class);
+        sender = mock(DxDataSender.class);
+        doAnswer(invocation -> {
+                    List<DxEvent> events = invocation.getArgument(0);
+                    for (DxEvent event : events) {
+                        sentPayloads.add(event.getPayload());
+                    }
+                    return new ArrayList<>(events);
+                })
+                .when(sender)
+                .sendBatch(any());
+        breaker = new DxCircuitBreaker();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testWalksBuildsInRangeNewestFirst() throws Exception {
+        Run<?, ?> building = mockRun(5, 5000, true);
+        Run<?, ?> fourth = mockRun(4, 4000, false);
+        Run<?, ?> third = mockRun(3, 3000, false);
+        Run<?, ?> denied = mockRun(2, 2500, false);
+        Run<?, ?> tooOld = mockRun(1, 1000, false);
+        Job<?, ?> job = mockJob("folder/app", building, fourth, third, denied, tooOld);
+        doReturn("{\"n\":4}").when(runListener).buildPayload(same(fourth), any(TaskListener.class), same(config));
+        doReturn("{\"n\":3}").when(runListener).buildPayload(same(third), any(TaskListener.class), same(config));
+
+        DxBackfill.Checkpoint checkpoint = new DxBackfill.Checkpoint(checkpointFile, 2000, 4500);
+        DxBackfill backfill = new TestableDxBackfill();
+        backfill.backfill(job, checkpoint, new DxBackfill.Throttle(0));
+
+        assertEquals(Arrays.asList("{\"n\":4}", "{\"n\":3}"), sentPayloads);
+        assertEquals(2, backfill.getSentCount());
+        assertEquals(1, backfill.getSkippedCount());
+        assertTrue(checkpoint.isDone("folder/app"));
+        verify(runListener, never()).buildPayload(same(building), any(TaskListener.class), any());
+        verify(runListener, never()).buildPayload(same(tooOld), any(TaskListener.class), any());
+    }
+
+    @Test
+    public void testResumesBelowCheckpointedBuild() throws Exception {
+        Run<?, ?> third = mockRun(3, 3000, false);
+        Run<?, ?> second = mockRun(2, 2000, false);
+        Job<?, ?> job = mockJob("app", third, second);
+        doReturn("{\"n\":2}").when(runListener).buildPayload(same(second), any(TaskListener.class), same(config));
+
+        DxBackfill.Checkpoint checkpoint = new DxBackfill.Checkpoint(checkpointFile, 0, Long.MAX_VALUE);
+        checkpoint.record("app", 3);
+        checkpoint.save();
+
+        DxBackfill.Checkpoint resumed = DxBackfill.Checkpoint.load(checkpointFile);
+        assertNotNull(resumed);
+        assertEquals(3, resumed.getResumeBelow("app"));
+        assertEquals(Long.MAX_VALUE, resumed.to);
+        new TestableDxBackfill().backfill(job, resumed, new DxBackfill.Throttle(0));
+
+        assertEquals(Arrays.asList("{\"n\":2}"), sentPayloads);
+        verify(runListener, never()).buildPayload(same(third), any(TaskListener.class), any());
+        verify(job, never()).getLastBuild();
+        verify(job).getNearestOldBuild(2);
+    }
+
+    @Test
+    public void testCheckpointStopsAtTheFirstRejectedBuild() throws Exception {
+        Run<?, ?> ninth = mockRun(9, 9000, false);
+        Run<?, ?> eighth = mockRun(8, 8000, false);
+        Run<?, ?> seventh = mockRun(7, 7000, false);
+        Job<?, ?> job = mockJob("app", ninth, eighth, seventh);
+        doReturn("{\"n\":9}").when(runListener).buildPayload(same(ninth), any(TaskListener.class), same(config));
+        doReturn("{\"n\":8}").when(runListener).buildPayload(same(eighth), any(TaskListener.class), same(config));
+        doReturn("{\"n\":7}").when(runListener).buildPayload(same(seventh), any(TaskListener.class), same(config));
+        doAnswer(invocation -> {
+                    List<DxEvent> accepted = new ArrayList<>(invocation.<List<DxEvent>>getArgument(0));
+                    accepted.removeIf(event -> event.getRun() == eighth);
+                    return accepted;
+                })
+                .when(sender)
+                .sendBatch(any());
+
+        DxBackfill.Checkpoint checkpoint = new DxBackfill.Checkpoint(checkpointFile, 0, Long.MAX_VALUE);
+        DxBackfill backfill = new TestableDxBackfill();
+        backfill.backfill(job, checkpoint, new DxBackfill.Throttle(0));
+
+        assertEquals(2, backfill.getSentCount());
+        assertEquals(1, backfill.getFailedCount());
+        assertEquals(9, checkpoint.getResumeBelow("app"));
+        assertFalse(checkpoint.isDone("app"));
+    }
+
+    @Test
+    public void testCheckpointPassesOverBuildsRejectedForGood() throws Exception {
+        Run<?, ?> ninth = mockRun(9, 9000, false);
+        Run<?, ?> eighth = mockRun(8, 8000, false);
+        Run<?, ?> seventh = mockRun(7, 7000, false);
+        Job<?, ?> job = mockJob("app", ninth, eighth, seventh);
+        doReturn("{\"n\":9}").when(runListener).buildPayload(same(ninth), any(TaskListener.class), same(config));
+        doReturn("{\"n\":8}").when(runListener).buildPayload(same(eighth), any(TaskListener.class), same(config));
+        doReturn("{\"n\":7}").when(runListener).buildPayload(same(seventh), any(TaskListener.class), same(config));
+        List<DxEvent> rejected = new ArrayList<>();
+        doAnswer(invocation -> {
+                    List<DxEvent> accepted = new ArrayList<>(invocation.<List<DxEvent>>getArgument(0));
+                    rejected.clear();
+                    accepted.stream().filter(event -> event.getRun() == eighth).forEach(rejected::add);
+                    accepted.removeAll(rejected);
+                    return accepted;
+                })
+                .when(sender)
+                .sendBatch(any());
+        doReturn(rejected).when(sender).getRejected();
+
+        DxBackfill.Checkpoint checkpoint = new DxBackfill.Checkpoint(checkpointFile, 0, Long.MAX_VALUE);
+        DxBackfill backfill = new TestableDxBackfill();
+        backfill.backfill(job, checkpoint, new DxBackfill.Throttle(0));
+
+        assertEquals(2, backfill.getSentCount());
+        assertEquals(0, backfill.getFailedCount());
+        assertEquals(1, backfill.getRejectedCount());
+        assertTrue(checkpoint.isDone("app"));
+    }
+
+    @Test
+    public void testCheckpointIsNotAdvancedWhileDxIsUnavailable() throws Exception {
+        Run<?, ?> run = mockRun(7, 7000, false);
+        Job<?, ?> job = mockJob("app", run);
+        doReturn("{\"n\":7}").when(runListener).buildPayload(same(run), any(TaskListener.class), same(config));
+        doReturn(new ArrayList<DxEvent>()).when(sender).sendBatch(any());
+        for (int i = 0; i < 5; i++) {
+            breaker.recordFailure(5, 60_000);
+        }
+
+        DxBackfill.Checkpoint checkpoint = new DxBackfill.Checkpoint(checkpointFile, 0, Long.MAX_VALUE);
+        DxBackfill backfill = new TestableDxBackfill();
+        backfill.backfill(job, checkpoint, new DxBackfill.Throttle(0));
+
+        assertEquals(1, backfill.getFailedCount());
+        assertEquals(Integer.MAX_VALUE, checkpoint.getResumeBelow("app"));
+        assertFalse(checkpoint.isDone("app"));
+    }
+
+    @Test
+    public void testLoadWithoutCheckpoint() throws IOException {
+        assertNull(DxBackfill.Checkpoint.load(checkpointFile));
+    }
+
+    @Test
+    public void testParseDate() {
+        long start = LocalDate.of(2024, 1, 31).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long end = LocalDate.of(2024, 2, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(start, DxBackfill.parseDate("2024-01-31", 0, false));
+        assertEquals(end, DxBackfill.parseDate(" 2024-01-31 ", 0, true));
+        assertEquals(42, DxBackfill.parseDate("", 42, false));
+        assertEquals(42, DxBackfill.parseDate(null, 42, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseDateRejectsOtherFormats() {
+        DxBackfill.parseDate("31/01/2024", 0, false);
+    }
+
+    /** Mocks a job whose builds, given newest first, are linked the way Jenkins loads them. */
+    private Job<?, ?> mockJob(String name, Run<?, ?>... runs) {
+        Job<?, ?> job = mock(Job.class);
+        doReturn(name).when(job).getFullName();
+        doReturn(runs.length > 0 ? runs[0] : null).when(job).getLastBuild();
+        doAnswer(invocation -> {
+                    int number = invocation.getArgument(0);
+                    return Arrays.stream(runs)
+                            .filter(run -> run.getNumber() <= number)
+                            .findFirst()
+                            .orElse(null);
+                })
+                .when(job)
+                .getNearestOldBuild(anyInt());
+        for (int i = 0; i < runs.length; i++) {
+            doReturn(i + 1 < runs.length ? runs[i + 1] : null).when(runs[i]).getPreviousBuild();
+        }
+        return job;
+    }
+
+    private static Run<?, ?> mockRun(int number, long timestamp, boolean building) {
+        Run<?, ?> run = mock(Run.class);
+        doReturn(number).when(run).getNumber();
+        doReturn(timestamp).when(run).getTimeInMillis();
+        doReturn(building).when(run).isBuilding();
+        doReturn(Result.SUCCESS).when(run).getResult();
+        return run;
+    }
+
+    private class TestableDxBackfill extends DxBackfill {
+
+        TestableDxBackfill() {
+            super(checkpointFile);
+        }
+
+        @Override
+        DxGlobalConfiguration getConfiguration() {
+            return config;
+        }
+
+        @Override
+        DxRunListener getRunListener() {
+            return runListener;
+        }
+
+        @Override
+        DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+            return sender;
+        }
+
+        @Override
+        DxCircuitBreaker getCircuitBreaker() {
+            return breaker;
+        }
+    }
+}
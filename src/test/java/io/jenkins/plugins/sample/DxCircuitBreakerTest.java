@@ -0,0 +1,94 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/** Tests for the circuit breaker and the retry policy guarding DX requests. */
+public class DxCircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final DxCircuitBreaker breaker = new DxCircuitBreaker(now::get);
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.recordFailure(3, 1000);
+        }
+        assertTrue(breaker.tryAcquire());
+        breaker.recordSuccess();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.recordFailure(3, 1000);
+        }
+        assertEquals(DxCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getShortCircuitedCount());
+        assertEquals(1, breaker.getTripCount());
+    }
+
+    @Test
+    public void testHalfOpenLetsOneProbeThrough() {
+        breaker.tryAcquire();
+        breaker.recordFailure(1, 1000);
+        assertFalse(breaker.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(breaker.tryAcquire());
+        assertEquals(DxCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.recordFailure(1, 1000);
+        assertEquals(DxCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(breaker.tryAcquire());
+        breaker.recordSuccess();
+        assertEquals(DxCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testRetryClassification() {
+        assertTrue(DxRetryPolicy.isRetryable(DxDataSender.CONNECTION_ERROR));
+        assertTrue(DxRetryPolicy.isRetryable(429));
+        assertTrue(DxRetryPolicy.isRetryable(500));
+        assertTrue(DxRetryPolicy.isRetryable(503));
+        assertFalse(DxRetryPolicy.isRetryable(400));
+        assertFalse(DxRetryPolicy.isRetryable(401));
+        assertFalse(DxRetryPolicy.isRetryable(200));
+        assertFalse(DxRetryPolicy.isRetryable(DxDataSender.SHORT_CIRCUITED));
+
+        assertTrue(DxCircuitBreaker.isOutage(DxDataSender.CONNECTION_ERROR, -1));
+        assertTrue(DxCircuitBreaker.isOutage(502, -1));
+        assertTrue(DxCircuitBreaker.isOutage(503, -1));
+        assertFalse(DxCircuitBreaker.isOutage(503, 30_000));
+        assertFalse(DxCircuitBreaker.isOutage(429, -1));
+        assertFalse(DxCircuitBreaker.isOutage(400, -1));
+
+        DxRetryPolicy policy = new DxRetryPolicy(2, 100, 1000);
+        assertTrue(policy.shouldRetry(503, 0));
+        assertTrue(policy.shouldRetry(503, 1));
+        assertFalse(policy.shouldRetry(503, 2));
+        assertFalse(policy.shouldRetry(404, 0));
+    }
+
+    @Test
+    public void testBackoffGrowsWithJitterUpToMaximum() {
+        DxRetryPolicy policy = new DxRetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoffMillis(0);
+            assertTrue(first >= 50 && first <= 100);
+            long third = policy.backoffMillis(2);
+            assertTrue(third >= 200 && third <= 400);
+            long capped = policy.backoffMillis(40);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+    }
+}
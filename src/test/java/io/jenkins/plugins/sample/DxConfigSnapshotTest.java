@@ -0,0 +1,54 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.net.URI;
+import org.junit.Test;
+
+/** Tests for the settings snapshot the delivery path reads. */
+public class DxConfigSnapshotTest {
+
+    @Test
+    public void testEndpointsAreResolvedOnce() {
+        DxGlobalConfiguration config = mock(DxGlobalConfiguration.class);
+        doReturn(" https://dx.example.com/ ").when(config).getDxBaseUrl();
+        doReturn("legacy-*").when(config).getRepositoryDenylist();
+        doReturn(30L).when(config).getCircuitOpenSeconds();
+
+        DxConfigSnapshot snapshot = DxConfigSnapshot.of(config);
+
+        assertTrue(snapshot.isApiConfigured());
+        assertEquals(
+                URI.create("https://dx.example.com/api/pipelineRuns.sync"),
+                snapshot.getEndpoint(DxDataSender.SYNC_PATH));
+        assertSame(
+                snapshot.getEndpoint(DxDataSender.BULK_SYNC_PATH), snapshot.getEndpoint(DxDataSender.BULK_SYNC_PATH));
+        assertEquals(
+                URI.create("https://dx.example.com/api/pipelineStages.sync"),
+                snapshot.getEndpoint(DxDataSender.STAGE_SYNC_PATH));
+        assertTrue(snapshot.getRepositoryFilter().isDenylisted("legacy-app"));
+        assertEquals(30000, snapshot.getCircuitOpenMillis());
+    }
+
+    @Test
+    public void testMalformedBaseUrlHasNoEndpoints() {
+        DxGlobalConfiguration config = mock(DxGlobalConfiguration.class);
+        doReturn("https://dx example com").when(config).getDxBaseUrl();
+
+        DxConfigSnapshot snapshot = DxConfigSnapshot.of(config);
+
+        assertTrue(snapshot.isApiConfigured());
+        assertNull(snapshot.getEndpoint(DxDataSender.SYNC_PATH));
+        assertNull(snapshot.getEndpoint("/api/other"));
+    }
+
+    @Test
+    public void testMissingBaseUrl() {
+        DxConfigSnapshot snapshot = DxConfigSnapshot.of(mock(DxGlobalConfiguration.class));
+
+        assertFalse(snapshot.isApiConfigured());
+        assertNull(snapshot.getEndpoint(DxDataSender.SYNC_PATH));
+    }
+}
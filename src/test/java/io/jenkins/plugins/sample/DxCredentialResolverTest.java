@@ -0,0 +1,136 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.Secret;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jenkinsci.plugins.plaincredentials.StringCredentials;
+import org.junit.Test;
+
+/** Tests for the per-folder cache of DX API token lookups. */
+public class DxCredentialResolverTest {
+
+    /** The user each mocked job runs as. */
+    private static final Map<Job<?, ?>, String> USERS = new IdentityHashMap<>();
+
+    @Test
+    public void testLookupIsCachedPerFolderAndTrackedOnEveryRun() {
+        TestableResolver resolver = new TestableResolver();
+        StringCredentials token = resolver.define("dx-api-token");
+        Run<?, ?> first = mockRun("team", "app", "alice");
+        Run<?, ?> second = mockRun("team", "lib", "alice");
+
+        assertSame(token.getSecret(), resolver.resolve("dx-api-token", first, 300));
+        assertSame(token.getSecret(), resolver.resolve("dx-api-token", second, 300));
+
+        assertEquals(1, resolver.lookups);
+        assertEquals(2, resolver.tracked.size());
+        assertSame(second, resolver.tracked.get(1));
+    }
+
+    @Test
+    public void testRunsAsDifferentUsersDoNotShareEntries() {
+        TestableResolver resolver = new TestableResolver();
+        resolver.define("dx-api-token");
+
+        resolver.resolve("dx-api-token", mockRun("team", "app", "alice"), 300);
+        resolver.resolve("dx-api-token", mockRun("team", "app", "bob"), 300);
+
+        assertEquals(2, resolver.lookups);
+        assertEquals(2, resolver.size());
+    }
+
+    @Test
+    public void testMissingCredentialsAreCached() {
+        TestableResolver resolver = new TestableResolver();
+
+        assertNull(resolver.resolve("missing", mockRun("team", "app", "alice"), 300));
+        assertNull(resolver.resolve("missing", mockRun("team", "app", "alice"), 300));
+
+        assertEquals(1, resolver.lookups);
+        assertTrue(resolver.tracked.isEmpty());
+    }
+
+    @Test
+    public void testZeroTtlDisablesCaching() {
+        TestableResolver resolver = new TestableResolver();
+        resolver.define("dx-api-token");
+
+        resolver.resolve("dx-api-token", mockRun("team", "app", "alice"), 0);
+        resolver.resolve("dx-api-token", mockRun("team", "app", "alice"), 0);
+
+        assertEquals(2, resolver.lookups);
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    public void testInvalidateDropsFolderAndSubfolders() {
+        TestableResolver resolver = new TestableResolver();
+        resolver.define("dx-api-token");
+        resolver.resolve("dx-api-token", mockRun("team", "app", "alice"), 300);
+        resolver.resolve("dx-api-token", mockRun("team/sub", "app", "alice"), 300);
+        resolver.resolve("dx-api-token", mockRun("teammate", "app", "alice"), 300);
+
+        resolver.invalidate("team");
+
+        assertEquals(1, resolver.size());
+        resolver.resolve("dx-api-token", mockRun("teammate", "app", "alice"), 300);
+        assertEquals(3, resolver.lookups);
+    }
+
+    private static Run<?, ?> mockRun(String folder, String name, String user) {
+        ItemGroup<?> parent = mock(ItemGroup.class, withSettings().extraInterfaces(Item.class));
+        doReturn(folder).when((Item) parent).getFullName();
+        Job<?, ?> job = mock(Job.class);
+        doReturn(parent).when(job).getParent();
+        doReturn(folder + "/" + name).when(job).getFullName();
+        USERS.put(job, user);
+        Run<?, ?> run = mock(Run.class);
+        doReturn(job).when(run).getParent();
+        return run;
+    }
+
+    private static class TestableResolver extends DxCredentialResolver {
+        final Map<String, StringCredentials> credentials = new HashMap<>();
+        final List<Run<?, ?>> tracked = new ArrayList<>();
+        int lookups;
+
+        StringCredentials define(String id) {
+            StringCredentials c = mock(StringCredentials.class);
+            doReturn(mock(Secret.class)).when(c).getSecret();
+            credentials.put(id, c);
+            return c;
+        }
+
+        @Override
+        StringCredentials lookup(String credentialsId, Run<?, ?> run) {
+            lookups++;
+            StringCredentials c = credentials.get(credentialsId);
+            if (c != null) {
+                track(run, c);
+            }
+            return c;
+        }
+
+        @Override
+        void track(Run<?, ?> run, StringCredentials credentials) {
+            tracked.add(run);
+        }
+
+        @Override
+        String authenticationOf(Job<?, ?> job) {
+            return USERS.get(job);
+        }
+    }
+}
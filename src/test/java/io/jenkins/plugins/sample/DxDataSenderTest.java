@@ -0,0 +1,162 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for how DX responses feed the circuit breaker and the sinks. */
+public class DxDataSenderTest {
+
+    private DxGlobalConfiguration config;
+    private TaskListener listener;
+    private DxHttpTransport transport;
+    private DxCredentialResolver credentials;
+    private DxCircuitBreaker breaker;
+    private Run<?, ?> run;
+    private List<DxEventSink> sinks = Collections.emptyList();
+
+    @Before
+    public void setUp() throws Exception {
+        config = mock(DxGlobalConfiguration.class);
+        doReturn(true).when(config).isConfigured();
+        doReturn("https://dx.example.com").when(config).getDxBaseUrl();
+        doReturn(3).when(config).getCircuitFailureThreshold();
+        doReturn(60L).when(config).getCircuitOpenSeconds();
+        doReturn(4).when(config).getMaxConcurrentRequests();
+
+        listener = mock(TaskListener.class);
+        doReturn(new PrintStream(new ByteArrayOutputStream())).when(listener).getLogger();
+        transport = mock(DxHttpTransport.class);
+        Secret token = mock(Secret.class);
+        doReturn("token").when(token).getPlainText();
+        credentials = mock(DxCredentialResolver.class);
+        doReturn(token).when(credentials).resolve(any(), any(), anyLong());
+        breaker = new DxCircuitBreaker();
+
+        run = mock(Run.class);
+        Job<?, ?> job = mock(Job.class);
+        doReturn("app").when(job).getFullName();
+        doReturn(job).when(run).getParent();
+        doReturn(1).when(run).getNumber();
+    }
+
+    @Test
+    public void testThrottlingKeepsTheCircuitClosed() throws Exception {
+        respond(429, -1);
+        DxDataSender sender = new TestableDxDataSender();
+        for (int i = 0; i < 10; i++) {
+            assertFalse(sender.send("{}", run));
+            assertTrue(sender.isDeferrable());
+        }
+        assertEquals(DxCircuitBreaker.State.CLOSED, breaker.getState());
+
+        respond(503, 5000);
+        for (int i = 0; i < 10; i++) {
+            // a sender of its own each time, as the Retry-After pauses the flow control of the previous one
+            assertFalse(new TestableDxDataSender().send("{}", run));
+        }
+        assertEquals(DxCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testServerErrorsOpenTheCircuit() throws Exception {
+        respond(503, -1);
+        DxDataSender sender = new TestableDxDataSender();
+        for (int i = 0; i < 3; i++) {
+            assertFalse(sender.send("{}", run));
+        }
+        assertEquals(DxCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testRetriesOnlyGoToTheApiOnceTheSinksAcceptedAnEvent() throws Exception {
+        respond(500, -1);
+        List<DxEvent> written = new ArrayList<>();
+        DxEventSink sink = new DxEventSink() {
+            @Override
+            public boolean isEnabled(DxGlobalConfiguration config) {
+                return true;
+            }
+
+            @Override
+            public boolean send(DxEvent event, DxGlobalConfiguration config, TaskListener listener) {
+                return written.add(event);
+            }
+        };
+        sinks = Collections.singletonList(sink);
+        DxDataSender sender = new TestableDxDataSender();
+        sender.setSingleAttempt(true);
+        DxEvent event = new DxEvent("{}", run);
+
+        assertFalse(sender.send(event));
+        assertTrue(sender.isDeferrable());
+        assertTrue(sender.sendBatch(Collections.singletonList(event)).isEmpty());
+        assertEquals(Collections.singletonList(event), written);
+
+        respond(200, -1);
+        assertTrue(sender.send(event));
+        assertEquals(1, written.size());
+    }
+
+    private void respond(int code, long retryAfterMillis) throws Exception {
+        doReturn(new DxHttpTransport.Response(code, retryAfterMillis, false))
+                .when(transport)
+                .post(any(DxConfigSnapshot.class), any(URI.class), anyString(), anyString(), any(), anyBoolean());
+    }
+
+    private class TestableDxDataSender extends DxDataSender {
+        private final DxFlowControl flowControl = new DxFlowControl();
+        private final DxMetrics metrics = new DxMetrics();
+
+        TestableDxDataSender() {
+            super(config, listener);
+        }
+
+        @Override
+        DxHttpTransport getTransport() {
+            return transport;
+        }
+
+        @Override
+        DxCredentialResolver getCredentialResolver() {
+            return credentials;
+        }
+
+        @Override
+        DxCircuitBreaker getCircuitBreaker() {
+            return breaker;
+        }
+
+        @Override
+        DxFlowControl getFlowControl() {
+            return flowControl;
+        }
+
+        @Override
+        DxMetrics getMetrics() {
+            return metrics;
+        }
+
+        @Override
+        List<? extends DxEventSink> getSinks() {
+            return sinks;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for suppressing runs DX has already accepted, including across restarts. */
+public class DxDeduplicatorTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dx-dedupe").toFile();
+        file = new File(directory, "delivered-runs.bloom");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testDeliveredRunsAreRememberedAcrossRestarts() {
+        DxDeduplicator deduplicator = new TestableDxDeduplicator(file);
+        Run<?, ?> delivered = mockRun("folder/app", 7, 1000);
+        Run<?, ?> pending = mockRun("folder/app", 8, 2000);
+        deduplicator.markDelivered(delivered);
+        assertTrue(deduplicator.isDelivered(delivered));
+        assertFalse(deduplicator.isDelivered(pending));
+        deduplicator.save();
+
+        DxDeduplicator restarted = new TestableDxDeduplicator(file);
+        assertTrue(restarted.isDelivered(mockRun("folder/app", 7, 1000)));
+        assertFalse(restarted.isDelivered(pending));
+    }
+
+    @Test
+    public void testRecreatedJobIsNotADuplicate() {
+        DxDeduplicator deduplicator = new TestableDxDeduplicator(file);
+        deduplicator.markDelivered(mockRun("app", 1, 1000));
+        assertFalse(deduplicator.isDelivered(mockRun("app", 1, 5000)));
+    }
+
+    @Test
+    public void testCorruptFileStartsEmpty() throws IOException {
+        Files.write(file.toPath(), new byte[] {1, 2, 3});
+        DxDeduplicator deduplicator = new TestableDxDeduplicator(file);
+        assertFalse(deduplicator.isDelivered(mockRun("app", 1, 1000)));
+    }
+
+    @Test
+    public void testBloomFilterFalsePositiveRate() {
+        DxDeduplicator.BloomFilter filter = new DxDeduplicator.BloomFilter(10_000, 1e-4);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("job #" + i + "@" + (1700000000000L + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("job #" + i + "@" + (1700000000000L + i)));
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain("job #" + i + "@" + (1700000000000L + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 50);
+    }
+
+    private static Run<?, ?> mockRun(String jobName, int number, long timestamp) {
+        Run<?, ?> run = mock(Run.class);
+        Job<?, ?> job = mock(Job.class);
+        doReturn(jobName).when(job).getFullName();
+        doReturn(job).when(run).getParent();
+        doReturn(number).when(run).getNumber();
+        doReturn(timestamp).when(run).getTimeInMillis();
+        return run;
+    }
+
+    private static class TestableDxDeduplicator extends DxDeduplicator {
+
+        TestableDxDeduplicator(File file) {
+            super(file);
+        }
+
+        @Override
+        void scheduleSave() {}
+    }
+}
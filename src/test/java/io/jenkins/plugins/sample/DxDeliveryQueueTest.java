@@ -0,0 +1,55 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/** Tests for the batching stage of DxDeliveryQueue. */
+public class DxDeliveryQueueTest {
+
+    @Test
+    public void testFillBatchStopsAtBatchSize() throws Exception {
+        BlockingQueue<DxEvent> source = new ArrayBlockingQueue<>(10);
+        for (int i = 0; i < 5; i++) {
+            source.add(new DxEvent("{\"n\":" + i + "}", null));
+        }
+        List<DxEvent> batch = new ArrayList<>();
+        batch.add(source.take());
+
+        DxDeliveryQueue.fillBatch(source, batch, 3, 10000);
+
+        assertEquals(3, batch.size());
+        assertEquals(2, source.size());
+    }
+
+    @Test
+    public void testFillBatchFlushesAfterLinger() throws Exception {
+        BlockingQueue<DxEvent> source = new ArrayBlockingQueue<>(10);
+        List<DxEvent> batch = new ArrayList<>();
+        batch.add(new DxEvent("{}", null));
+
+        long start = System.nanoTime();
+        DxDeliveryQueue.fillBatch(source, batch, 50, 100);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(1, batch.size());
+        assertTrue("flushed after " + elapsedMillis + " ms", elapsedMillis >= 90 && elapsedMillis < 5000);
+    }
+
+    @Test
+    public void testBulkBodyWrapsPayloads() {
+        String body = DxDataSender.toBulkBody(Arrays.asList(
+                new DxEvent("{\"reference_id\":\"a #1\"}", null),
+                new DxEvent("{\"reference_id\":\"a #2\"}", null)));
+
+        JSONObject json = new JSONObject(body);
+        assertEquals(2, json.getJSONArray("pipeline_runs").length());
+        assertEquals("a #2", json.getJSONArray("pipeline_runs").getJSONObject(1).getString("reference_id"));
+    }
+}
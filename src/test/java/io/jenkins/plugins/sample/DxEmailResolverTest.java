@@ -0,0 +1,138 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/** Tests for the committer email cache and changelog scan. */
+public class DxEmailResolverTest {
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        TestableResolver resolver = new TestableResolver();
+        AtomicInteger lookups = new AtomicInteger();
+
+        assertEquals("a@example.com", resolver.resolve("alice", () -> lookup(lookups, "a@example.com"), 60, 10));
+        resolver.now += TimeUnit.SECONDS.toNanos(59);
+        assertEquals("a@example.com", resolver.resolve("alice", () -> lookup(lookups, "a@example.com"), 60, 10));
+        assertEquals(1, lookups.get());
+
+        resolver.now += TimeUnit.SECONDS.toNanos(1);
+        assertEquals("a@example.com", resolver.resolve("alice", () -> lookup(lookups, "a@example.com"), 60, 10));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testUnresolvableUsersAreCached() {
+        TestableResolver resolver = new TestableResolver();
+        AtomicInteger lookups = new AtomicInteger();
+
+        assertNull(resolver.resolve("bob", () -> lookup(lookups, ""), 60, 10));
+        assertNull(resolver.resolve("bob", () -> lookup(lookups, null), 60, 10));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        TestableResolver resolver = new TestableResolver();
+        AtomicInteger lookups = new AtomicInteger();
+        resolver.resolve("a", () -> lookup(lookups, "a@example.com"), 60, 2);
+        resolver.resolve("b", () -> lookup(lookups, "b@example.com"), 60, 2);
+        resolver.resolve("a", () -> lookup(lookups, "a@example.com"), 60, 2);
+
+        resolver.resolve("c", () -> lookup(lookups, "c@example.com"), 60, 2);
+        assertEquals(2, resolver.size());
+        assertEquals(3, lookups.get());
+
+        resolver.resolve("a", () -> lookup(lookups, "a@example.com"), 60, 2);
+        assertEquals(3, lookups.get());
+        resolver.resolve("b", () -> lookup(lookups, "b@example.com"), 60, 2);
+        assertEquals(4, lookups.get());
+    }
+
+    @Test
+    public void testShrinkingTheBoundTrimsImmediately() {
+        TestableResolver resolver = new TestableResolver();
+        AtomicInteger lookups = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            String id = "user" + i;
+            resolver.resolve(id, () -> lookup(lookups, id + "@example.com"), 60, 10);
+        }
+
+        resolver.resolve("user4", () -> lookup(lookups, "user4@example.com"), 60, 2);
+
+        assertEquals(2, resolver.size());
+        assertEquals(5, lookups.get());
+        resolver.resolve("user3", () -> lookup(lookups, "user3@example.com"), 60, 2);
+        assertEquals(5, lookups.get());
+    }
+
+    @Test
+    public void testZeroTtlDisablesCaching() {
+        TestableResolver resolver = new TestableResolver();
+        AtomicInteger lookups = new AtomicInteger();
+        resolver.resolve("alice", () -> lookup(lookups, "a@example.com"), 0, 10);
+        resolver.resolve("alice", () -> lookup(lookups, "a@example.com"), 0, 10);
+
+        assertEquals(2, lookups.get());
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    public void testChangelogScanStopsAtCap() {
+        User unknown = mock(User.class);
+        User known = mock(User.class);
+        List<User> resolved = new ArrayList<>();
+        List<ChangeLogSet<ChangeLogSet.Entry>> changeSets =
+                Arrays.asList(changeSet(unknown, null), changeSet(unknown, known));
+
+        String email = DxEmailResolver.firstAuthorEmail(changeSets, 3, user -> {
+            resolved.add(user);
+            return user == known ? "k@example.com" : null;
+        });
+        assertEquals("", email);
+        assertEquals(Arrays.asList(unknown, unknown), resolved);
+
+        assertEquals("k@example.com", DxEmailResolver.firstAuthorEmail(
+                changeSets, 4, user -> user == known ? "k@example.com" : null));
+        assertEquals("", DxEmailResolver.firstAuthorEmail(Collections.emptyList(), 4, user -> "x@example.com"));
+    }
+
+    private static String lookup(AtomicInteger lookups, String email) {
+        lookups.incrementAndGet();
+        return email;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ChangeLogSet<ChangeLogSet.Entry> changeSet(User... authors) {
+        List<ChangeLogSet.Entry> entries = new ArrayList<>();
+        for (User author : authors) {
+            ChangeLogSet.Entry entry = mock(ChangeLogSet.Entry.class);
+            doReturn(author).when(entry).getAuthor();
+            entries.add(entry);
+        }
+        ChangeLogSet<ChangeLogSet.Entry> changeSet = mock(ChangeLogSet.class);
+        doAnswer(invocation -> entries.iterator()).when(changeSet).iterator();
+        return changeSet;
+    }
+
+    private static class TestableResolver extends DxEmailResolver {
+        long now = 1_000_000_000L;
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the NDJSON file sink and the fan-out from the sender to sinks. */
+public class DxFileSinkTest {
+
+    private File directory;
+    private DxGlobalConfiguration config;
+    private TaskListener listener;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dx-events").toFile();
+        config = mock(DxGlobalConfiguration.class);
+        doReturn(true).when(config).isFileSinkEnabled();
+        doReturn(directory.getPath()).when(config).getFileSinkDirectory();
+        doReturn(64).when(config).getFileSinkMaxSegmentMegabytes();
+        doReturn(60).when(config).getFileSinkRotateMinutes();
+        listener = mock(TaskListener.class);
+        doReturn(new PrintStream(new ByteArrayOutputStream())).when(listener).getLogger();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testWritesOneRecordPerLine() throws IOException {
+        TestableDxFileSink sink = new TestableDxFileSink();
+        DxEvent run = new DxEvent("{\"reference_id\":\"app #1\"}", null);
+        DxEvent stage = new DxEvent("{\"stage_id\":\"7\"}", null, DxDataSender.STAGE_SYNC_PATH);
+
+        assertEquals(2, sink.sendBatch(Arrays.asList(run, stage), config, listener).size());
+        assertTrue(sink.send(new DxEvent("{\"reference_id\":\"app #2\"}", null), config, listener));
+        sink.close();
+
+        List<String> lines = readSegments(".ndjson");
+        assertEquals(3, lines.size());
+        JSONObject first = new JSONObject(lines.get(0));
+        assertEquals(DxDataSender.SYNC_PATH, first.getString("path"));
+        assertEquals("app #1", first.getJSONObject("payload").getString("reference_id"));
+        assertEquals(DxDataSender.STAGE_SYNC_PATH, new JSONObject(lines.get(1)).getString("path"));
+    }
+
+    @Test
+    public void testRotatesByAgeAndCompressesClosedSegments() throws IOException {
+        doReturn(true).when(config).isFileSinkGzip();
+        TestableDxFileSink sink = new TestableDxFileSink();
+
+        sink.send(new DxEvent("{\"n\":1}", null), config, listener);
+        sink.now += TimeUnit.MINUTES.toMillis(61);
+        sink.send(new DxEvent("{\"n\":2}", null), config, listener);
+
+        assertEquals(1, readSegments(".ndjson.gz").size());
+        assertEquals(1, readSegments(".ndjson").size());
+        assertEquals(1, new JSONObject(readSegments(".ndjson.gz").get(0)).getJSONObject("payload").getInt("n"));
+    }
+
+    @Test
+    public void testRollsAnIdleSegmentByAge() throws IOException {
+        TestableDxFileSink sink = new TestableDxFileSink();
+
+        sink.send(new DxEvent("{\"n\":1}", null), config, listener);
+        sink.rollIfDue(config);
+        assertEquals(1, readSegments(".ndjson").size());
+        sink.now += TimeUnit.MINUTES.toMillis(61);
+        sink.rollIfDue(config);
+        sink.send(new DxEvent("{\"n\":2}", null), config, listener);
+
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".ndjson"));
+        assertNotNull(segments);
+        assertEquals(2, segments.length);
+        assertEquals(2, readSegments(".ndjson").size());
+    }
+
+    @Test
+    public void testSenderFansOutToSinksWithoutApi() {
+        DxEventSink accepting = mock(DxEventSink.class);
+        DxEventSink rejecting = mock(DxEventSink.class);
+        DxEventSink disabled = mock(DxEventSink.class);
+        doReturn(true).when(accepting).isEnabled(config);
+        doReturn(true).when(rejecting).isEnabled(config);
+        DxEvent first = new DxEvent("{\"n\":1}", mock(Run.class));
+        DxEvent second = new DxEvent("{\"n\":2}", mock(Run.class));
+        doReturn(Arrays.asList(first, second)).when(accepting).sendBatch(anyList(), any(), any());
+        doReturn(Collections.singletonList(second)).when(rejecting).sendBatch(anyList(), any(), any());
+
+        DxDataSender sender = new DxDataSender(config, listener) {
+            @Override
+            List<? extends DxEventSink> getSinks() {
+                return Arrays.asList(accepting, rejecting, disabled);
+            }
+        };
+
+        assertEquals(Collections.singletonList(second), sender.sendBatch(Arrays.asList(first, second)));
+    }
+
+    private List<String> readSegments(String suffix) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        assertNotNull(files);
+        Arrays.sort(files);
+        List<String> lines = new ArrayList<>();
+        for (File file : files) {
+            try (InputStream in = suffix.endsWith(".gz")
+                    ? new GZIPInputStream(Files.newInputStream(file.toPath()))
+                    : Files.newInputStream(file.toPath())) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) > 0) {
+                    out.write(chunk, 0, read);
+                }
+                for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+                    if (!line.isEmpty()) {
+                        lines.add(line);
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static class TestableDxFileSink extends DxFileSink {
+        long now = 1_700_000_000_000L;
+
+        @Override
+        long now() {
+            return now;
+        }
+
+        @Override
+        void compressLater(File segment) {
+            compress(segment);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/** Tests for the rate limit, adaptive concurrency limit and Retry-After handling. */
+public class DxFlowControlTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final AtomicLong now = new AtomicLong();
+    private final DxFlowControl flowControl = new DxFlowControl(now::get);
+
+    @Test
+    public void testTokenBucketRefillsAtConfiguredRate() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(flowControl.acquire(2, 3, 100, 0));
+        }
+        assertFalse(flowControl.acquire(2, 3, 100, 0));
+        assertEquals(1, flowControl.getTimeoutCount());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(flowControl.acquire(2, 3, 100, 0));
+        assertFalse(flowControl.acquire(2, 3, 100, 0));
+    }
+
+    @Test
+    public void testConcurrencyLimitHalvesOnThrottlingAndRecovers() throws InterruptedException {
+        for (int i = 0; i < 8; i++) {
+            assertTrue(flowControl.acquire(0, 1, 8, 0));
+        }
+        assertFalse(flowControl.acquire(0, 1, 8, 0));
+
+        flowControl.complete(429, -1, LATENCY, 8);
+        assertEquals(4, flowControl.getConcurrencyLimit());
+        // a burst of throttled responses only halves the limit once
+        flowControl.complete(503, -1, LATENCY, 8);
+        assertEquals(4, flowControl.getConcurrencyLimit());
+        assertEquals(2, flowControl.getThrottledCount());
+
+        for (int i = 0; i < 6; i++) {
+            flowControl.complete(200, -1, LATENCY, 8);
+        }
+        assertEquals(0, flowControl.getInFlight());
+        assertTrue(flowControl.getConcurrencyLimit() > 4);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(flowControl.acquire(0, 1, 8, 0));
+            flowControl.complete(200, -1, LATENCY, 8);
+        }
+        assertEquals(8, flowControl.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testSlowResponsesDoNotRaiseLimit() throws InterruptedException {
+        assertTrue(flowControl.acquire(0, 1, 8, 0));
+        flowControl.complete(200, -1, LATENCY, 8);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(flowControl.acquire(0, 1, 8, 0));
+        flowControl.complete(429, -1, LATENCY, 8);
+        assertEquals(4, flowControl.getConcurrencyLimit());
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(flowControl.acquire(0, 1, 8, 0));
+            flowControl.complete(200, -1, LATENCY * 10, 8);
+        }
+        assertEquals(4, flowControl.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testRetryAfterPausesAllRequests() throws InterruptedException {
+        assertTrue(flowControl.acquire(0, 1, 8, 0));
+        flowControl.complete(429, 2000, LATENCY, 8);
+        assertFalse(flowControl.acquire(0, 1, 8, 0));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1999));
+        assertFalse(flowControl.acquire(0, 1, 8, 0));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(flowControl.acquire(0, 1, 8, 0));
+    }
+
+    @Test
+    public void testTryAcquireNeverWaits() throws InterruptedException {
+        assertTrue(flowControl.tryAcquire(0, 1, 1));
+        assertFalse(flowControl.tryAcquire(0, 1, 1));
+        flowControl.complete(429, 60_000, LATENCY, 1);
+
+        long start = System.nanoTime();
+        assertFalse(flowControl.tryAcquire(0, 1, 1));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, flowControl.getTimeoutCount());
+        assertEquals(0, flowControl.getInFlight());
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertTrue(flowControl.tryAcquire(0, 1, 1));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(120000, DxHttpTransport.parseRetryAfter("120", 0));
+        assertEquals(0, DxHttpTransport.parseRetryAfter("-5", 0));
+        assertEquals(30000, DxHttpTransport.parseRetryAfter("Thu, 01 Jan 1970 00:00:30 GMT", 0));
+        assertEquals(-1, DxHttpTransport.parseRetryAfter("soon", 0));
+        assertEquals(-1, DxHttpTransport.parseRetryAfter(null, 0));
+    }
+}
@@ -0,0 +1,72 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+import net.sf.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.stapler.StaplerRequest;
+import org.mockito.Answers;
+
+/** Tests for saving the global configuration and publishing its snapshot. */
+public class DxGlobalConfigurationTest {
+
+    private DxGlobalConfiguration config;
+
+    @Before
+    public void setUp() {
+        // real methods without the constructor, which loads the configuration file from JENKINS_HOME
+        config = mock(DxGlobalConfiguration.class, withSettings().defaultAnswer(Answers.CALLS_REAL_METHODS));
+        doNothing().when(config).persist();
+    }
+
+    @Test
+    public void testFormSubmissionSavesOnceAndPublishesOneSnapshot() throws Exception {
+        config.setDxBaseUrl("https://dx.example.com");
+        DxConfigSnapshot before = config.getSnapshot();
+        StaplerRequest req = mock(StaplerRequest.class);
+        JSONObject json = new JSONObject();
+        doAnswer(invocation -> {
+                    config.setDxBaseUrl("https://dx2.example.com");
+                    assertSame(before, config.getSnapshot());
+                    config.setRepositoryDenylist("legacy-*");
+                    assertSame(before, config.getSnapshot());
+                    return null;
+                })
+                .when(req)
+                .bindJSON(same(config), same(json));
+
+        assertTrue(config.configure(req, json));
+
+        verify(config, times(2)).persist();
+        DxConfigSnapshot after = config.getSnapshot();
+        assertNotSame(before, after);
+        assertEquals(
+                "https://dx2.example.com/api/pipelineRuns.sync",
+                after.getEndpoint(DxDataSender.SYNC_PATH).toString());
+        assertTrue(after.getRepositoryFilter().isDenylisted("legacy-app"));
+        assertFalse(before.getRepositoryFilter().isDenylisted("legacy-app"));
+    }
+
+    @Test
+    public void testSaveReplacesTheSnapshot() {
+        config.setDxBaseUrl("https://dx.example.com");
+        DxConfigSnapshot first = config.getSnapshot();
+        assertSame(first, config.getSnapshot());
+        assertTrue(first.isApiConfigured());
+
+        config.setDxBaseUrl(null);
+
+        DxConfigSnapshot second = config.getSnapshot();
+        assertNotSame(first, second);
+        assertFalse(second.isApiConfigured());
+        assertSame(second, config.getSnapshot());
+    }
+}
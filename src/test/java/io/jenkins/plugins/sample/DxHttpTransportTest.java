@@ -0,0 +1,118 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.http.client.utils.DateUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the pooled DX HTTP client. */
+public class DxHttpTransportTest {
+
+    private HttpServer server;
+    private final List<String> encodings = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(DxDataSender.SYNC_PATH, exchange -> {
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            encodings.add(String.valueOf(encoding));
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders("gzip".equals(encoding) ? 415 : 200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        long now = 1_700_000_000_000L;
+        assertEquals(120_000, DxHttpTransport.parseRetryAfter(" 120 ", now));
+        assertEquals(0, DxHttpTransport.parseRetryAfter("-5", now));
+        assertEquals(30_000, DxHttpTransport.parseRetryAfter(DateUtils.formatDate(new Date(now + 30_000)), now));
+        assertEquals(0, DxHttpTransport.parseRetryAfter(DateUtils.formatDate(new Date(now - 30_000)), now));
+        assertEquals(-1, DxHttpTransport.parseRetryAfter("soon", now));
+        assertEquals(-1, DxHttpTransport.parseRetryAfter("", now));
+        assertEquals(-1, DxHttpTransport.parseRetryAfter(null, now));
+    }
+
+    @Test
+    public void testIdempotencyKeyHeaderValue() {
+        assertEquals("folder/app #42", DxHttpTransport.headerValue("folder/app #42"));
+        assertEquals("caf%C3%A9 #1", DxHttpTransport.headerValue("caf\u00e9 #1"));
+        assertEquals("100%25 #2", DxHttpTransport.headerValue("100% #2"));
+    }
+
+    @Test
+    public void testGzipRejectionFallsBackToPlainBodies() throws IOException {
+        DxHttpTransport transport = new DxHttpTransport();
+        DxConfigSnapshot config = snapshot(true, 5000);
+        URI endpoint = URI.create(baseUrl() + DxDataSender.SYNC_PATH);
+
+        DxHttpTransport.Response rejected = transport.post(config, endpoint, "token", "{}", null, false);
+        assertEquals(415, rejected.getCode());
+        assertTrue(rejected.isGzipRejected());
+        assertEquals(200, transport.post(config, endpoint, "token", "{}", null, true).getCode());
+        assertEquals(200, transport.post(config, endpoint, "token", "{}", null, false).getCode());
+
+        assertEquals(3, encodings.size());
+        assertEquals("gzip", encodings.get(0));
+        assertEquals("null", encodings.get(1));
+        assertEquals("null", encodings.get(2));
+        transport.close();
+    }
+
+    @Test
+    public void testRebuiltClientIsClosedOnlyAfterInFlightRequests() throws IOException {
+        DxHttpTransport transport = new DxHttpTransport();
+        DxHttpTransport.PooledClient first = transport.lease(snapshot(false, 5000).getHttpSettings());
+
+        DxHttpTransport.PooledClient second = transport.lease(snapshot(false, 6000).getHttpSettings());
+        assertNotSame(first, second);
+        assertFalse(first.isClosed());
+
+        // new requests use the new client while the retired one waits for its last request
+        URI endpoint = URI.create(baseUrl() + DxDataSender.SYNC_PATH);
+        assertEquals(200, transport.post(snapshot(false, 6000), endpoint, "token", "{}", null, false).getCode());
+        transport.release(first);
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+
+        transport.release(second);
+        assertFalse(second.isClosed());
+        transport.close();
+        assertTrue(second.isClosed());
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static DxConfigSnapshot snapshot(boolean gzip, int readTimeoutMillis) {
+        DxGlobalConfiguration config = mock(DxGlobalConfiguration.class);
+        doReturn(gzip).when(config).isGzipRequests();
+        doReturn(5000).when(config).getConnectTimeoutMillis();
+        doReturn(readTimeoutMillis).when(config).getReadTimeoutMillis();
+        doReturn(4).when(config).getMaxConnections();
+        doReturn(4).when(config).getMaxConnectionsPerRoute();
+        doReturn(30).when(config).getIdleConnectionTimeoutSeconds();
+        return DxConfigSnapshot.of(config);
+    }
+}
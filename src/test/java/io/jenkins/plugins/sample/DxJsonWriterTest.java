@@ -0,0 +1,97 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/** Tests for payload serialization and request body encoding. */
+public class DxJsonWriterTest {
+
+    @Test
+    public void testWriterProducesValidJson() {
+        String json = DxJsonWriter.object()
+                .field("pipeline_name", "folder/\"quoted\" job")
+                .field("started_at", 1700000000L)
+                .field("email", null)
+                .fieldIfNotEmpty("pr_number", "")
+                .field("source_url", "line\nbreak\ttab\\slash\u0001\u2028")
+                .field("repository", "r\u00e9po-\u2713")
+                .toJson();
+
+        JSONObject parsed = new JSONObject(json);
+        assertEquals("folder/\"quoted\" job", parsed.getString("pipeline_name"));
+        assertEquals(1700000000L, parsed.getLong("started_at"));
+        assertFalse(parsed.has("email"));
+        assertFalse(parsed.has("pr_number"));
+        assertEquals("line\nbreak\ttab\\slash\u0001\u2028", parsed.getString("source_url"));
+        assertEquals("r\u00e9po-\u2713", parsed.getString("repository"));
+    }
+
+    @Test
+    public void testWriterIsReusableOnSameThread() {
+        DxJsonWriter.object().field("a", "first").toJson();
+        assertEquals("{\"b\":2}", DxJsonWriter.object().field("b", 2).toJson());
+    }
+
+    @Test
+    public void testNestedObjectsUseSeparateBuffers() {
+        DxJsonWriter outer = DxJsonWriter.object().field("name", "outer");
+        String inner = DxJsonWriter.object()
+                .field("p50", 10)
+                .rawField("deeper", DxJsonWriter.object().field("x", true).toJson())
+                .toJson();
+        String json = outer.rawField("inner", inner).toJson();
+
+        assertEquals("{\"name\":\"outer\",\"inner\":{\"p50\":10,\"deeper\":{\"x\":true}}}", json);
+        assertEquals("{\"n\":1}", DxJsonWriter.object().field("n", 1).toJson());
+    }
+
+    @Test
+    public void testEntityEncodesPlainAndGzipBodies() throws IOException {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            large.append("\u00fc\u20ac\ud83d\ude00");
+        }
+        String json = DxJsonWriter.object().field("value", large.toString()).toJson();
+        byte[] expected = json.getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        DxJsonEntity entity = new DxJsonEntity(json, false);
+        entity.writeTo(plain);
+        assertArrayEquals(expected, plain.toByteArray());
+        assertEquals(expected.length, entity.getContentLength());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        DxJsonEntity gzipEntity = new DxJsonEntity(json, true);
+        gzipEntity.writeTo(compressed);
+        assertEquals("gzip", gzipEntity.getContentEncoding().getValue());
+        assertArrayEquals(expected, gunzip(compressed.toByteArray()));
+
+        assertArrayEquals(expected, read(entity.getContent()));
+        assertArrayEquals(expected, gunzip(read(gzipEntity.getContent())));
+        assertArrayEquals(expected, read(entity.getContent()));
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        return read(new GZIPInputStream(new ByteArrayInputStream(data)));
+    }
+
+    private static byte[] read(InputStream stream) throws IOException {
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
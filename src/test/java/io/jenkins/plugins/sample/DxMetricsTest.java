@@ -0,0 +1,89 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Tests for the latency histogram and the Prometheus exposition. */
+public class DxMetricsTest {
+
+    @Test
+    public void testHistogramBucketsAreContiguous() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int index = DxLatencyHistogram.index(micros);
+            assertTrue(micros < DxLatencyHistogram.upperBoundMicros(index));
+            if (index > 0) {
+                assertTrue(micros >= DxLatencyHistogram.upperBoundMicros(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testHistogramQuantiles() {
+        DxLatencyHistogram histogram = new DxLatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500500), histogram.getSumNanos());
+
+        long p50 = TimeUnit.NANOSECONDS.toMillis(histogram.quantileNanos(0.5));
+        long p99 = TimeUnit.NANOSECONDS.toMillis(histogram.quantileNanos(0.99));
+        assertTrue("p50 " + p50, p50 >= 500 && p50 <= 625);
+        assertTrue("p99 " + p99, p99 >= 990 && p99 <= 1250);
+        assertEquals(0, new DxLatencyHistogram().quantileNanos(0.99));
+
+        // 2^10 microseconds is just over one millisecond
+        assertEquals(1, histogram.countBelowPowerOfTwo(10));
+        assertEquals(1000, histogram.countBelowPowerOfTwo(20));
+    }
+
+    @Test
+    public void testPrometheusExposition() {
+        DxMetrics metrics = new DxMetrics();
+        metrics.record(DxMetrics.Stage.HTTP_REQUEST, TimeUnit.MILLISECONDS.toNanos(250));
+        metrics.recordResponse(202);
+        metrics.recordResponse(429);
+        metrics.recordResponse(503);
+        metrics.recordResponse(DxDataSender.CONNECTION_ERROR);
+        metrics.recordResponse(DxDataSender.SHORT_CIRCUITED);
+        metrics.recordDelivery(3, 1);
+
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("dx_stage_duration_seconds_bucket{stage=\"http_request\",le=\"0.131072\"} 0\n"));
+        assertTrue(text.contains("dx_stage_duration_seconds_bucket{stage=\"http_request\",le=\"0.262144\"} 1\n"));
+        assertTrue(text.contains("dx_stage_duration_seconds_bucket{stage=\"http_request\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("dx_stage_duration_seconds_sum{stage=\"http_request\"} 0.250000000\n"));
+        assertTrue(text.contains("dx_stage_duration_seconds_count{stage=\"payload_build\"} 0\n"));
+        assertTrue(text.contains("dx_http_responses_total{class=\"2xx\"} 1\n"));
+        assertTrue(text.contains("dx_http_responses_total{class=\"4xx\"} 1\n"));
+        assertTrue(text.contains("dx_http_responses_total{class=\"5xx\"} 1\n"));
+        assertTrue(text.contains("dx_http_responses_total{class=\"connection_error\"} 1\n"));
+        assertTrue(text.contains("dx_http_responses_total{class=\"short_circuited\"} 1\n"));
+        assertTrue(text.contains("dx_events_total{outcome=\"accepted\"} 3\n"));
+        assertTrue(text.contains("dx_events_total{outcome=\"failed\"} 1\n"));
+    }
+
+    @Test
+    public void testRunTimingsAreKeptForRecentRuns() {
+        DxMetrics metrics = new DxMetrics();
+        metrics.record("job#1", DxMetrics.Stage.HTTP_REQUEST, TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.record("job#1", DxMetrics.Stage.HTTP_REQUEST, TimeUnit.MICROSECONDS.toNanos(2500));
+        metrics.record("job#1", DxMetrics.Stage.PAYLOAD_BUILD, TimeUnit.MICROSECONDS.toNanos(1250));
+
+        Map<DxMetrics.Stage, Long> timings = metrics.getRunTimings("job#1");
+        assertNotNull(timings);
+        assertEquals("payload_build=1.3ms http_request=12.5ms", DxMetrics.formatTimings(timings));
+
+        for (int i = 2; i <= DxMetrics.RECENT_RUNS + 1; i++) {
+            metrics.record("job#" + i, DxMetrics.Stage.ON_COMPLETED, 1);
+        }
+        assertNull(metrics.getRunTimings("job#1"));
+        assertNotNull(metrics.getRunTimings("job#2"));
+    }
+}
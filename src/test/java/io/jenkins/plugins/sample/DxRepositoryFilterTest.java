@@ -0,0 +1,64 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/** Tests for the compiled repository denylist and allowlist. */
+public class DxRepositoryFilterTest {
+
+    @Test
+    public void testExactAndWildcardEntries() {
+        DxRepositoryFilter filter = DxRepositoryFilter.compile("legacy-app, infra-*\n*-sandbox\nsvc-?-tmp, a*b*c", null);
+
+        assertTrue(filter.isDenylisted("legacy-app"));
+        assertTrue(filter.isDenylisted("Legacy-App"));
+        assertFalse(filter.isDenylisted("legacy-app2"));
+        assertTrue(filter.isDenylisted("infra-"));
+        assertTrue(filter.isDenylisted("infra-terraform"));
+        assertFalse(filter.isDenylisted("infra"));
+        assertTrue(filter.isDenylisted("payments-sandbox"));
+        assertFalse(filter.isDenylisted("sandbox"));
+        assertTrue(filter.isDenylisted("svc-1-tmp"));
+        assertFalse(filter.isDenylisted("svc-12-tmp"));
+        assertTrue(filter.isDenylisted("aXbYc"));
+        assertFalse(filter.isDenylisted("aXbY"));
+        assertFalse(filter.isDenylisted(""));
+    }
+
+    @Test
+    public void testOwnerQualifiedEntries() {
+        DxRepositoryFilter filter = DxRepositoryFilter.compile("acme/secret, contractors/*", null);
+
+        assertTrue(filter.isDenylisted("acme/secret"));
+        assertTrue(filter.isDenylisted("ACME/Secret"));
+        assertFalse(filter.isDenylisted("other/secret"));
+        assertFalse(filter.isDenylisted("secret"));
+        assertTrue(filter.isDenylisted("contractors/anything"));
+
+        DxRepositoryFilter bare = DxRepositoryFilter.compile("secret", null);
+        assertTrue(bare.isDenylisted("acme/secret"));
+        assertTrue(bare.isDenylisted("secret"));
+    }
+
+    @Test
+    public void testAllowlist() {
+        assertTrue(DxRepositoryFilter.compile(null, null).isAllowlisted(""));
+
+        DxRepositoryFilter filter = DxRepositoryFilter.compile("core-legacy", "core-*, acme/tools");
+        assertTrue(filter.isAllowlisted("core-api"));
+        assertTrue(filter.isAllowlisted("acme/tools"));
+        assertFalse(filter.isAllowlisted("other/tools"));
+        assertFalse(filter.isAllowlisted("web"));
+        assertFalse(filter.isAllowlisted(""));
+        assertTrue(filter.isDenylisted("core-legacy"));
+    }
+
+    @Test
+    public void testRepositoryPathExtraction() {
+        assertEquals("acme/widgets", DxRunListener.extractRepositoryPath("https://github.com/acme/widgets.git"));
+        assertEquals("acme/widgets", DxRunListener.extractRepositoryPath("git@github.com:acme/widgets.git"));
+        assertEquals("widgets", DxRunListener.extractRepositoryPath("widgets"));
+        assertEquals("", DxRunListener.extractRepositoryPath(""));
+    }
+}
@@ -0,0 +1,190 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/** Tests for per-window rollups of high-volume jobs and the duration sketch they carry. */
+public class DxRollupAggregatorTest {
+
+    private static final long WINDOW = TimeUnit.MINUTES.toMillis(15);
+    private static final long START = 1_700_000_100_000L - 1_700_000_100_000L % WINDOW;
+
+    @Test
+    public void testRollupIsFlushedWhenItsWindowEnds() {
+        CapturingAggregator aggregator = new CapturingAggregator(10, 10);
+        Run<?, ?> run = mockRun("pr-validation/api");
+        aggregator.record(run, scm("PR-1"), "success", 60_000, WINDOW, START + 1);
+        aggregator.record(run, scm("PR-1"), "failure", 120_000, WINDOW, START + 2);
+        aggregator.record(run, scm("main"), "success", 90_000, WINDOW, START + 3);
+
+        aggregator.flush(null, START + WINDOW - 1);
+        assertTrue(aggregator.events.isEmpty());
+        aggregator.flush(null, START + WINDOW);
+
+        assertEquals(1, aggregator.events.size());
+        DxEvent event = aggregator.events.get(0);
+        assertEquals(DxDataSender.ROLLUP_SYNC_PATH, event.getPath());
+        assertSame(run, event.getRun());
+        JSONObject rollup = new JSONObject(event.getPayload());
+        assertEquals("pr-validation/api", rollup.getString("pipeline_name"));
+        assertEquals(START / 1000, rollup.getLong("window_start"));
+        assertEquals((START + WINDOW) / 1000, rollup.getLong("window_end"));
+        assertEquals(3, rollup.getLong("run_count"));
+        assertEquals(2, rollup.getJSONObject("status_counts").getLong("success"));
+        assertEquals(1, rollup.getJSONObject("status_counts").getLong("failure"));
+        assertEquals(120_000, rollup.getJSONObject("duration_ms").getLong("max"));
+        assertEquals(90_000, rollup.getJSONObject("duration_ms").getLong("p50"), 900);
+        JSONArray branches = rollup.getJSONArray("branches");
+        assertEquals(2, branches.length());
+        assertEquals("PR-1", branches.getJSONObject(0).getString("head_branch"));
+        assertEquals(2, branches.getJSONObject(0).getLong("run_count"));
+        assertEquals(0, aggregator.getOpenRollupCount());
+    }
+
+    @Test
+    public void testMemoryIsBoundedByJobAndBranchLimits() {
+        CapturingAggregator aggregator = new CapturingAggregator(2, 2);
+        assertTrue(aggregator.record(mockRun("a"), scm("main"), "success", 1000, WINDOW, START));
+        assertTrue(aggregator.record(mockRun("b"), scm("main"), "success", 1000, WINDOW, START));
+        assertFalse(aggregator.record(mockRun("c"), scm("main"), "success", 1000, WINDOW, START));
+
+        Run<?, ?> run = mockRun("a");
+        for (int i = 0; i < 5; i++) {
+            aggregator.record(run, scm("feature-" + i), "success", 1000, WINDOW, START);
+        }
+        aggregator.flush(null, START + WINDOW);
+
+        JSONArray branches = new JSONObject(aggregator.events.get(0).getPayload()).getJSONArray("branches");
+        assertEquals(3, branches.length());
+        assertEquals(DxRollupAggregator.OTHER_BRANCHES, branches.getJSONObject(2).getString("head_branch"));
+        assertEquals(4, branches.getJSONObject(2).getLong("run_count"));
+    }
+
+    @Test
+    public void testRunsInANewWindowCloseThePreviousOne() {
+        CapturingAggregator aggregator = new CapturingAggregator(10, 10);
+        Run<?, ?> run = mockRun("app");
+        aggregator.record(run, scm("main"), "success", 1000, WINDOW, START);
+        aggregator.record(run, scm("main"), "cancelled", 1000, WINDOW, START + WINDOW);
+
+        aggregator.flush(null, START + WINDOW + 1);
+        assertEquals(1, aggregator.events.size());
+        aggregator.flush(null, START + 2 * WINDOW);
+        assertEquals(2, aggregator.events.size());
+        JSONObject second = new JSONObject(aggregator.events.get(1).getPayload());
+        assertEquals(1, second.getJSONObject("status_counts").getLong("cancelled"));
+    }
+
+    @Test
+    public void testOpenWindowIsFlushedOnShutdown() {
+        CapturingAggregator aggregator = new CapturingAggregator(10, 10);
+        aggregator.record(mockRun("app"), scm("main"), "success", 1000, WINDOW, START);
+
+        aggregator.flush(null, Long.MAX_VALUE, true);
+
+        assertEquals(1, aggregator.events.size());
+        assertTrue(aggregator.shutdown);
+        assertEquals(0, aggregator.getOpenRollupCount());
+    }
+
+    @Test
+    public void testRollupsAreSpooledBeforeTheyAreQueued() {
+        DxGlobalConfiguration config = mock(DxGlobalConfiguration.class);
+        doReturn(true).when(config).isConfigured();
+        doReturn(true).when(config).isSpoolEnabled();
+        DxSpool spool = mock(DxSpool.class);
+        DxDeliveryQueue queue = mock(DxDeliveryQueue.class);
+        doReturn(true).when(queue).submit(any(DxEvent.class), same(config));
+        DxRollupAggregator aggregator = new DxRollupAggregator(10, 10) {
+            @Override
+            DxSpool getSpool() {
+                return spool;
+            }
+
+            @Override
+            DxDeliveryQueue getDeliveryQueue() {
+                return queue;
+            }
+        };
+        DxEvent event = new DxEvent("{}", mockRun("app"), DxDataSender.ROLLUP_SYNC_PATH);
+
+        assertTrue(aggregator.deliver(event, config, false));
+
+        InOrder order = inOrder(spool, queue);
+        order.verify(spool).append(event);
+        order.verify(queue).submit(event, config);
+        verify(spool, never()).release(any(DxEvent.class));
+    }
+
+    @Test
+    public void testJobSelectorMatchesJobsAndFolders() {
+        DxRollupAggregator.JobSelector selector =
+                DxRollupAggregator.JobSelector.compile("pr-validation/, nightly/*\nstandalone");
+
+        assertTrue(selector.matches("pr-validation/api/PR-12"));
+        assertTrue(selector.matches("nightly/build"));
+        assertTrue(selector.matches("standalone"));
+        assertFalse(selector.matches("standalone-2"));
+        assertFalse(selector.matches("pr-validation-old/api"));
+        assertFalse(DxRollupAggregator.JobSelector.compile(null).matches("standalone"));
+    }
+
+    @Test
+    public void testSketchQuantilesAndMerge() {
+        DxDurationSketch first = new DxDurationSketch();
+        DxDurationSketch second = new DxDurationSketch();
+        for (long millis = 1; millis <= 10_000; millis++) {
+            (millis % 2 == 0 ? first : second).record(millis);
+        }
+        first.merge(second);
+
+        assertEquals(10_000, first.getCount());
+        assertEquals(5_000, first.quantile(0.5), 5_000 * DxDurationSketch.RELATIVE_ACCURACY + 1);
+        assertEquals(9_900, first.quantile(0.99), 9_900 * DxDurationSketch.RELATIVE_ACCURACY + 1);
+        assertEquals(0, new DxDurationSketch().quantile(0.5));
+    }
+
+    private static DxScmMetadata scm(String branch) {
+        return new DxScmMetadata("https://github.com/acme/api.git", branch, "", "", "abc123");
+    }
+
+    private static Run<?, ?> mockRun(String jobName) {
+        Run<?, ?> run = mock(Run.class);
+        Job<?, ?> job = mock(Job.class);
+        doReturn(jobName).when(job).getFullName();
+        doReturn(job).when(run).getParent();
+        return run;
+    }
+
+    private static class CapturingAggregator extends DxRollupAggregator {
+        final List<DxEvent> events = new ArrayList<>();
+        boolean shutdown;
+
+        CapturingAggregator(int maxJobs, int maxBranches) {
+            super(maxJobs, maxBranches);
+        }
+
+        @Override
+        boolean deliver(DxEvent event, DxGlobalConfiguration config, boolean shutdown) {
+            this.shutdown |= shutdown;
+            events.add(event);
+            return true;
+        }
+    }
+}
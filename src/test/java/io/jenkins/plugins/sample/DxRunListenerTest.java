@@ -1,20 +1,33 @@
 package io.jenkins.plugins.sample;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
 
 import hudson.EnvVars;
+import hudson.model.Computer;
+import hudson.model.Executor;
 import hudson.model.Job;
+import hudson.model.Label;
+import hudson.model.OneOffExecutor;
+import hudson.model.Queue;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.json.JSONObject;
 import org.junit.Before;
@@ -57,7 +70,7 @@ public class DxRunListenerTest {
 
     @Test
     public void testOnCompletedSendsEventsForSuccessFailureAndAborted() throws Exception {
-        DxRunListener listener = new TestableDxRunListener(config, sender);
+        TestableDxRunListener listener = new TestableDxRunListener(config, sender);
 
         Run<?, ?> successRun = mockRun(Result.SUCCESS, taskListener);
         Run<?, ?> failureRun = mockRun(Result.FAILURE, taskListener);
@@ -67,13 +80,222 @@ public class DxRunListenerTest {
         listener.onCompleted(failureRun, taskListener);
         listener.onCompleted(abortedRun, taskListener);
 
-        ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<Object> runCaptor = ArgumentCaptor.forClass(Object.class);
+        ArgumentCaptor<DxEvent> eventCaptor = ArgumentCaptor.forClass(DxEvent.class);
 
-        verify(sender, times(3)).send(payloadCaptor.capture(), runCaptor.capture());
-        assertEquals(Arrays.asList(successRun, failureRun, abortedRun), runCaptor.getAllValues());
-        assertEquals(Arrays.asList("success", "failure", "cancelled"), extractStatuses(payloadCaptor.getAllValues()));
-        assertEquals(Arrays.asList("jenkins", "jenkins", "jenkins"), extractPipelineSources(payloadCaptor.getAllValues()));
+        verify(sender, times(3)).send(eventCaptor.capture());
+        List<Run<?, ?>> runs = new ArrayList<>();
+        List<String> payloads = new ArrayList<>();
+        for (DxEvent event : eventCaptor.getAllValues()) {
+            runs.add(event.getRun());
+            payloads.add(event.getPayload());
+        }
+        assertEquals(Arrays.asList(successRun, failureRun, abortedRun), runs);
+        assertEquals(Arrays.asList("success", "failure", "cancelled"), extractStatuses(payloads));
+        assertEquals(Arrays.asList("jenkins", "jenkins", "jenkins"), extractPipelineSources(payloads));
+        assertEquals(3, listener.metrics.getHistogram(DxMetrics.Stage.PAYLOAD_BUILD).getCount());
+        assertEquals(3, listener.metrics.getHistogram(DxMetrics.Stage.ON_COMPLETED).getCount());
+    }
+
+    @Test
+    public void testOnCompletedQueuesEventWhenAsyncDeliveryEnabled() throws Exception {
+        DxDeliveryQueue queue = mock(DxDeliveryQueue.class);
+        doReturn(true).when(config).isAsyncDelivery();
+        doReturn(true).when(queue).submit(any(DxEvent.class), same(config));
+        DxRunListener listener = new TestableDxRunListener(config, sender, queue);
+
+        Run<?, ?> run = mockRun(Result.SUCCESS, taskListener);
+        listener.onCompleted(run, taskListener);
+
+        ArgumentCaptor<DxEvent> eventCaptor = ArgumentCaptor.forClass(DxEvent.class);
+        verify(queue).submit(eventCaptor.capture(), same(config));
+        verify(sender, never()).send(any(DxEvent.class));
+        assertSame(run, eventCaptor.getValue().getRun());
+        assertEquals("success", new JSONObject(eventCaptor.getValue().getPayload()).optString("status"));
+    }
+
+    @Test
+    public void testSyncDeliveryMakesOneAttemptAndQueuesTransientFailures() throws Exception {
+        DxDeliveryQueue queue = mock(DxDeliveryQueue.class);
+        doReturn(true).when(queue).offer(any(DxEvent.class), same(config));
+        doReturn(true).when(sender).isDeferrable();
+        DxRunListener listener = new TestableDxRunListener(config, sender, queue);
+
+        Run<?, ?> run = mockRun(Result.SUCCESS, taskListener);
+        listener.onCompleted(run, taskListener);
+
+        verify(sender).setSingleAttempt(true);
+        verify(sender).send(any(DxEvent.class));
+        ArgumentCaptor<DxEvent> eventCaptor = ArgumentCaptor.forClass(DxEvent.class);
+        verify(queue).offer(eventCaptor.capture(), same(config));
+        assertSame(run, eventCaptor.getValue().getRun());
+        verify(queue, never()).submit(any(DxEvent.class), any());
+    }
+
+    @Test
+    public void testSyncDeliveryDoesNotQueuePermanentFailures() throws Exception {
+        DxDeliveryQueue queue = mock(DxDeliveryQueue.class);
+        DxRunListener listener = new TestableDxRunListener(config, sender, queue);
+
+        listener.onCompleted(mockRun(Result.SUCCESS, taskListener), taskListener);
+
+        verify(queue, never()).offer(any(DxEvent.class), any());
+    }
+
+    @Test
+    public void testPayloadCarriesQueueTimingsAndAgent() throws Exception {
+        TestableDxRunListener listener = new TestableDxRunListener(config, sender);
+        Run<?, ?> run = mockRun(Result.SUCCESS, taskListener);
+        doReturn(7L).when(run).getQueueId();
+        Computer computer = mock(Computer.class);
+        doReturn("linux-1").when(computer).getName();
+        Executor executor = mock(Executor.class);
+        doReturn(computer).when(executor).getOwner();
+        doReturn(executor).when(run).getExecutor();
+
+        Label label = mock(Label.class);
+        doReturn("linux && docker").when(label).getExpression();
+        Queue.WaitingItem waiting = ofJob(mock(Queue.WaitingItem.class));
+        doReturn(7L).when(waiting).getId();
+        doReturn(10_000L).when(waiting).getInQueueSince();
+        doReturn(label).when(waiting).getAssignedLabel();
+        Queue.BuildableItem buildable = ofJob(mock(Queue.BuildableItem.class));
+        doReturn(7L).when(buildable).getId();
+        Queue.LeftItem left = mock(Queue.LeftItem.class);
+        doReturn(7L).when(left).getId();
+        DxQueueTimings timings = new DxQueueTimings() {
+            long now = 15_000L;
+
+            @Override
+            long now() {
+                return now += 2_000L;
+            }
+        };
+        timings.onEnterWaiting(waiting);
+        timings.onEnterBuildable(buildable);
+        timings.onLeft(left);
+
+        JSONObject untimed = new JSONObject(listener.buildPayload(run, taskListener, config));
+        assertEquals("linux-1", untimed.getString("agent"));
+        assertFalse(untimed.has("queued_at"));
+
+        TestableDxRunListener timed = new TestableDxRunListener(config, sender) {
+            @Override
+            DxQueueTimings getQueueTimings() {
+                return timings;
+            }
+        };
+        timed.onCompleted(run, taskListener);
+
+        ArgumentCaptor<DxEvent> eventCaptor = ArgumentCaptor.forClass(DxEvent.class);
+        verify(sender).send(eventCaptor.capture());
+        assertSame(run, eventCaptor.getValue().getRun());
+        JSONObject payload = new JSONObject(eventCaptor.getValue().getPayload());
+        assertEquals(10, payload.getLong("queued_at"));
+        assertEquals(9_000, payload.getLong("queue_duration_ms"));
+        assertEquals(2_000, payload.getLong("executor_wait_ms"));
+        assertEquals("linux && docker", payload.getString("agent_label"));
+        assertNull(timings.get(run));
+    }
+
+    @Test
+    public void testFlyweightExecutorReportsNoAgent() throws Exception {
+        TestableDxRunListener listener = new TestableDxRunListener(config, sender);
+        Run<?, ?> run = mockRun(Result.SUCCESS, taskListener);
+        Computer builtIn = mock(Computer.class);
+        doReturn("").when(builtIn).getName();
+        OneOffExecutor executor = mock(OneOffExecutor.class);
+        doReturn(builtIn).when(executor).getOwner();
+        doReturn(executor).when(run).getExecutor();
+
+        JSONObject payload = new JSONObject(listener.buildPayload(run, taskListener, config));
+
+        assertFalse(payload.has("agent"));
+    }
+
+    @Test
+    public void testScmMetadataIsResolvedOncePerRun() throws Exception {
+        doReturn(true).when(config).isRollupEnabled();
+        doReturn("example").when(config).getRollupJobs();
+        DxRollupAggregator aggregator = mock(DxRollupAggregator.class);
+        DxScmMetadataResolver resolver = spy(new DxScmMetadataResolver(Collections.emptyList()));
+        TestableDxRunListener listener = new TestableDxRunListener(config, sender) {
+            @Override
+            DxScmMetadataResolver getScmMetadataResolver() {
+                return resolver;
+            }
+
+            @Override
+            DxRollupAggregator getRollupAggregator() {
+                return aggregator;
+            }
+        };
+        Run<?, ?> run = mockRun(Result.SUCCESS, taskListener);
+
+        listener.onCompleted(run, taskListener);
+
+        verify(aggregator).record(same(run), any(DxScmMetadata.class), any(), any(DxConfigSnapshot.class));
+        verify(sender).send(any(DxEvent.class));
+        verify(resolver, times(1)).resolve(run, taskListener);
+    }
+
+    @Test
+    public void testCancelledQueueItemsAreForgotten() throws Exception {
+        DxQueueTimings timings = new DxQueueTimings();
+        Queue.WaitingItem waiting = ofJob(mock(Queue.WaitingItem.class));
+        doReturn(3L).when(waiting).getId();
+        Queue.LeftItem cancelled = mock(Queue.LeftItem.class);
+        doReturn(3L).when(cancelled).getId();
+        doReturn(true).when(cancelled).isCancelled();
+
+        timings.onEnterWaiting(waiting);
+        assertEquals(1, timings.size());
+        timings.onLeft(cancelled);
+        assertEquals(0, timings.size());
+    }
+
+    @Test
+    public void testOnlyQueueItemsOfJobsAreTracked() throws Exception {
+        DxQueueTimings timings = new DxQueueTimings();
+        Queue.WaitingItem placeholder = mock(Queue.WaitingItem.class);
+        doReturn(5L).when(placeholder).getId();
+        Field task = Queue.Item.class.getField("task");
+        task.setAccessible(true);
+        task.set(placeholder, mock(Queue.Task.class));
+
+        timings.onEnterWaiting(placeholder);
+
+        assertEquals(0, timings.size());
+    }
+
+    @Test
+    public void testQueueTimingsAreEvictedDownToTheLowWaterMark() throws Exception {
+        DxQueueTimings timings = new DxQueueTimings();
+        Queue.WaitingItem waiting = ofJob(mock(Queue.WaitingItem.class));
+        long[] id = {0};
+        doAnswer(invocation -> id[0]).when(waiting).getId();
+        doAnswer(invocation -> id[0]).when(waiting).getInQueueSince();
+
+        for (id[0] = 1; id[0] <= DxQueueTimings.MAX_TRACKED; id[0]++) {
+            timings.onEnterWaiting(waiting);
+        }
+        assertEquals(DxQueueTimings.MAX_TRACKED, timings.size());
+        timings.onEnterWaiting(waiting);
+
+        assertEquals(DxQueueTimings.LOW_WATER_MARK + 1, timings.size());
+        Run<?, ?> oldest = mock(Run.class);
+        doReturn(1L).when(oldest).getQueueId();
+        assertNull(timings.get(oldest));
+        Run<?, ?> newest = mock(Run.class);
+        doReturn(id[0]).when(newest).getQueueId();
+        assertNotNull(timings.get(newest));
+    }
+
+    /** Sets the task of a mocked queue item to a job, as the queue timings only track those. */
+    private static <T extends Queue.Item> T ofJob(T item) throws Exception {
+        Field task = Queue.Item.class.getField("task");
+        task.setAccessible(true);
+        task.set(item, mock(Job.class, withSettings().extraInterfaces(Queue.Task.class)));
+        return item;
     }
 
     private TaskListener createTaskListener() {
@@ -123,10 +345,19 @@ public class DxRunListenerTest {
     private static class TestableDxRunListener extends DxRunListener {
         private final DxGlobalConfiguration configuration;
         private final DxDataSender sender;
+        private final DxDeliveryQueue queue;
+        private final DxMetrics metrics = new DxMetrics();
+        private final DxScmMetadataResolver scmMetadataResolver = new DxScmMetadataResolver(Collections.emptyList());
+        private final DxQueueTimings queueTimings = new DxQueueTimings();
 
         TestableDxRunListener(DxGlobalConfiguration configuration, DxDataSender sender) {
+            this(configuration, sender, null);
+        }
+
+        TestableDxRunListener(DxGlobalConfiguration configuration, DxDataSender sender, DxDeliveryQueue queue) {
             this.configuration = configuration;
             this.sender = sender;
+            this.queue = queue;
         }
 
         @Override
@@ -138,5 +369,25 @@ public class DxRunListenerTest {
         DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
             return sender;
         }
+
+        @Override
+        DxDeliveryQueue getDeliveryQueue() {
+            return queue;
+        }
+
+        @Override
+        DxMetrics getMetrics() {
+            return metrics;
+        }
+
+        @Override
+        DxScmMetadataResolver getScmMetadataResolver() {
+            return scmMetadataResolver;
+        }
+
+        @Override
+        DxQueueTimings getQueueTimings() {
+            return queueTimings;
+        }
     }
 }
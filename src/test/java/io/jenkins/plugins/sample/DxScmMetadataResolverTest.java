@@ -0,0 +1,158 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import hudson.EnvVars;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMRevisionAction;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for resolving SCM metadata from build actions, the per-job cache and the environment fallback. */
+public class DxScmMetadataResolverTest {
+
+    private TaskListener listener;
+
+    @Before
+    public void setUp() {
+        listener = mock(TaskListener.class);
+        doReturn(new PrintStream(new ByteArrayOutputStream())).when(listener).getLogger();
+    }
+
+    @Test
+    public void testEnvironmentIsReadOncePerJob() throws Exception {
+        DxScmMetadataResolver resolver = new DxScmMetadataResolver(Collections.emptyList());
+        Run<?, ?> first = mockRun("folder/app", "https://github.com/acme/app.git");
+        Run<?, ?> second = mockRun("folder/app", "https://github.com/acme/app.git");
+
+        DxScmMetadata metadata = resolver.resolve(first, listener);
+        assertEquals("https://github.com/acme/app.git", metadata.getRepositoryUrl());
+        assertEquals("app", metadata.getRepositoryName());
+        assertEquals("acme/app", metadata.getRepositoryPath());
+
+        assertEquals("acme/app", resolver.resolve(second, listener).getRepositoryPath());
+        verify(first, times(1)).getEnvironment(any(TaskListener.class));
+        verify(second, never()).getEnvironment(any(TaskListener.class));
+    }
+
+    @Test
+    public void testProvidersAreReadBeforeTheEnvironment() throws Exception {
+        DxScmMetadataProvider failing = mock(DxScmMetadataProvider.class);
+        doThrow(new IllegalStateException("broken")).when(failing).resolve(any());
+        DxScmMetadataProvider git = mock(DxScmMetadataProvider.class);
+        doReturn(new DxScmMetadata("git@github.com:acme/api.git", "origin/main", "", "", "abc123"))
+                .when(git)
+                .resolve(any());
+        DxScmMetadataResolver resolver = new DxScmMetadataResolver(Arrays.asList(failing, git));
+        Run<?, ?> run = mockRun("api", "https://github.com/acme/other.git");
+
+        DxScmMetadata metadata = resolver.resolve(run, listener);
+
+        assertEquals("git@github.com:acme/api.git", metadata.getRepositoryUrl());
+        assertEquals("acme/api", metadata.getRepositoryPath());
+        assertEquals("main", metadata.getBranch());
+        assertEquals("abc123", metadata.getCommit());
+        verify(run, never()).getEnvironment(any(TaskListener.class));
+    }
+
+    @Test
+    public void testRevisionActionTakesPrecedence() throws Exception {
+        DxScmMetadataProvider git = mock(DxScmMetadataProvider.class);
+        doReturn(new DxScmMetadata("https://github.com/acme/api.git", "origin/stale", "", "", "stale"))
+                .when(git)
+                .resolve(any());
+        DxScmMetadataResolver resolver = new DxScmMetadataResolver(Collections.singletonList(git));
+        Run<?, ?> run = mockRun("api/main", "");
+        SCMRevisionAction action = mock(SCMRevisionAction.class);
+        doReturn(new Revision(new SCMHead("refs/heads/main"), "f00d")).when(action).getRevision();
+        doReturn(action).when(run).getAction(SCMRevisionAction.class);
+
+        DxScmMetadata metadata = resolver.resolve(run, listener);
+
+        assertEquals("main", metadata.getBranch());
+        assertEquals("f00d", metadata.getCommit());
+        assertEquals("", metadata.getTargetBranch());
+        assertEquals("https://github.com/acme/api.git", metadata.getRepositoryUrl());
+    }
+
+    @Test
+    public void testMissingRepositoryIsNotCached() throws Exception {
+        DxScmMetadataResolver resolver = new DxScmMetadataResolver(Collections.emptyList());
+        Run<?, ?> failed = mockRun("app", "");
+        Run<?, ?> checkedOut = mockRun("app", "https://github.com/acme/app.git");
+
+        assertEquals("", resolver.resolve(failed, listener).getRepositoryName());
+        assertEquals(0, resolver.size());
+        assertEquals("app", resolver.resolve(checkedOut, listener).getRepositoryName());
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    public void testInvalidateFolder() throws Exception {
+        DxScmMetadataResolver resolver = new DxScmMetadataResolver(Collections.emptyList());
+        resolver.resolve(mockRun("folder/app", "https://github.com/acme/app.git"), listener);
+        resolver.resolve(mockRun("folder/sub/lib", "https://github.com/acme/lib.git"), listener);
+        resolver.resolve(mockRun("folder-two/app", "https://github.com/acme/app.git"), listener);
+
+        resolver.invalidate("folder");
+
+        assertEquals(1, resolver.size());
+        Run<?, ?> moved = mockRun("folder/app", "https://github.com/acme/moved.git");
+        assertEquals("moved", resolver.resolve(moved, listener).getRepositoryName());
+        verify(moved).getEnvironment(any(TaskListener.class));
+    }
+
+    private static Run<?, ?> mockRun(String jobName, String gitUrl) throws Exception {
+        Run<?, ?> run = mock(Run.class);
+        Job<?, ?> job = mock(Job.class);
+        doReturn(jobName).when(job).getFullName();
+        doReturn(job).when(run).getParent();
+        EnvVars env = new EnvVars();
+        if (!gitUrl.isEmpty()) {
+            env.put("GIT_URL", gitUrl);
+        }
+        doReturn(env).when(run).getEnvironment(any(TaskListener.class));
+        return run;
+    }
+
+    private static final class Revision extends SCMRevision {
+        private static final long serialVersionUID = 1L;
+
+        private final String hash;
+
+        Revision(SCMHead head, String hash) {
+            super(head);
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Revision && ((Revision) o).hash.equals(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return hash;
+        }
+    }
+}
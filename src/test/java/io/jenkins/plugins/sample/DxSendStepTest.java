@@ -0,0 +1,201 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/** Tests for the {@code dxSend} Pipeline step. */
+public class DxSendStepTest {
+
+    private static final DxScmMetadata SCM =
+            new DxScmMetadata("https://github.com/acme/api.git", "main", "", "", "abc123");
+
+    private DxGlobalConfiguration config;
+    private DxDeliveryQueue queue;
+    private DxDataSender sender;
+    private Run<?, ?> run;
+    private TaskListener listener;
+    private ByteArrayOutputStream log;
+
+    @Before
+    public void setUp() {
+        config = mock(DxGlobalConfiguration.class);
+        doReturn(true).when(config).isConfigured();
+        doReturn(DxRepositoryFilter.EMPTY).when(config).getRepositoryFilter();
+        queue = mock(DxDeliveryQueue.class);
+        doReturn(true).when(queue).offer(any(DxEvent.class), same(config));
+        sender = mock(DxDataSender.class);
+
+        run = mock(Run.class);
+        Job<?, ?> job = mock(Job.class);
+        doReturn(job).when(run).getParent();
+        doReturn(7).when(run).getNumber();
+        doReturn("deploy/api").when(job).getFullName();
+
+        log = new ByteArrayOutputStream();
+        listener = mock(TaskListener.class);
+        doReturn(new PrintStream(log)).when(listener).getLogger();
+    }
+
+    @Test
+    public void testPayload() {
+        DxSendStep step = new DxSendStep("deployment");
+        step.setName("v1.4.0");
+        step.setEnvironment("production");
+        step.setProperties("{\"service\": \"api\", \"canary\": true}");
+
+        JSONObject event = new JSONObject(DxSendStep.toPayload(step, run, SCM, 1_700_000_000_500L));
+
+        assertEquals("deploy/api", event.getString("pipeline_name"));
+        assertEquals("jenkins", event.getString("pipeline_source"));
+        assertEquals("deploy/api #7", event.getString("reference_id"));
+        assertEquals("deployment", event.getString("event_type"));
+        assertEquals("v1.4.0", event.getString("event_name"));
+        assertEquals("success", event.getString("status"));
+        assertEquals("production", event.getString("environment"));
+        assertEquals(1_700_000_000L, event.getLong("occurred_at"));
+        assertEquals("api", event.getString("repository"));
+        assertEquals("main", event.getString("head_branch"));
+        assertEquals("abc123", event.getString("commit_sha"));
+        assertEquals("api", event.getJSONObject("properties").getString("service"));
+        assertTrue(event.getJSONObject("properties").getBoolean("canary"));
+    }
+
+    @Test
+    public void testOptionalFieldsAreOmitted() {
+        DxSendStep step = new DxSendStep("release");
+        step.setStatus("failure");
+
+        JSONObject event = new JSONObject(DxSendStep.toPayload(step, run, SCM, 0));
+
+        assertEquals("failure", event.getString("status"));
+        assertFalse(event.has("event_name"));
+        assertFalse(event.has("environment"));
+        assertFalse(event.has("properties"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPropertiesFailTheStep() {
+        DxSendStep step = new DxSendStep("deployment");
+        step.setProperties("[1, 2]");
+        DxSendStep.toPayload(step, run, SCM, 0);
+    }
+
+    @Test
+    public void testEventIsQueuedWithoutSending() {
+        TestableExecution execution = new TestableExecution(new DxSendStep("deployment"));
+
+        assertTrue(execution.enqueue(run, listener));
+
+        ArgumentCaptor<DxEvent> event = ArgumentCaptor.forClass(DxEvent.class);
+        verify(queue).offer(event.capture(), same(config));
+        assertEquals(DxDataSender.EVENT_SYNC_PATH, event.getValue().getPath());
+        assertSame(run, event.getValue().getRun());
+        verify(sender, never()).send(anyString(), any(), anyString());
+        assertTrue(log.toString().contains("queued for delivery"));
+    }
+
+    @Test
+    public void testQueuedEventNeverComputesTheEnvironment() throws Exception {
+        doThrow(new AssertionError("environment computed on the CPS VM thread"))
+                .when(run)
+                .getEnvironment(any(TaskListener.class));
+        DxScmMetadataResolver resolver = new DxScmMetadataResolver(Collections.emptyList());
+        TestableExecution execution = new TestableExecution(new DxSendStep("deployment"), resolver);
+
+        assertTrue(execution.enqueue(run, listener));
+
+        ArgumentCaptor<DxEvent> event = ArgumentCaptor.forClass(DxEvent.class);
+        verify(queue).offer(event.capture(), same(config));
+        assertEquals("", new JSONObject(event.getValue().getPayload()).getString("repository"));
+        verify(run, never()).getEnvironment(any(TaskListener.class));
+    }
+
+    @Test
+    public void testFullQueueIsReported() {
+        doReturn(false).when(queue).offer(any(DxEvent.class), same(config));
+
+        assertFalse(new TestableExecution(new DxSendStep("deployment")).enqueue(run, listener));
+        assertTrue(log.toString().contains("queue full"));
+    }
+
+    @Test
+    public void testWaitSendsDirectly() {
+        doReturn(true).when(sender).send(anyString(), same(run), eq(DxDataSender.EVENT_SYNC_PATH));
+        DxSendStep step = new DxSendStep("deployment");
+        step.setWait(true);
+
+        assertTrue(new TestableExecution(step).send(run, listener));
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+    }
+
+    @Test
+    public void testFilteredRepositoryIsSkipped() {
+        doReturn(DxRepositoryFilter.compile("acme/api", "")).when(config).getRepositoryFilter();
+
+        assertFalse(new TestableExecution(new DxSendStep("deployment")).enqueue(run, listener));
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+    }
+
+    @Test
+    public void testUnconfiguredPluginIsSkipped() {
+        doReturn(false).when(config).isConfigured();
+
+        assertFalse(new TestableExecution(new DxSendStep("deployment")).enqueue(run, listener));
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+    }
+
+    private class TestableExecution extends DxSendStep.Execution {
+        private final DxScmMetadataResolver resolver;
+
+        TestableExecution(DxSendStep step) {
+            this(step, mock(DxScmMetadataResolver.class));
+            doReturn(SCM).when(resolver).resolve(any(), any());
+            doReturn(SCM).when(resolver).resolveWithoutEnvironment(any());
+        }
+
+        TestableExecution(DxSendStep step, DxScmMetadataResolver resolver) {
+            super(step, mock(StepContext.class));
+            this.resolver = resolver;
+        }
+
+        @Override
+        DxGlobalConfiguration getConfiguration() {
+            return config;
+        }
+
+        @Override
+        DxDeliveryQueue getDeliveryQueue() {
+            return queue;
+        }
+
+        @Override
+        DxScmMetadataResolver getScmMetadataResolver() {
+            return resolver;
+        }
+
+        @Override
+        DxDataSender createDxDataSender(DxGlobalConfiguration config, TaskListener listener) {
+            return sender;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import hudson.model.Run;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the on-disk DxSpool journal. */
+public class DxSpoolTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dx-spool").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testUnacknowledgedEventsSurviveRestart() {
+        DxSpool spool = new DxSpool(directory);
+        DxEvent first = new DxEvent("{\"reference_id\":\"job #1\"}", null);
+        DxEvent second = new DxEvent("{\"reference_id\":\"job #2\"}", null);
+        DxEvent third = new DxEvent("{\"reference_id\":\"job #3\"}", null);
+        spool.append(first);
+        spool.append(second);
+        spool.append(third);
+        assertTrue(second.isSpooled());
+        assertEquals(3, spool.getPendingCount());
+
+        spool.acknowledge(first);
+        spool.acknowledge(third);
+        spool.acknowledge(third);
+        spool.close();
+
+        assertEquals(1, new DxSpool(directory).getPendingCount());
+    }
+
+    @Test
+    public void testFullyAcknowledgedSegmentsAreCompactedOnLoad() {
+        DxSpool spool = new DxSpool(directory);
+        DxEvent event = new DxEvent("{}", null);
+        spool.append(event);
+        spool.acknowledge(event);
+        spool.close();
+        assertTrue(new File(directory, "segment-0.log").exists());
+
+        assertEquals(0, new DxSpool(directory).getPendingCount());
+        assertFalse(new File(directory, "segment-0.log").exists());
+        assertFalse(new File(directory, "segment-0.ack").exists());
+    }
+
+    @Test
+    public void testRecordsKeepThePathOfOtherEvents() {
+        DxEvent rollup = DxSpool.fromRecord(
+                DxSpool.toRecord(new DxEvent("{\"run_count\":3}", null, DxDataSender.ROLLUP_SYNC_PATH)), null);
+        assertEquals(DxDataSender.ROLLUP_SYNC_PATH, rollup.getPath());
+        assertEquals("{\"run_count\":3}", rollup.getPayload());
+
+        DxEvent run = DxSpool.fromRecord(DxSpool.toRecord(new DxEvent("{\"a\":\"b\tc\"}", null)), null);
+        assertTrue(run.isRunEvent());
+        assertEquals("{\"a\":\"b\tc\"}", run.getPayload());
+    }
+
+    @Test
+    public void testReplayDropsRejectedEventsAndDeliversTheRest() {
+        Run<?, ?> run = mock(Run.class);
+        doReturn("app#1").when(run).getExternalizableId();
+        DxSpool before = new DxSpool(directory);
+        before.append(new DxEvent("{\"reference_id\":\"bad\"}", run));
+        before.append(new DxEvent("{\"reference_id\":\"good\"}", run));
+        before.close();
+        DxSpool spool = new DxSpool(directory) {
+            @Override
+            Run<?, ?> lookupRun(String externalizableId) {
+                return run;
+            }
+        };
+
+        DxDataSender sender = mock(DxDataSender.class);
+        doReturn(false).when(sender).send(argThat((DxEvent event) -> event.getPayload().contains("bad")));
+        doReturn(true).when(sender).send(argThat((DxEvent event) -> event.getPayload().contains("good")));
+        doReturn(true).when(sender).isRejected();
+        doReturn(400).when(sender).getLastResponseCode();
+
+        assertTrue(spool.replay(sender));
+        verify(sender).send(argThat((DxEvent event) -> event.getPayload().contains("good") && event.getRun() == run));
+        assertEquals(0, spool.getPendingCount());
+    }
+}
@@ -0,0 +1,286 @@
+package io.jenkins.plugins.sample;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.Collections;
+import java.util.List;
+import org.jenkinsci.plugins.workflow.actions.ErrorAction;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.actions.TagsAction;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.actions.WarningAction;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowEndNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/** Tests for streaming stage events from flow-graph notifications. */
+public class DxStageListenerTest {
+
+    private DxGlobalConfiguration config;
+    private DxDeliveryQueue queue;
+    private DxScmMetadataProvider provider;
+    private Run<?, ?> run;
+    private FlowExecution execution;
+    private TestableDxStageListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        config = mock(DxGlobalConfiguration.class);
+        doReturn(true).when(config).isConfigured();
+        doReturn(true).when(config).isStageEvents();
+        doReturn(DxRepositoryFilter.EMPTY).when(config).getRepositoryFilter();
+        queue = mock(DxDeliveryQueue.class);
+        doReturn(true).when(queue).offer(any(DxEvent.class), same(config));
+
+        provider = mock(DxScmMetadataProvider.class);
+        run = mock(Run.class, withSettings().extraInterfaces(Queue.Executable.class));
+        Job<?, ?> job = mock(Job.class);
+        doReturn(job).when(run).getParent();
+        doReturn(42).when(run).getNumber();
+        doReturn("example/job#42").when(run).getExternalizableId();
+        doThrow(new AssertionError("environment computed on the CPS VM thread"))
+                .when(run)
+                .getEnvironment(any(TaskListener.class));
+        doReturn("example/job").when(job).getFullName();
+
+        FlowExecutionOwner owner = mock(FlowExecutionOwner.class);
+        doReturn(run).when(owner).getExecutable();
+        execution = mock(FlowExecution.class);
+        doReturn(owner).when(execution).getOwner();
+
+        listener = new TestableDxStageListener(
+                config, queue, new DxScmMetadataResolver(Collections.singletonList(provider)));
+    }
+
+    @Test
+    public void testStageStartAndEndEvents() {
+        BlockStartNode start = stageStart("5", "Build", 10_000L);
+        BlockEndNode<?> end = blockEnd(start, 12_500L);
+
+        listener.onNewHead(start);
+        listener.onNewHead(end);
+
+        ArgumentCaptor<DxEvent> events = ArgumentCaptor.forClass(DxEvent.class);
+        verify(queue, times(2)).offer(events.capture(), same(config));
+        List<DxEvent> offered = events.getAllValues();
+        assertEquals(DxDataSender.STAGE_SYNC_PATH, offered.get(0).getPath());
+        assertFalse(offered.get(0).isRunEvent());
+
+        JSONObject started = new JSONObject(offered.get(0).getPayload());
+        assertEquals("example/job #42", started.getString("reference_id"));
+        assertEquals("5", started.getString("stage_id"));
+        assertEquals("Build", started.getString("stage_name"));
+        assertEquals("running", started.getString("status"));
+        assertEquals(10, started.getLong("started_at"));
+        assertFalse(started.has("finished_at"));
+
+        JSONObject finished = new JSONObject(offered.get(1).getPayload());
+        assertEquals("5", finished.getString("stage_id"));
+        assertEquals("success", finished.getString("status"));
+        assertEquals(12, finished.getLong("finished_at"));
+        assertEquals(2500, finished.getLong("duration_ms"));
+    }
+
+    @Test
+    public void testOnlyStageBlocksArePublished() {
+        BlockStartNode branch = stageStart("7", "Branch: linux", 0);
+        doReturn(mock(ThreadNameAction.class)).when(branch).getPersistentAction(ThreadNameAction.class);
+        BlockStartNode unlabeled = blockStart("8");
+        FlowNode atom = mock(FlowNode.class);
+        doReturn(mock(LabelAction.class)).when(atom).getPersistentAction(LabelAction.class);
+
+        listener.onNewHead(branch);
+        listener.onNewHead(blockEnd(branch, 0));
+        listener.onNewHead(unlabeled);
+        listener.onNewHead(blockEnd(unlabeled, 0));
+        listener.onNewHead(atom);
+
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+    }
+
+    @Test
+    public void testDisabledModeDoesNotTouchTheGraph() {
+        doReturn(false).when(config).isStageEvents();
+        BlockStartNode start = stageStart("5", "Build", 0);
+
+        listener.onNewHead(start);
+
+        verify(start, never()).getExecution();
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+    }
+
+    @Test
+    public void testEventsWaitUntilTheRepositoryIsKnown() {
+        doReturn(DxRepositoryFilter.compile("", "acme/api")).when(config).getRepositoryFilter();
+        BlockStartNode start = stageStart("5", "Checkout", 0);
+
+        listener.onNewHead(start);
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+
+        doReturn(new DxScmMetadata("https://github.com/acme/api.git", "main", "", "", "abc123"))
+                .when(provider)
+                .resolve(any());
+        listener.onNewHead(blockEnd(start, 0));
+
+        ArgumentCaptor<DxEvent> events = ArgumentCaptor.forClass(DxEvent.class);
+        verify(queue, times(2)).offer(events.capture(), same(config));
+        assertEquals("running", new JSONObject(events.getAllValues().get(0).getPayload()).getString("status"));
+        assertEquals("success", new JSONObject(events.getAllValues().get(1).getPayload()).getString("status"));
+    }
+
+    @Test
+    public void testDeniedRepositoryIsNeverStreamed() {
+        doReturn(DxRepositoryFilter.compile("acme/secret", "")).when(config).getRepositoryFilter();
+        doReturn(new DxScmMetadata("https://github.com/acme/secret.git", "main", "", "", "abc123"))
+                .when(provider)
+                .resolve(any());
+        BlockStartNode start = stageStart("5", "Build", 0);
+
+        listener.onNewHead(start);
+        listener.onNewHead(blockEnd(start, 0));
+        listener.onNewHead(flowEnd());
+
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+    }
+
+    @Test
+    public void testUnknownRepositoryIsSettledWhenTheBuildEnds() {
+        doReturn(DxRepositoryFilter.compile("acme/secret", "")).when(config).getRepositoryFilter();
+        BlockStartNode start = stageStart("5", "Build", 0);
+
+        listener.onNewHead(start);
+        listener.onNewHead(blockEnd(start, 0));
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+
+        listener.onNewHead(flowEnd());
+        verify(queue, times(2)).offer(any(DxEvent.class), same(config));
+    }
+
+    @Test
+    public void testUnknownRepositoryFailsTheAllowlistWhenTheBuildEnds() {
+        doReturn(DxRepositoryFilter.compile("", "acme/api")).when(config).getRepositoryFilter();
+        BlockStartNode start = stageStart("5", "Build", 0);
+
+        listener.onNewHead(start);
+        listener.onNewHead(blockEnd(start, 0));
+        listener.onNewHead(flowEnd());
+
+        verify(queue, never()).offer(any(DxEvent.class), any(DxGlobalConfiguration.class));
+    }
+
+    @Test
+    public void testStageStatus() {
+        BlockStartNode start = stageStart("5", "Test", 0);
+        assertEquals("success", DxStageListener.stageStatus(start, blockEnd(start, 0)));
+
+        BlockEndNode<?> failed = blockEnd(start, 0);
+        doReturn(error(new IllegalStateException("boom"))).when(failed).getPersistentAction(ErrorAction.class);
+        assertEquals("failure", DxStageListener.stageStatus(start, failed));
+
+        BlockEndNode<?> aborted = blockEnd(start, 0);
+        doReturn(error(new FlowInterruptedException(Result.ABORTED)))
+                .when(aborted)
+                .getPersistentAction(ErrorAction.class);
+        assertEquals("cancelled", DxStageListener.stageStatus(start, aborted));
+
+        BlockEndNode<?> unstable = blockEnd(start, 0);
+        doReturn(new WarningAction(Result.UNSTABLE)).when(unstable).getPersistentAction(WarningAction.class);
+        assertEquals("failure", DxStageListener.stageStatus(start, unstable));
+
+        TagsAction tags = new TagsAction();
+        tags.addTag("STAGE_STATUS", "SKIPPED_FOR_CONDITIONAL");
+        doReturn(tags).when(start).getPersistentAction(TagsAction.class);
+        assertEquals("cancelled", DxStageListener.stageStatus(start, blockEnd(start, 0)));
+    }
+
+    private BlockStartNode stageStart(String id, String name, long startTime) {
+        BlockStartNode node = blockStart(id);
+        doReturn(new LabelAction(name)).when(node).getPersistentAction(LabelAction.class);
+        doReturn(timing(startTime)).when(node).getPersistentAction(TimingAction.class);
+        return node;
+    }
+
+    private BlockStartNode blockStart(String id) {
+        BlockStartNode node = mock(BlockStartNode.class);
+        doReturn(id).when(node).getId();
+        doReturn(execution).when(node).getExecution();
+        return node;
+    }
+
+    private BlockEndNode<?> blockEnd(BlockStartNode start, long startTime) {
+        BlockEndNode<?> node = mock(BlockEndNode.class);
+        doReturn(start).when(node).getStartNode();
+        doReturn(execution).when(node).getExecution();
+        doReturn(timing(startTime)).when(node).getPersistentAction(TimingAction.class);
+        return node;
+    }
+
+    private FlowEndNode flowEnd() {
+        FlowEndNode node = mock(FlowEndNode.class);
+        doReturn(execution).when(node).getExecution();
+        return node;
+    }
+
+    private static TimingAction timing(long startTime) {
+        TimingAction timing = mock(TimingAction.class);
+        doReturn(startTime).when(timing).getStartTime();
+        return timing;
+    }
+
+    private static ErrorAction error(Throwable cause) {
+        ErrorAction error = mock(ErrorAction.class);
+        doReturn(cause).when(error).getError();
+        return error;
+    }
+
+    private static class TestableDxStageListener extends DxStageListener {
+        private final DxGlobalConfiguration configuration;
+        private final DxDeliveryQueue queue;
+        private final DxScmMetadataResolver resolver;
+
+        TestableDxStageListener(
+                DxGlobalConfiguration configuration, DxDeliveryQueue queue, DxScmMetadataResolver resolver) {
+            this.configuration = configuration;
+            this.queue = queue;
+            this.resolver = resolver;
+        }
+
+        @Override
+        DxGlobalConfiguration getConfiguration() {
+            return configuration;
+        }
+
+        @Override
+        DxDeliveryQueue getDeliveryQueue() {
+            return queue;
+        }
+
+        @Override
+        DxScmMetadataResolver getScmMetadataResolver() {
+            return resolver;
+        }
+    }
+}